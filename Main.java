@@ -1,65 +1,284 @@
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
-
-import code.Interpreter;
-import code.CodeGen;
-import parser.pascalLexer;
-import parser.pascalParser;
-import checker.SemanticChecker;
+import driver.ASTBench;
+import driver.Batch;
+import driver.Compilation;
+import driver.Daemon;
+import driver.DeepTest;
+import driver.EmitBench;
+import driver.FrontEndBench;
+import driver.Options;
+import driver.ParseBench;
+import driver.ParserProfile;
+import driver.Stress;
 
 public class Main {
 
 	/*
 	 *  Programa principal para funcionamento de compilador.
 	 *  
-	 *  Esta função espera um único argumento: o nome do
-	 *  programa a ser compilado. Em um código real certamente
-	 *  deveria haver alguma verificação de erro mas ela foi
-	 *  omitida aqui para simplificar o código e facilitar a leitura.
+	 *  Esta função espera como último argumento o nome do
+	 *  programa a ser compilado. Antes dele pode vir a opção
+	 *  '--engine=<llvm|interp|vm|closure|jit|tiered|jar>', que
+	 *  escolhe entre gerar o código LLVM (padrão), executar no
+	 *  Interpreter, executar na VM de bytecode, executar a árvore
+	 *  de closures (veja code.closure.ClosureCompiler), compilar
+	 *  para bytecode da JVM e executar (veja code.jit.JitCompiler),
+	 *  começar no Interpreter e passar os repeat quentes para
+	 *  bytecode no meio da execução (veja code.jit.OsrCompiler) ou
+	 *  gerar um .jar executável com 'java -jar' (veja
+	 *  code.jit.AotCompiler).
+	 *
+	 *  A opção '-o <arquivo>' grava o código LLVM no arquivo em vez
+	 *  de na stdout, ou o .jar no arquivo em vez de em program.jar.
+	 *  A opção '--ssa' gera o código LLVM já em SSA, sem alloca,
+	 *  load e store para as variáveis int, real e bool. Com '-O'
+	 *  a AST passa pelo ast.opt antes do back-end, que dobra e
+	 *  propaga as constantes (veja ast.opt.ConstantFolder). Com
+	 *  '--flat' o Interpreter percorre a AST compacta (ast.FlatAST).
+	 *  No 'tiered', '--tier-threshold=<n>' é o número de iterações
+	 *  até um laço ser compilado (padrão: 10000) e '--tier-stats'
+	 *  imprime as métricas da fila de compilação na stderr.
+	 *  No Interpreter, '--interactive' e '--no-interactive' dizem se
+	 *  a saída vai para a tela antes de cada Readln, para o prompt
+	 *  aparecer (padrão: só quando há um terminal).
+	 *  O parser tenta primeiro a predição SLL e só refaz com a LL
+	 *  completa se ela falhar (veja driver.Parsing); '--no-sll' vai
+	 *  direto para a LL. Com '--pipeline' o lexer, o parser e o
+	 *  analisador semântico rodam ao mesmo tempo, em threads
+	 *  separadas (veja driver.Pipeline).
+	 *  Com '--cache[=<dir>]' a saída do front-end fica guardada em
+	 *  disco (padrão: .ezcache) e um arquivo que não mudou vai
+	 *  direto para o back-end (veja driver.ASTCache).
+	 *
+	 *  Com '--daemon' o compilador não recebe arquivo nenhum: fica
+	 *  atendendo pedidos de compilação pela stdin, ou pelo socket
+	 *  Unix dado em '--daemon=<socket>' (veja driver.Daemon). Todos
+	 *  os pedidos usam as opções dadas junto ('--ssa', '-O'...).
+	 *
+	 *  Com '--batch' todos os argumentos são arquivos .pas ou
+	 *  diretórios com arquivos .pas, compilados em paralelo por
+	 *  '--jobs=<n>' threads (padrão: número de CPUs). Os .ll vão
+	 *  para o diretório de '--out=<dir>' (padrão: tests/out), com
+	 *  as mesmas opções de um arquivo sozinho ('--ssa', '-O',
+	 *  '--cache', '--pipeline'...).
+	 *
+	 *  Com '--stress[=<n>]' cada argumento é compilado em n threads
+	 *  ao mesmo tempo (padrão: 32), conferindo que todas as saídas
+	 *  são iguais às de uma compilação sozinha, com as mesmas opções
+	 *  ('--ssa', '-O'...) em todas (veja driver.Stress).
+	 *
+	 *  Com '--deep[=<n>]' uma expressão com n operadores encadeados
+	 *  e uma cadeia de n 'else if' (padrão: 1000000) passam pelo
+	 *  front-end, Interpreter, CodeGen e DOT, conferindo que nenhum
+	 *  estoura a pilha (veja driver.DeepTest).
+	 *
+	 *  Com '--bench-emit[=<n>]' mede a geração de código de um
+	 *  programa de n comandos (padrão: 100000), gravando no arquivo
+	 *  de '-o' (padrão: um arquivo temporário).
+	 *
+	 *  Com '--bench-ast[=<n>]' compara a memória por nó e o tempo do
+	 *  Interpreter entre a AST de objetos e a FlatAST, num programa
+	 *  de n comandos (padrão: 110000, perto de 1 milhão de nós).
+	 *
+	 *  Com '--bench-parse[=<n>]' compara o tempo de parsing com a
+	 *  predição LL e com os dois estágios SLL/LL, num programa de n
+	 *  linhas (padrão: 50000).
+	 *
+	 *  Com '--bench-frontend[=<n>]' compara o front-end normal com o
+	 *  '--pipeline', num programa de n funções (padrão: 20000).
+	 *
+	 *  Com '--profile-parser' o arquivo só passa pelo parser, com o
+	 *  profiling do ANTLR ligado, e sai um relatório das decisões com
+	 *  maior lookahead e das ambiguidades (veja driver.ParserProfile).
+	 *
+	 *  Em um código real certamente deveria haver mais
+	 *  verificação de erro mas ela foi omitida aqui para
+	 *  simplificar o código e facilitar a leitura.
 	 */
-	public static void main(String[] args) throws IOException {
-		// Cria um CharStream que lê os caracteres de um arquivo.
-		// O livro do ANTLR fala para criar um ANTLRInputStream,
-		// mas a partir da versão 4.7 essa classe foi deprecada.
-		// Esta é a forma atual para criação do stream.
-		CharStream input = CharStreams.fromFileName(args[0]);
-		
-		// Cria um lexer que consome a entrada do CharStream.
-		pascalLexer lexer = new pascalLexer(input);
-		
-		// Cria um buffer de tokens vindos do lexer.
-		CommonTokenStream tokens = new CommonTokenStream(lexer);
-		
-		// Cria um parser que consome os tokens do buffer.
-		pascalParser parser = new pascalParser(tokens);
-		
-		// Começa o processo de parsing na regra 'program'.
-		ParseTree tree = parser.program(); 
-		
-		if (parser.getNumberOfSyntaxErrors() != 0) {
-			// Houve algum erro sintático. Termina a compilação aqui.
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Options options = new Options();
+		String fileName = null;
+		String daemon = null;
+		boolean batch = false;
+		int stress = 0;
+		int benchEmit = 0;
+		int benchAST = 0;
+		int benchParse = 0;
+		int benchFrontEnd = 0;
+		boolean profileParser = false;
+		int deep = 0;
+		int jobs = Runtime.getRuntime().availableProcessors();
+		String outDir = "tests/out";
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-o") && i + 1 < args.length) {
+				options.output = Path.of(args[++i]);
+			} else if (arg.startsWith("--engine=")) {
+				options.engine = arg.substring("--engine=".length());
+			} else if (arg.equals("--ssa")) {
+				options.ssa = true;
+			} else if (arg.equals("-O")) {
+				options.optimize = true;
+			} else if (arg.startsWith("--tier-threshold=")) {
+				options.tierThreshold = number(arg, "--tier-threshold=");
+			} else if (arg.equals("--tier-stats")) {
+				options.tierStats = true;
+			} else if (arg.equals("--interactive")) {
+				options.interactive = true;
+			} else if (arg.equals("--no-interactive")) {
+				options.interactive = false;
+			} else if (arg.equals("--flat")) {
+				options.flat = true;
+			} else if (arg.equals("--cache")) {
+				options.cache = Path.of(".ezcache");
+			} else if (arg.startsWith("--cache=")) {
+				options.cache = Path.of(arg.substring("--cache=".length()));
+			} else if (arg.equals("--daemon")) {
+				daemon = "";
+			} else if (arg.startsWith("--daemon=")) {
+				daemon = arg.substring("--daemon=".length());
+			} else if (arg.equals("--batch")) {
+				batch = true;
+			} else if (arg.equals("--stress")) {
+				stress = 32;
+			} else if (arg.startsWith("--stress=")) {
+				stress = number(arg, "--stress=");
+			} else if (arg.equals("--bench-emit")) {
+				benchEmit = 100000;
+			} else if (arg.startsWith("--bench-emit=")) {
+				benchEmit = number(arg, "--bench-emit=");
+			} else if (arg.equals("--bench-ast")) {
+				benchAST = 110000;
+			} else if (arg.startsWith("--bench-ast=")) {
+				benchAST = number(arg, "--bench-ast=");
+			} else if (arg.equals("--bench-parse")) {
+				benchParse = 50000;
+			} else if (arg.startsWith("--bench-parse=")) {
+				benchParse = number(arg, "--bench-parse=");
+			} else if (arg.equals("--bench-frontend")) {
+				benchFrontEnd = 20000;
+			} else if (arg.startsWith("--bench-frontend=")) {
+				benchFrontEnd = number(arg, "--bench-frontend=");
+			} else if (arg.equals("--deep")) {
+				deep = 1000000;
+			} else if (arg.startsWith("--deep=")) {
+				deep = number(arg, "--deep=");
+			} else if (arg.equals("--profile-parser")) {
+				profileParser = true;
+			} else if (arg.equals("--no-sll")) {
+				options.sllFirst = false;
+			} else if (arg.equals("--pipeline")) {
+				options.pipeline = true;
+			} else if (arg.startsWith("--jobs=")) {
+				jobs = number(arg, "--jobs=");
+			} else if (arg.startsWith("--out=")) {
+				outDir = arg.substring("--out=".length());
+			} else {
+				fileName = arg;
+				files.add(arg);
+			}
+		}
+
+		if (batch) {
+			if (!options.engine.equals("llvm") || options.output != null) {
+				System.err.printf("--batch only generates LLVM code, into --out=<dir>\n");
+				System.exit(1);
+			}
+			int failures = new Batch(Path.of(outDir), jobs, options).run(Batch.expand(files));
+			System.exit(failures == 0 ? 0 : 1);
+		}
+
+		if (benchEmit > 0) {
+			if (options.output == null) {
+				options.output = Files.createTempFile("bench", ".ll");
+				options.output.toFile().deleteOnExit();
+			}
+			new EmitBench(benchEmit, options.output).run();
+			return;
+		}
+
+		if (benchAST > 0) {
+			new ASTBench(benchAST).run();
 			return;
 		}
 
-		// Cria o analisador semântico e visita a ParseTree para fazer a análise.
-		SemanticChecker checker = new SemanticChecker();
-		checker.visit(tree);
-		// checker.printTables();
-		// checker.printAST();
+		if (benchParse > 0) {
+			new ParseBench(benchParse).run();
+			return;
+		}
 
-		// Saída final. Se chegou até aqui é porque não houve erro.
+		if (benchFrontEnd > 0) {
+			new FrontEndBench(benchFrontEnd).run();
+			return;
+		}
 
-		// Executa o interpretador de código.
-		// Interpreter interpreter = new Interpreter(checker.st, checker.vt, checker.ft);
-		// interpreter.execute(checker.getAST());
+		if (deep > 0) {
+			System.exit(new DeepTest(deep).run() == 0 ? 0 : 1);
+		}
 
-		// Executa o gerador de código.
-		CodeGen codeGen = new CodeGen(checker.st, checker.vt, checker.ft);
-		codeGen.execute(checker.getAST());
+		if (stress > 0) {
+			if (!options.engine.equals("llvm") || options.output != null) {
+				System.err.printf("--stress only compares LLVM code\n");
+				System.exit(1);
+			}
+			int failures = new Stress(stress, options).run(Batch.expand(files));
+			System.exit(failures == 0 ? 0 : 1);
+		}
+
+		if (daemon != null) {
+			if (!options.engine.equals("llvm") || options.output != null) {
+				System.err.printf("--daemon only generates LLVM code, into its responses\n");
+				System.exit(1);
+			}
+			if (daemon.isEmpty()) {
+				new Daemon(options).serve(System.in, System.out);
+			} else {
+				new Daemon(options).listen(Path.of(daemon));
+			}
+			return;
+		}
+
+		if (fileName == null) {
+			System.err.printf("Usage: Main [--engine=llvm|interp|vm|closure|jit|tiered|jar] [--ssa] [-o <file.ll|file.jar>] <file.pas>\n");
+			System.err.printf("       Main --daemon[=<socket>] [--ssa] [-O]\n");
+			System.err.printf("       Main --batch [--ssa] [-O] [--jobs=<n>] [--out=<dir>] <files or dirs...>\n");
+			System.err.printf("       Main --stress[=<threads>] [--ssa] [-O] <files or dirs...>\n");
+			System.err.printf("       Main --bench-emit[=<statements>] [-o <file.ll>]\n");
+			System.err.printf("       Main --profile-parser [--no-sll] <file.pas>\n");
+			System.exit(1);
+		}
+
+		if (profileParser) {
+			if (new ParserProfile(options).run(fileName) == Compilation.ERROR) {
+				System.exit(1);
+			}
+			return;
+		}
+
+		// Erro sintático não muda o código de saída, como sempre foi.
+		if (Compilation.runFile(fileName, options) == Compilation.ERROR) {
+			System.exit(1);
+		}
+	}
+
+	// Valor numérico de uma opção '<prefix><n>'. Um valor que não é um
+	// número encerra o programa com uma mensagem, como os outros erros
+	// de argumento.
+	private static int number(String arg, String prefix) {
+		try {
+			return Integer.parseInt(arg.substring(prefix.length()));
+		} catch (NumberFormatException e) {
+			System.err.printf("%s expects a number, got '%s'\n", prefix.substring(0, prefix.length() - 1),
+			                  arg.substring(prefix.length()));
+			System.exit(1);
+			return 0;
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package ast;
 import static typing.Type.NO_TYPE;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import tables.VarTable;
@@ -76,11 +77,9 @@ public class AST {
 	private static VarTable vt;
 	private static FunctionTable ft;
 
-	// Imprime recursivamente a codificação em DOT da subárvore começando no nó atual.
+	// Imprime a codificação em DOT do nó atual, com o número 'myNr'.
 	// Usa stderr como saída para facilitar o redirecionamento, mas isso é só um hack.
-	private int printNodeDot(int idx) {
-		int myNr = nr++;
-
+	private void printNodeDot(int myNr, int idx) {
 	    System.err.printf("node%d[label=\"", myNr);
 	    if (this.type != NO_TYPE) {
 	    	System.err.printf("(%s) ", this.type.toString());
@@ -111,23 +110,47 @@ public class AST {
 	        }
 	    }
 	    System.err.printf("\"];\n");
+	}
 
-	    for (int i = 0; i < this.children.size(); i++) {
-			int childNr;
-			// se o filho for uma função, passa o índice do filho para poder acessar sua tabela de variavel.
-			if (this.children.get(i).kind == NodeKind.FUNCTION_NODE){
-		        childNr = this.children.get(i).printNodeDot(i);
-			}
-			// repassa o valor, para os netos...
-			else if(idx != -1){
-				childNr = this.children.get(i).printNodeDot(idx);
-			}
-			else{
-		        childNr = this.children.get(i).printNodeDot(-1);
+	// Imprime a subárvore de 'root' em pré-ordem, com cada aresta saindo
+	// depois da subárvore do filho. Usa uma pilha explícita em vez de
+	// recursão para aguentar árvores com milhões de níveis.
+	private static void printTreeDot(AST root) {
+		AST[] nodes = new AST[16];
+		int[] idxs = new int[16];  // Índice da função, ou -1 fora de uma.
+		int[] nrs = new int[16];   // Número do nó no DOT.
+		int[] next = new int[16];  // Próximo filho a imprimir.
+		int top = 0;
+		nodes[0] = root;
+		idxs[0] = -1;
+		nrs[0] = nr++;
+		root.printNodeDot(nrs[0], -1);
+		while (top >= 0) {
+			AST node = nodes[top];
+			if (next[top] < node.children.size()) {
+				int i = next[top]++;
+				AST child = node.children.get(i);
+				// se o filho for uma função, passa o índice do filho para poder acessar sua tabela de variavel.
+				// senão repassa o valor, para os netos...
+				int childIdx = child.kind == NodeKind.FUNCTION_NODE ? i : idxs[top];
+				if (++top == nodes.length) {
+					nodes = Arrays.copyOf(nodes, top * 2);
+					idxs = Arrays.copyOf(idxs, top * 2);
+					nrs = Arrays.copyOf(nrs, top * 2);
+					next = Arrays.copyOf(next, top * 2);
+				}
+				nodes[top] = child;
+				idxs[top] = childIdx;
+				nrs[top] = nr++;
+				next[top] = 0;
+				child.printNodeDot(nrs[top], childIdx);
+			} else {
+				nodes[top] = null;
+				if (--top >= 0) {
+					System.err.printf("node%d -> node%d;\n", nrs[top], nrs[top + 1]);
+				}
 			}
-	        System.err.printf("node%d -> node%d;\n", myNr, childNr);
-	    }
-	    return myNr;
+		}
 	}
 
 	// Imprime a árvore toda em stderr.
@@ -136,7 +159,7 @@ public class AST {
 	    vt = table;
 		ft = fTable;
 	    System.err.printf("digraph {\ngraph [ordering=\"out\"];\n");
-	    tree.printNodeDot(-1);
+	    printTreeDot(tree);
 	    System.err.printf("}\n");
 	}
 }
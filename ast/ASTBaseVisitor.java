@@ -1,5 +1,10 @@
 package ast;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import driver.CompileError;
+
 /*
  * Classe abstrata que define a interface do visitor para a AST.
  * Implementa o despacho do método 'visit' conforme o 'kind' do nó.
@@ -12,8 +17,19 @@ public abstract class ASTBaseVisitor<T> {
 	// passado. Precisa ter outro nome porque tem a mesma assinatura
 	// que o método "genérico" 'visit'.
 	public void execute(AST root) {
+		depth = 0;
 		visit(root);
 	}
+
+	// Mesma coisa para a AST compacta, começando pela raiz dela.
+	public void execute(FlatAST tree) {
+		this.flat = tree;
+		depth = 0;
+		visit(FlatAST.ROOT);
+	}
+
+	// Árvore percorrida pelos métodos que recebem o índice do nó.
+	protected FlatAST flat;
 	
 	// Método "genérico" que despacha a visitação para os métodos
 	// especializados conforme o 'kind' do nó atual. Igual ao código
@@ -64,14 +80,339 @@ public abstract class ASTBaseVisitor<T> {
 	        case I2R_NODE:      		return visitI2R(node);
 	        case I2S_NODE:      		return visitI2S(node);
 	        case R2S_NODE:      		return visitR2S(node);
+
+	        // Nós especializados (veja ast.opt.Quickener).
+	        case INT_PLUS_NODE:		return visitIntPlus(node);
+	        case REAL_PLUS_NODE:		return visitRealPlus(node);
+	        case BOOL_PLUS_NODE:		return visitBoolPlus(node);
+	        case STR_PLUS_NODE:		return visitStrPlus(node);
+	        case INT_MINUS_NODE:		return visitIntMinus(node);
+	        case REAL_MINUS_NODE:		return visitRealMinus(node);
+	        case INT_TIMES_NODE:		return visitIntTimes(node);
+	        case REAL_TIMES_NODE:		return visitRealTimes(node);
+	        case INT_OVER_NODE:		return visitIntOver(node);
+	        case REAL_OVER_NODE:		return visitRealOver(node);
+	        case INT_EQ_NODE:			return visitIntEq(node);
+	        case REAL_EQ_NODE:		return visitRealEq(node);
+	        case STR_EQ_NODE:			return visitStrEq(node);
+	        case INT_LT_NODE:			return visitIntLt(node);
+	        case REAL_LT_NODE:		return visitRealLt(node);
+	        case STR_LT_NODE:			return visitStrLt(node);
+	        case INT_GT_NODE:			return visitIntGt(node);
+	        case REAL_GT_NODE:		return visitRealGt(node);
+	        case STR_GT_NODE:			return visitStrGt(node);
+	        case INT_LOAD_NODE:		return visitIntLoad(node);
+	        case REAL_LOAD_NODE:		return visitRealLoad(node);
+	        case INT_STORE_NODE:		return visitIntStore(node);
+	        case REAL_STORE_NODE:		return visitRealStore(node);
 	
 	        default:
 	            System.err.printf("Invalid kind: %s!\n", node.kind.toString());
-	            System.exit(1);
-	            return null;
+	            throw new CompileError();
 		}
 	}
 	
+	// Despacho pelo índice do nó na AST compacta. Os métodos com 'int'
+	// abaixo, por padrão, recriam a subárvore em objetos AST e chamam o
+	// método equivalente, então todo visitor já consegue percorrer uma
+	// FlatAST. Um visitor que queira andar direto nos vetores sobrescreve
+	// as versões com 'int' dos nós que lhe interessam.
+	protected T visit(int node) {
+		switch(flat.kind(node)) {
+			case PROGRAM_NODE:			return visitProgram(node);
+			case PROGRAM_HEADING_NODE:	return visitProgramHeading(node);
+			case IDENTIFIER_NODE:		return visitIdentifier(node);
+			case BLOCK_NODE:			return visitBlock(node);
+			case VAR_DECL_PART_NODE:	return visitVarDeclPart(node);
+			case VAR_DECL_NODE:			return visitVarDecl(node);
+			case IDENTIFIER_LIST_NODE:	return visitIdentifierList(node);
+			case STATEMENT_LIST_NODE:	return visitStatementList(node);
+			case PROCEDURE_DESIGN_NODE:	return visitProcedureDesignator(node);
+			case FUNC_IDENT_NODE:		return visitFuncIdentifier(node);
+			case PARAMETER_LIST_NODE:	return visitParameterList(node);
+			case ASSIGN_NODE:			return visitAssign(node);
+			case IF_NODE:				return visitIf(node);
+			case ELSE_NODE:				return visitElse(node);
+			case EQ_NODE:				return visitEq(node);
+			case GT_NODE:				return visitGt(node);
+			case LT_NODE:				return visitLt(node);
+			case REPEAT_NODE:			return visitRepeat(node);
+			case MINUS_NODE:			return visitMinus(node);
+			case OVER_NODE:				return visitOver(node);
+			case PLUS_NODE:				return visitPlus(node);
+			case TIMES_NODE:			return visitTimes(node);
+			case VAR_USE_NODE:			return visitVarUse(node);
+			case INT_VAL_NODE:			return visitIntVal(node);
+			case STR_VAL_NODE:			return visitStrVal(node);
+			case BOOL_VAL_NODE:			return visitBoolVal(node);
+			case REAL_VAL_NODE:			return visitRealVal(node);
+			case B2I_NODE:				return visitB2I(node);
+			case B2R_NODE:				return visitB2R(node);
+			case B2S_NODE:				return visitB2S(node);
+			case I2R_NODE:				return visitI2R(node);
+			case I2S_NODE:				return visitI2S(node);
+			case R2S_NODE:				return visitR2S(node);
+			case INT_PLUS_NODE:				return visitIntPlus(node);
+			case REAL_PLUS_NODE:				return visitRealPlus(node);
+			case BOOL_PLUS_NODE:				return visitBoolPlus(node);
+			case STR_PLUS_NODE:				return visitStrPlus(node);
+			case INT_MINUS_NODE:				return visitIntMinus(node);
+			case REAL_MINUS_NODE:				return visitRealMinus(node);
+			case INT_TIMES_NODE:				return visitIntTimes(node);
+			case REAL_TIMES_NODE:				return visitRealTimes(node);
+			case INT_OVER_NODE:				return visitIntOver(node);
+			case REAL_OVER_NODE:				return visitRealOver(node);
+			case INT_EQ_NODE:					return visitIntEq(node);
+			case REAL_EQ_NODE:				return visitRealEq(node);
+			case STR_EQ_NODE:					return visitStrEq(node);
+			case INT_LT_NODE:					return visitIntLt(node);
+			case REAL_LT_NODE:				return visitRealLt(node);
+			case STR_LT_NODE:					return visitStrLt(node);
+			case INT_GT_NODE:					return visitIntGt(node);
+			case REAL_GT_NODE:				return visitRealGt(node);
+			case STR_GT_NODE:					return visitStrGt(node);
+			case INT_LOAD_NODE:				return visitIntLoad(node);
+			case REAL_LOAD_NODE:				return visitRealLoad(node);
+			case INT_STORE_NODE:				return visitIntStore(node);
+			case REAL_STORE_NODE:				return visitRealStore(node);
+
+			default:
+				System.err.printf("Invalid kind: %s!\n", flat.kind(node).toString());
+				throw new CompileError();
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Operandos ----------------------------------
+
+	// Os operadores aritméticos e as comparações formam as cadeias mais
+	// fundas: 'a + b + ... + z' com n termos vira uma AST com n - 1
+	// níveis de PLUS, e o parser lê isso sem recursão (as regras de
+	// expressão são iterativas). Comandos aninhados não entram aqui: o
+	// parser já desce recursivamente em cada 'if' ou 'begin', então a
+	// profundidade deles fica limitada antes da AST existir, e os
+	// visitors de comandos continuam recursivos. Visitando recursivamente,
+	// cada nível gasta alguns frames na pilha da thread, e um programa
+	// gerado por máquina acaba num StackOverflowError.
+	//
+	// Por isso um visitor pode pegar os valores dos filhos de um operador
+	// com 'operand' em vez de 'visit'. Até MAX_DEPTH operadores aninhados
+	// é a mesma recursão de sempre. Dali para baixo a subárvore é
+	// percorrida em pós-ordem com uma pilha explícita, no heap ('walk'):
+	// os filhos de cada operador são visitados primeiro, da esquerda para
+	// a direita, e guardados; quando o método do operador chama 'operand',
+	// recebe o valor já calculado.
+	//
+	// Quem usa 'operand' precisa usá-lo em todos os operadores (veja
+	// 'isOperator'), sempre uma vez para cada filho e antes de fazer
+	// qualquer outra coisa, que é a ordem em que o percurso os calcula.
+	// O percurso confere: um filho lido fora de ordem ou duas vezes, ou um
+	// filho não lido, é uma IllegalStateException.
+
+	private static final int MAX_DEPTH = 1000;
+
+	// Operadores aninhados sendo visitados pela recursão agora.
+	private int depth;
+
+	// Operador cujos filhos já foram calculados pelo percurso, com os
+	// valores em 'pendingValues' a partir de 'pendingBase'. 'pendingNext'
+	// é o próximo filho que ele pode ler.
+	private AST pending;
+	private int pendingFlat = -1;
+	private ArrayList<T> pendingValues;
+	private int pendingBase;
+	private int pendingNext;
+
+	// Nós cujos filhos são todos operandos (veja 'operand').
+	protected static boolean isOperator(NodeKind kind) {
+		switch (kind.generic()) {
+			case PLUS_NODE:
+			case MINUS_NODE:
+			case TIMES_NODE:
+			case OVER_NODE:
+			case EQ_NODE:
+			case LT_NODE:
+			case GT_NODE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	// Valor do i-ésimo filho do operador 'node'.
+	protected final T operand(AST node, int i) {
+		if (node == pending) {
+			return pendingOperand(i);
+		}
+		AST child = node.getChild(i);
+		if (depth == MAX_DEPTH) {
+			return walk(child);
+		}
+		depth++;
+		T value = visit(child);
+		depth--;
+		return value;
+	}
+
+	// Mesma coisa pelo índice na FlatAST.
+	protected final T operand(int node, int i) {
+		if (node == pendingFlat) {
+			return pendingOperand(i);
+		}
+		int child = flat.child(node, i);
+		if (depth == MAX_DEPTH) {
+			return walk(child);
+		}
+		depth++;
+		T value = visit(child);
+		depth--;
+		return value;
+	}
+
+	private T pendingOperand(int i) {
+		if (i != pendingNext) {
+			throw new IllegalStateException("Operand " + i + " read out of order (expected " + pendingNext + ")");
+		}
+		pendingNext++;
+		return pendingValues.get(pendingBase + i);
+	}
+
+	// Todos os filhos do operador foram lidos?
+	private void checkOperands(int count) {
+		if (pendingNext != count) {
+			throw new IllegalStateException("Read " + pendingNext + " of " + count + " operands");
+		}
+	}
+
+	// Visita a subárvore de 'root' em pós-ordem sem recursão nos operadores.
+	// Os outros nós (folhas, conversões...) são visitados normalmente.
+	private T walk(AST root) {
+		if (!isOperator(root.kind)) {
+			return visit(root);
+		}
+		AST[] nodes = new AST[16];
+		int[] next = new int[16]; // Próximo filho de cada nó da pilha.
+		int top = 0;
+		nodes[0] = root;
+		ArrayList<T> values = new ArrayList<T>();
+		while (top >= 0) {
+			AST node = nodes[top];
+			if (next[top] < node.getChildCount()) {
+				AST child = node.getChild(next[top]++);
+				if (!isOperator(child.kind)) {
+					values.add(visit(child));
+					continue;
+				}
+				if (++top == nodes.length) {
+					nodes = Arrays.copyOf(nodes, top * 2);
+					next = Arrays.copyOf(next, top * 2);
+				}
+				nodes[top] = child;
+				next[top] = 0;
+			} else {
+				nodes[top--] = null;
+				int base = values.size() - node.getChildCount();
+				AST savedNode = pending;
+				ArrayList<T> savedValues = pendingValues;
+				int savedBase = pendingBase;
+				int savedNext = pendingNext;
+				pending = node;
+				pendingValues = values;
+				pendingBase = base;
+				pendingNext = 0;
+				T value;
+				try {
+					value = visit(node);
+					checkOperands(node.getChildCount());
+				} finally {
+					pending = savedNode;
+					pendingValues = savedValues;
+					pendingBase = savedBase;
+					pendingNext = savedNext;
+				}
+				values.subList(base, values.size()).clear();
+				values.add(value);
+			}
+		}
+		return values.get(0);
+	}
+
+	private T walk(int root) {
+		if (!isOperator(flat.kind(root))) {
+			return visit(root);
+		}
+		int[] nodes = new int[16];
+		int[] next = new int[16];
+		int top = 0;
+		nodes[0] = root;
+		ArrayList<T> values = new ArrayList<T>();
+		while (top >= 0) {
+			int node = nodes[top];
+			if (next[top] < flat.childCount(node)) {
+				int child = flat.child(node, next[top]++);
+				if (!isOperator(flat.kind(child))) {
+					values.add(visit(child));
+					continue;
+				}
+				if (++top == nodes.length) {
+					nodes = Arrays.copyOf(nodes, top * 2);
+					next = Arrays.copyOf(next, top * 2);
+				}
+				nodes[top] = child;
+				next[top] = 0;
+			} else {
+				top--;
+				int base = values.size() - flat.childCount(node);
+				int savedNode = pendingFlat;
+				ArrayList<T> savedValues = pendingValues;
+				int savedBase = pendingBase;
+				int savedNext = pendingNext;
+				pendingFlat = node;
+				pendingValues = values;
+				pendingBase = base;
+				pendingNext = 0;
+				T value;
+				try {
+					value = visit(node);
+					checkOperands(flat.childCount(node));
+				} finally {
+					pendingFlat = savedNode;
+					pendingValues = savedValues;
+					pendingBase = savedBase;
+					pendingNext = savedNext;
+				}
+				values.subList(base, values.size()).clear();
+				values.add(value);
+			}
+		}
+		return values.get(0);
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Else if ------------------------------------
+
+	// Uma cadeia 'if ... else if ... else if ...' vira IF_NODEs aninhados,
+	// cada um no ELSE_NODE do anterior, e um programa gerado por máquina
+	// pode ter milhares deles. Os visitors de 'if' andam pela cadeia num
+	// laço em vez de visitar o ELSE_NODE: 'elseIf' dá o próximo 'if' da
+	// cadeia, ou null (-1 na FlatAST) se o 'else' não for outro 'if'.
+
+	protected static AST elseIf(AST node) {
+		if (node.getChildCount() < 3) {
+			return null;
+		}
+		AST body = node.getChild(2).getChild(0);
+		return body.kind == NodeKind.IF_NODE ? body : null;
+	}
+
+	protected final int elseIf(int node) {
+		if (flat.childCount(node) < 3) {
+			return -1;
+		}
+		int body = flat.child(flat.child(node, 2), 0);
+		return flat.kind(body) == NodeKind.IF_NODE ? body : -1;
+	}
+
 	// Métodos especializados para visitar um nó com um certo 'kind'.
 
 	protected abstract T visitProgram(AST node);
@@ -143,5 +484,93 @@ public abstract class ASTBaseVisitor<T> {
 	protected abstract T visitI2S(AST node);
 
 	protected abstract T visitR2S(AST node);
-	
+
+	// Nós especializados pelo ast.opt.Quickener. Por padrão cada um é
+	// tratado como o nó genérico de onde veio (o 'type' e os filhos são os
+	// mesmos), então todo visitor aceita a árvore especializada; quem quiser
+	// o ganho sobrescreve estas versões.
+
+	protected T visitIntPlus(AST node) { return visitPlus(node); }
+	protected T visitRealPlus(AST node) { return visitPlus(node); }
+	protected T visitBoolPlus(AST node) { return visitPlus(node); }
+	protected T visitStrPlus(AST node) { return visitPlus(node); }
+	protected T visitIntMinus(AST node) { return visitMinus(node); }
+	protected T visitRealMinus(AST node) { return visitMinus(node); }
+	protected T visitIntTimes(AST node) { return visitTimes(node); }
+	protected T visitRealTimes(AST node) { return visitTimes(node); }
+	protected T visitIntOver(AST node) { return visitOver(node); }
+	protected T visitRealOver(AST node) { return visitOver(node); }
+	protected T visitIntEq(AST node) { return visitEq(node); }
+	protected T visitRealEq(AST node) { return visitEq(node); }
+	protected T visitStrEq(AST node) { return visitEq(node); }
+	protected T visitIntLt(AST node) { return visitLt(node); }
+	protected T visitRealLt(AST node) { return visitLt(node); }
+	protected T visitStrLt(AST node) { return visitLt(node); }
+	protected T visitIntGt(AST node) { return visitGt(node); }
+	protected T visitRealGt(AST node) { return visitGt(node); }
+	protected T visitStrGt(AST node) { return visitGt(node); }
+	protected T visitIntLoad(AST node) { return visitVarUse(node); }
+	protected T visitRealLoad(AST node) { return visitVarUse(node); }
+	protected T visitIntStore(AST node) { return visitAssign(node); }
+	protected T visitRealStore(AST node) { return visitAssign(node); }
+
+	// Versões pelo índice na FlatAST (veja visit(int)).
+
+	protected T visitProgram(int node) { return visitProgram(flat.toAST(node)); }
+	protected T visitProgramHeading(int node) { return visitProgramHeading(flat.toAST(node)); }
+	protected T visitIdentifier(int node) { return visitIdentifier(flat.toAST(node)); }
+	protected T visitBlock(int node) { return visitBlock(flat.toAST(node)); }
+	protected T visitVarDeclPart(int node) { return visitVarDeclPart(flat.toAST(node)); }
+	protected T visitVarDecl(int node) { return visitVarDecl(flat.toAST(node)); }
+	protected T visitIdentifierList(int node) { return visitIdentifierList(flat.toAST(node)); }
+	protected T visitStatementList(int node) { return visitStatementList(flat.toAST(node)); }
+	protected T visitProcedureDesignator(int node) { return visitProcedureDesignator(flat.toAST(node)); }
+	protected T visitFuncIdentifier(int node) { return visitFuncIdentifier(flat.toAST(node)); }
+	protected T visitParameterList(int node) { return visitParameterList(flat.toAST(node)); }
+	protected T visitAssign(int node) { return visitAssign(flat.toAST(node)); }
+	protected T visitIf(int node) { return visitIf(flat.toAST(node)); }
+	protected T visitElse(int node) { return visitElse(flat.toAST(node)); }
+	protected T visitEq(int node) { return visitEq(flat.toAST(node)); }
+	protected T visitGt(int node) { return visitGt(flat.toAST(node)); }
+	protected T visitLt(int node) { return visitLt(flat.toAST(node)); }
+	protected T visitRepeat(int node) { return visitRepeat(flat.toAST(node)); }
+	protected T visitMinus(int node) { return visitMinus(flat.toAST(node)); }
+	protected T visitOver(int node) { return visitOver(flat.toAST(node)); }
+	protected T visitPlus(int node) { return visitPlus(flat.toAST(node)); }
+	protected T visitTimes(int node) { return visitTimes(flat.toAST(node)); }
+	protected T visitVarUse(int node) { return visitVarUse(flat.toAST(node)); }
+	protected T visitIntVal(int node) { return visitIntVal(flat.toAST(node)); }
+	protected T visitStrVal(int node) { return visitStrVal(flat.toAST(node)); }
+	protected T visitBoolVal(int node) { return visitBoolVal(flat.toAST(node)); }
+	protected T visitRealVal(int node) { return visitRealVal(flat.toAST(node)); }
+	protected T visitB2I(int node) { return visitB2I(flat.toAST(node)); }
+	protected T visitB2R(int node) { return visitB2R(flat.toAST(node)); }
+	protected T visitB2S(int node) { return visitB2S(flat.toAST(node)); }
+	protected T visitI2R(int node) { return visitI2R(flat.toAST(node)); }
+	protected T visitI2S(int node) { return visitI2S(flat.toAST(node)); }
+	protected T visitR2S(int node) { return visitR2S(flat.toAST(node)); }
+	protected T visitIntPlus(int node) { return visitPlus(node); }
+	protected T visitRealPlus(int node) { return visitPlus(node); }
+	protected T visitBoolPlus(int node) { return visitPlus(node); }
+	protected T visitStrPlus(int node) { return visitPlus(node); }
+	protected T visitIntMinus(int node) { return visitMinus(node); }
+	protected T visitRealMinus(int node) { return visitMinus(node); }
+	protected T visitIntTimes(int node) { return visitTimes(node); }
+	protected T visitRealTimes(int node) { return visitTimes(node); }
+	protected T visitIntOver(int node) { return visitOver(node); }
+	protected T visitRealOver(int node) { return visitOver(node); }
+	protected T visitIntEq(int node) { return visitEq(node); }
+	protected T visitRealEq(int node) { return visitEq(node); }
+	protected T visitStrEq(int node) { return visitEq(node); }
+	protected T visitIntLt(int node) { return visitLt(node); }
+	protected T visitRealLt(int node) { return visitLt(node); }
+	protected T visitStrLt(int node) { return visitLt(node); }
+	protected T visitIntGt(int node) { return visitGt(node); }
+	protected T visitRealGt(int node) { return visitGt(node); }
+	protected T visitStrGt(int node) { return visitGt(node); }
+	protected T visitIntLoad(int node) { return visitVarUse(node); }
+	protected T visitRealLoad(int node) { return visitVarUse(node); }
+	protected T visitIntStore(int node) { return visitAssign(node); }
+	protected T visitRealStore(int node) { return visitAssign(node); }
+
 }
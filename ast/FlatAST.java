@@ -0,0 +1,212 @@
+package ast;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import typing.Type;
+
+/*
+ * Representação compacta da AST: em vez de um objeto por nó, com a lista
+ * de filhos e os campos apontando para os enums, cada campo vira um
+ * vetor de tipo primitivo e o nó é só um índice nesses vetores.
+ *
+ * Os nós são numerados por nível (busca em largura) a partir da raiz,
+ * que fica no índice 0. Assim os filhos de um nó ocupam índices
+ * seguidos e basta guardar o primeiro filho e a quantidade.
+ *
+ * A árvore é só de leitura depois de montada. Para percorrer com um
+ * visitor, use ASTBaseVisitor.execute(FlatAST). Os vetores também são
+ * o formato da AST no cache em disco (veja driver.ASTCache).
+ */
+public final class FlatAST {
+
+	public static final int ROOT = 0;
+
+	// Cópias dos values() para não criar um vetor novo a cada consulta.
+	private static final NodeKind[] KINDS = NodeKind.values();
+	private static final Type[] TYPES = Type.values();
+
+	private final byte[] kind;      // NodeKind.ordinal()
+	private final byte[] type;      // Type.ordinal()
+	private final int[] intData;
+	private final float[] floatData;
+	private final int[] firstChild;
+	private final int[] childCount;
+
+	private FlatAST(int size) {
+		this.kind = new byte[size];
+		this.type = new byte[size];
+		this.intData = new int[size];
+		this.floatData = new float[size];
+		this.firstChild = new int[size];
+		this.childCount = new int[size];
+	}
+
+	// Monta a versão compacta da árvore com raiz em 'root'.
+	public static FlatAST of(AST root) {
+		int size = count(root);
+		FlatAST flat = new FlatAST(size);
+
+		// Fila da busca em largura. O nó da posição i vai para o índice i.
+		AST[] queue = new AST[size];
+		queue[0] = root;
+		int next = 1;
+		for (int i = 0; i < size; i++) {
+			AST node = queue[i];
+			flat.kind[i] = (byte) node.kind.ordinal();
+			flat.type[i] = (byte) node.type.ordinal();
+			flat.intData[i] = node.intData;
+			flat.floatData[i] = node.floatData;
+			flat.firstChild[i] = next;
+			flat.childCount[i] = node.getChildCount();
+			for (int c = 0; c < node.getChildCount(); c++) {
+				queue[next++] = node.getChild(c);
+			}
+			queue[i] = null; // Não segura a árvore original até o fim.
+		}
+		return flat;
+	}
+
+	// Recria a subárvore de objetos AST a partir do nó 'node'. Usa uma
+	// pilha explícita, já que a árvore pode ser muito funda. Os filhos
+	// entram na pilha do último para o primeiro, então cada pai recebe
+	// os seus na ordem.
+	public AST toAST(int node) {
+		AST root = newAST(node);
+		int[] nodes = new int[16];
+		AST[] parents = new AST[16];
+		int top = 0;
+		for (int i = childCount[node] - 1; i >= 0; i--, top++) {
+			nodes[top] = child(node, i);
+			parents[top] = root;
+		}
+		while (top > 0) {
+			int n = nodes[--top];
+			AST ast = newAST(n);
+			parents[top].addChild(ast);
+			parents[top] = null;
+			if (top + childCount[n] > nodes.length) {
+				int capacity = Math.max(nodes.length * 2, top + childCount[n]);
+				nodes = Arrays.copyOf(nodes, capacity);
+				parents = Arrays.copyOf(parents, capacity);
+			}
+			for (int i = childCount[n] - 1; i >= 0; i--, top++) {
+				nodes[top] = child(n, i);
+				parents[top] = ast;
+			}
+		}
+		return root;
+	}
+
+	private AST newAST(int node) {
+		return kind(node) == NodeKind.REAL_VAL_NODE
+		     ? new AST(kind(node), floatData[node], type(node))
+		     : new AST(kind(node), intData[node], type(node));
+	}
+
+	// Grava os vetores em 'out', no formato lido por 'read'. O primeiro
+	// filho não é gravado, ele sai da soma das quantidades de filhos.
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(size());
+		out.write(kind);
+		out.write(type);
+		for (int v : intData) {
+			out.writeInt(v);
+		}
+		for (float v : floatData) {
+			out.writeFloat(v);
+		}
+		for (int v : childCount) {
+			out.writeInt(v);
+		}
+	}
+
+	// Lê uma árvore gravada por 'write', a partir da posição atual de 'in'.
+	// Dados inconsistentes dão IllegalArgumentException.
+	public static FlatAST read(ByteBuffer in) {
+		int size = in.getInt();
+		if (size <= 0 || size > in.remaining()) {
+			throw new IllegalArgumentException("Invalid AST size: " + size);
+		}
+		FlatAST flat = new FlatAST(size);
+		in.get(flat.kind);
+		in.get(flat.type);
+		in.asIntBuffer().get(flat.intData);
+		in.position(in.position() + 4 * size);
+		in.asFloatBuffer().get(flat.floatData);
+		in.position(in.position() + 4 * size);
+		in.asIntBuffer().get(flat.childCount);
+		in.position(in.position() + 4 * size);
+
+		int next = 1;
+		for (int i = 0; i < size; i++) {
+			if (flat.kind[i] < 0 || flat.kind[i] >= KINDS.length
+			    || flat.type[i] < 0 || flat.type[i] >= TYPES.length
+			    || flat.childCount[i] < 0 || (flat.childCount[i] > 0 && next <= i)) {
+				throw new IllegalArgumentException("Invalid AST node: " + i);
+			}
+			flat.firstChild[i] = next;
+			next += flat.childCount[i];
+		}
+		if (next != size) {
+			throw new IllegalArgumentException("Invalid AST shape");
+		}
+		return flat;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Consultas ----------------------------------
+
+	public int size() {
+		return kind.length;
+	}
+
+	public NodeKind kind(int node) {
+		return KINDS[kind[node]];
+	}
+
+	public Type type(int node) {
+		return TYPES[type[node]];
+	}
+
+	public int intData(int node) {
+		return intData[node];
+	}
+
+	public float floatData(int node) {
+		return floatData[node];
+	}
+
+	public int childCount(int node) {
+		return childCount[node];
+	}
+
+	// Índice do i-ésimo filho. Igual ao AST.getChild, não testa o 'i'.
+	public int child(int node, int i) {
+		return firstChild[node] + i;
+	}
+
+	// Bytes ocupados pelos vetores, sem contar os cabeçalhos.
+	public long dataBytes() {
+		return (long) size() * (1 + 1 + 4 + 4 + 4 + 4);
+	}
+
+	// Número de nós da árvore, sem recursão.
+	private static int count(AST root) {
+		ArrayList<AST> stack = new ArrayList<AST>();
+		stack.add(root);
+		int n = 0;
+		while (!stack.isEmpty()) {
+			AST node = stack.remove(stack.size() - 1);
+			n++;
+			for (int i = 0; i < node.getChildCount(); i++) {
+				stack.add(node.getChild(i));
+			}
+		}
+		return n;
+	}
+
+}
@@ -257,6 +257,122 @@ public enum NodeKind {
 		public String toString() {
             return "R2S";
         }
+	},
+
+    INT_PLUS_NODE { // Especializados pelo ast.opt.Quickener.
+		public String toString() {
+            return "i+";
+        }
+	},
+    REAL_PLUS_NODE {
+		public String toString() {
+            return "r+";
+        }
+	},
+    BOOL_PLUS_NODE {
+		public String toString() {
+            return "b+";
+        }
+	},
+    STR_PLUS_NODE {
+		public String toString() {
+            return "s+";
+        }
+	},
+    INT_MINUS_NODE {
+		public String toString() {
+            return "i-";
+        }
+	},
+    REAL_MINUS_NODE {
+		public String toString() {
+            return "r-";
+        }
+	},
+    INT_TIMES_NODE {
+		public String toString() {
+            return "i*";
+        }
+	},
+    REAL_TIMES_NODE {
+		public String toString() {
+            return "r*";
+        }
+	},
+    INT_OVER_NODE {
+		public String toString() {
+            return "i/";
+        }
+	},
+    REAL_OVER_NODE {
+		public String toString() {
+            return "r/";
+        }
+	},
+    INT_EQ_NODE {
+		public String toString() {
+            return "i=";
+        }
+	},
+    REAL_EQ_NODE {
+		public String toString() {
+            return "r=";
+        }
+	},
+    STR_EQ_NODE {
+		public String toString() {
+            return "s=";
+        }
+	},
+    INT_LT_NODE {
+		public String toString() {
+            return "i<";
+        }
+	},
+    REAL_LT_NODE {
+		public String toString() {
+            return "r<";
+        }
+	},
+    STR_LT_NODE {
+		public String toString() {
+            return "s<";
+        }
+	},
+    INT_GT_NODE {
+		public String toString() {
+            return "i>";
+        }
+	},
+    REAL_GT_NODE {
+		public String toString() {
+            return "r>";
+        }
+	},
+    STR_GT_NODE {
+		public String toString() {
+            return "s>";
+        }
+	},
+    INT_LOAD_NODE {
+		public String toString() {
+            return "iload ";
+        }
+	},
+    REAL_LOAD_NODE {
+		public String toString() {
+            return "rload ";
+        }
+	},
+    INT_STORE_NODE {
+		public String toString() {
+            return "i:= ";
+        }
+	},
+    REAL_STORE_NODE {
+		public String toString() {
+            return "r:= ";
+        }
 	};
 	
 	public static boolean hasData(NodeKind kind) {
@@ -267,9 +383,56 @@ public enum NodeKind {
 	        case STR_VAL_NODE:
 	        case VAR_DECL_NODE:
 	        case VAR_USE_NODE:
+	        case INT_LOAD_NODE:
+	        case REAL_LOAD_NODE:
+	        case INT_STORE_NODE:
+	        case REAL_STORE_NODE:
 	            return true;
 	        default:
 	            return false;
 		}
 	}
+
+	// Nó genérico correspondente a um nó especializado pelo Quickener, ou
+	// o próprio 'kind' para os outros. Um back-end que não tira proveito
+	// da especialização faz o switch sobre 'generic()' e aceita as duas
+	// formas da árvore.
+	public NodeKind generic() {
+		switch(this) {
+	        case INT_PLUS_NODE:
+	        case REAL_PLUS_NODE:
+	        case BOOL_PLUS_NODE:
+	        case STR_PLUS_NODE:
+	            return PLUS_NODE;
+	        case INT_MINUS_NODE:
+	        case REAL_MINUS_NODE:
+	            return MINUS_NODE;
+	        case INT_TIMES_NODE:
+	        case REAL_TIMES_NODE:
+	            return TIMES_NODE;
+	        case INT_OVER_NODE:
+	        case REAL_OVER_NODE:
+	            return OVER_NODE;
+	        case INT_EQ_NODE:
+	        case REAL_EQ_NODE:
+	        case STR_EQ_NODE:
+	            return EQ_NODE;
+	        case INT_LT_NODE:
+	        case REAL_LT_NODE:
+	        case STR_LT_NODE:
+	            return LT_NODE;
+	        case INT_GT_NODE:
+	        case REAL_GT_NODE:
+	        case STR_GT_NODE:
+	            return GT_NODE;
+	        case INT_LOAD_NODE:
+	        case REAL_LOAD_NODE:
+	            return VAR_USE_NODE;
+	        case INT_STORE_NODE:
+	        case REAL_STORE_NODE:
+	            return ASSIGN_NODE;
+	        default:
+	            return this;
+		}
+	}
 }
@@ -0,0 +1,312 @@
+package ast.opt;
+
+import static typing.Type.BOOL_TYPE;
+import static typing.Type.INT_TYPE;
+import static typing.Type.REAL_TYPE;
+
+import ast.AST;
+import ast.NodeKind;
+import tables.VarTable;
+
+/*
+ * Passo de otimização sobre a AST já verificada, rodado entre o
+ * SemanticChecker e o back-end escolhido. Faz três coisas:
+ *
+ * - Dobra subárvores constantes: '2 * 3 + 1' vira o literal 7.
+ * - Propaga variáveis com uma única atribuição, feita fora de if/repeat,
+ *   de um literal: os usos depois dela viram o literal.
+ * - Troca um 'if' com teste constante pelo ramo escolhido.
+ *
+ * A propagação só vale para as variáveis do programa principal. Dentro
+ * de uma função os VAR_USE são índices da tabela da própria função, e
+ * não da VarTable global, então o corpo dela só tem as contas dobradas.
+ *
+ * Os nós da AST são imutáveis, então o passo monta uma árvore nova.
+ *
+ * Só é dobrado o que todos os back-ends calculam do mesmo jeito. Ficam
+ * de fora as contas com real (o Interpreter usa float e o CodeGen
+ * double), as comparações de bool e string, e as divisões que dariam
+ * erro em tempo de execução. Os 'repeat' também não são removidos
+ * mesmo com teste constante, porque o Interpreter e a VM executam o
+ * corpo antes do teste e o CodeGen depois.
+ */
+public final class ConstantFolder {
+
+	private final VarTable vt;
+
+	// Quantas vezes cada variável é escrita (atribuição ou Readln).
+	private int[] writes;
+	// Literal de cada variável já propagável, ou null.
+	private AST[] known;
+	// Se o nó atual está no corpo de uma função (veja acima).
+	private boolean inFunction;
+
+	private int folded, propagated, ifs;
+	private int before, after;
+
+	public ConstantFolder(VarTable vt) {
+		this.vt = vt;
+	}
+
+	public AST run(AST root) {
+		writes = new int[vt.getSize()];
+		known = new AST[vt.getSize()];
+		countWrites(root);
+
+		AST result = fold(root, true);
+		before = count(root);
+		after = count(result);
+		return result;
+	}
+
+	// Resumo do que o passo fez, para a stderr.
+	public String report() {
+		return String.format("ast.opt: %d nodes removed (%d -> %d); "
+		                     + "%d folded, %d uses propagated, %d ifs simplified\n",
+		                     before - after, before, after, folded, propagated, ifs);
+	}
+
+	public int removedNodes() {
+		return before - after;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Reescrita ----------------------------------
+
+	// 'top' diz se o nó é executado sempre, ou seja, não está dentro de
+	// um if ou repeat. Só atribuições nessa situação podem ser propagadas.
+	private AST fold(AST node, boolean top) {
+		switch (node.kind) {
+			case FUNCTION_NODE:     return foldFunction(node);
+			case IF_NODE:           return foldIf(node, top);
+			case REPEAT_NODE:       return rebuild(node, false);
+			case STATEMENT_LIST_NODE: return foldStatements(node, top);
+			case ASSIGN_NODE:       return foldAssign(node, top);
+			case PROCEDURE_DESIGN_NODE:
+				// Os argumentos do Readln são destinos, não podem virar literais.
+				return isReadln(node) ? node : rebuild(node, top);
+			case VAR_USE_NODE:      return foldVarUse(node);
+			case PLUS_NODE:
+			case MINUS_NODE:
+			case TIMES_NODE:
+			case OVER_NODE:         return foldArith(node, top);
+			case EQ_NODE:
+			case LT_NODE:
+			case GT_NODE:           return foldComp(node, top);
+			case I2R_NODE:          return foldI2R(node, top);
+			default:                return rebuild(node, top);
+		}
+	}
+
+	// Cópia do nó com os filhos já reescritos.
+	private AST rebuild(AST node, boolean top) {
+		AST copy = copy(node);
+		for (int i = 0; i < node.getChildCount(); i++) {
+			copy.addChild(fold(node.getChild(i), top));
+		}
+		return copy;
+	}
+
+	// Um 'if' removido some da lista; um 'if' trocado por um ramo que é
+	// uma lista fica como uma lista aninhada, que todos os back-ends aceitam.
+	private AST foldStatements(AST node, boolean top) {
+		AST copy = copy(node);
+		for (int i = 0; i < node.getChildCount(); i++) {
+			AST stmt = foldStatement(node.getChild(i), top);
+			if (stmt != null) {
+				copy.addChild(stmt);
+			}
+		}
+		return copy;
+	}
+
+	// Reescreve um comando. Retorna null se o comando não faz nada.
+	private AST foldStatement(AST node, boolean top) {
+		if (node.kind != NodeKind.IF_NODE) {
+			return fold(node, top);
+		}
+		AST test = fold(node.getChild(0), false);
+		if (test.kind != NodeKind.BOOL_VAL_NODE) {
+			AST copy = copy(node);
+			copy.addChild(test);
+			for (int i = 1; i < node.getChildCount(); i++) {
+				copy.addChild(fold(node.getChild(i), false));
+			}
+			return copy;
+		}
+		ifs++;
+		if (test.intData == 1) {
+			return foldStatement(node.getChild(1), top);
+		} else if (node.getChildCount() == 3) {
+			return foldStatement(node.getChild(2).getChild(0), top); // ELSE_NODE
+		}
+		return null;
+	}
+
+	// 'if' onde um comando é obrigatório (corpo de outro if ou de um repeat).
+	private AST foldIf(AST node, boolean top) {
+		AST stmt = foldStatement(node, top);
+		return stmt != null ? stmt : AST.newSubtree(NodeKind.STATEMENT_LIST_NODE, node.type);
+	}
+
+	private AST foldFunction(AST node) {
+		boolean outer = inFunction;
+		inFunction = true;
+		try {
+			return rebuild(node, false);
+		} finally {
+			inFunction = outer;
+		}
+	}
+
+	private AST foldAssign(AST node, boolean top) {
+		AST var = node.getChild(0);
+		AST expr = fold(node.getChild(1), top);
+		int idx = var.intData;
+		if (top && !inFunction && var.kind == NodeKind.VAR_USE_NODE && writes[idx] == 1
+		    && isLiteral(expr) && expr.type == vt.getType(idx)) {
+			known[idx] = expr;
+		}
+		AST copy = copy(node);
+		copy.addChild(copy(var));
+		copy.addChild(expr);
+		return copy;
+	}
+
+	private AST foldVarUse(AST node) {
+		if (inFunction) {
+			return copy(node);
+		}
+		AST value = known[node.intData];
+		if (value == null) {
+			return copy(node);
+		}
+		propagated++;
+		return copy(value);
+	}
+
+	private AST foldArith(AST node, boolean top) {
+		AST l = fold(node.getChild(0), top);
+		AST r = fold(node.getChild(1), top);
+		if (node.type == INT_TYPE && l.kind == NodeKind.INT_VAL_NODE && r.kind == NodeKind.INT_VAL_NODE) {
+			int a = l.intData;
+			int b = r.intData;
+			switch (node.kind) {
+				case PLUS_NODE:  return intVal(a + b);
+				case MINUS_NODE: return intVal(a - b);
+				case TIMES_NODE: return intVal(a * b);
+				case OVER_NODE:
+					// Divisão por zero fica para a execução dar o erro.
+					if (b != 0 && !(a == Integer.MIN_VALUE && b == -1)) {
+						return intVal(a / b);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		return withChildren(node, l, r);
+	}
+
+	private AST foldComp(AST node, boolean top) {
+		AST l = fold(node.getChild(0), top);
+		AST r = fold(node.getChild(1), top);
+		int cmp;
+		if (l.kind == NodeKind.INT_VAL_NODE && r.kind == NodeKind.INT_VAL_NODE) {
+			cmp = Integer.compare(l.intData, r.intData);
+		} else if (l.kind == NodeKind.REAL_VAL_NODE && r.kind == NodeKind.REAL_VAL_NODE
+		           && !Float.isNaN(l.floatData) && !Float.isNaN(r.floatData)) {
+			float a = l.floatData;
+			float b = r.floatData;
+			cmp = a < b ? -1 : (a > b ? 1 : 0); // Não o Float.compare: 0.0 = -0.0.
+		} else {
+			return withChildren(node, l, r);
+		}
+
+		boolean value;
+		switch (node.kind) {
+			case EQ_NODE: value = cmp == 0; break;
+			case LT_NODE: value = cmp < 0; break;
+			default:      value = cmp > 0; break; // GT_NODE
+		}
+		folded++;
+		return new AST(NodeKind.BOOL_VAL_NODE, value ? 1 : 0, BOOL_TYPE);
+	}
+
+	// Só converte inteiros que o float representa exatamente.
+	private AST foldI2R(AST node, boolean top) {
+		AST child = fold(node.getChild(0), top);
+		if (child.kind == NodeKind.INT_VAL_NODE && Math.abs((long) child.intData) <= (1 << 24)) {
+			folded++;
+			return new AST(NodeKind.REAL_VAL_NODE, (float) child.intData, REAL_TYPE);
+		}
+		return withChildren(node, child);
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Auxiliares ---------------------------------
+
+	private AST intVal(int value) {
+		folded++;
+		return new AST(NodeKind.INT_VAL_NODE, value, INT_TYPE);
+	}
+
+	private static AST withChildren(AST node, AST... children) {
+		AST copy = copy(node);
+		for (AST child : children) {
+			copy.addChild(child);
+		}
+		return copy;
+	}
+
+	// Cópia do nó sem os filhos. O único nó com dado float é o REAL_VAL.
+	private static AST copy(AST node) {
+		if (node.kind == NodeKind.REAL_VAL_NODE) {
+			return new AST(node.kind, node.floatData, node.type);
+		}
+		return new AST(node.kind, node.intData, node.type);
+	}
+
+	private static boolean isLiteral(AST node) {
+		return (node.kind == NodeKind.INT_VAL_NODE && node.type == INT_TYPE)
+		    || (node.kind == NodeKind.REAL_VAL_NODE && node.type == REAL_TYPE)
+		    || (node.kind == NodeKind.BOOL_VAL_NODE && node.type == BOOL_TYPE);
+	}
+
+	// Chamada do Readln: PROCEDURE_DESIGN(FUNC_IDENT 0, PARAMETER_LIST).
+	private static boolean isReadln(AST node) {
+		return node.getChild(0).intData == 0;
+	}
+
+	// Conta as escritas de cada variável global, em qualquer ponto do
+	// programa fora das funções.
+	private void countWrites(AST node) {
+		if (node.kind == NodeKind.FUNCTION_NODE) {
+			return;
+		}
+		// Atribuições ao nome de uma função (FUNC_IDENT) não contam.
+		if (node.kind == NodeKind.ASSIGN_NODE && node.getChild(0).kind == NodeKind.VAR_USE_NODE) {
+			writes[node.getChild(0).intData]++;
+		} else if (node.kind == NodeKind.PROCEDURE_DESIGN_NODE && isReadln(node)
+		           && node.getChildCount() > 1) {
+			AST args = node.getChild(1);
+			for (int i = 0; i < args.getChildCount(); i++) {
+				if (args.getChild(i).kind == NodeKind.VAR_USE_NODE) {
+					writes[args.getChild(i).intData]++;
+				}
+			}
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			countWrites(node.getChild(i));
+		}
+	}
+
+	private static int count(AST node) {
+		int n = 1;
+		for (int i = 0; i < node.getChildCount(); i++) {
+			n += count(node.getChild(i));
+		}
+		return n;
+	}
+
+}
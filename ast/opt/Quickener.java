@@ -0,0 +1,189 @@
+package ast.opt;
+
+import static typing.Type.REAL_TYPE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ast.AST;
+import ast.NodeKind;
+import typing.Type;
+
+/*
+ * Passo rodado depois do SemanticChecker (e do ConstantFolder, se
+ * ligado) que troca os nós genéricos por versões especializadas pelo
+ * tipo, já resolvido pelo checker:
+ *
+ * - '+', '-', '*' e '/' viram INT_PLUS, REAL_PLUS, BOOL_PLUS, STR_PLUS...
+ *   conforme o tipo do resultado.
+ * - '=', '<' e '>' entre ints, reais ou strings viram INT_EQ, REAL_LT,
+ *   STR_GT... conforme o tipo dos operandos. As comparações entre bools
+ *   continuam genéricas.
+ * - Os usos de variável viram INT_LOAD ou REAL_LOAD e as atribuições a
+ *   variável viram INT_STORE ou REAL_STORE, com a posição da variável na
+ *   memória no 'intData' do próprio nó. Os ints, bools e índices de
+ *   string são todos palavras inteiras, por isso só há as duas versões.
+ *
+ * O 'type' e os filhos dos nós não mudam; o STORE continua com o
+ * VAR_USE do destino como primeiro filho. Assim quem só sabe lidar com
+ * os nós genéricos usa NodeKind.generic() (ou os métodos padrão do
+ * ASTBaseVisitor) e aceita a árvore especializada sem mudar nada.
+ *
+ * Com a especialização, o Interpreter não precisa mais olhar o tipo do
+ * nó nem a VarTable a cada execução.
+ */
+public final class Quickener {
+
+	private int quickened;
+
+	public AST run(AST root) {
+		quickened = 0;
+		return quicken(root);
+	}
+
+	// Quantos nós foram especializados na última execução.
+	public int quickenedNodes() {
+		return quickened;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Reescrita ----------------------------------
+
+	// Nó sendo reescrito: os filhos a partir de 'next' ainda faltam.
+	private static final class Frame {
+		final AST node;
+		int next;
+
+		Frame(AST node, int next) {
+			this.node = node;
+			this.next = next;
+		}
+	}
+
+	// A árvore é reescrita de baixo para cima, com uma pilha explícita em
+	// vez de recursão, porque as expressões geradas por máquina podem ter
+	// milhões de níveis (veja ASTBaseVisitor.operand). Cada nó vira uma
+	// cópia montada com as cópias dos filhos, que ficam em 'done'.
+	private AST quicken(AST root) {
+		ArrayList<Frame> stack = new ArrayList<Frame>();
+		ArrayList<AST> done = new ArrayList<AST>();
+		enter(root, stack, done);
+		while (!stack.isEmpty()) {
+			Frame f = stack.get(stack.size() - 1);
+			if (f.next < f.node.getChildCount()) {
+				enter(f.node.getChild(f.next++), stack, done);
+			} else {
+				stack.remove(stack.size() - 1);
+				List<AST> children = done.subList(done.size() - (f.node.getChildCount() - first(f.node)), done.size());
+				AST copy = leave(f.node, children);
+				children.clear();
+				done.add(copy);
+			}
+		}
+		return done.get(0);
+	}
+
+	private static void enter(AST node, ArrayList<Frame> stack, ArrayList<AST> done) {
+		if (node.kind == NodeKind.PROCEDURE_DESIGN_NODE && node.getChild(0).intData == 0) {
+			// Os argumentos do Readln são destinos, não são lidos.
+			done.add(node);
+		} else {
+			stack.add(new Frame(node, first(node)));
+		}
+	}
+
+	// Primeiro filho reescrito. O destino de uma atribuição a variável não
+	// é, ele vira o primeiro filho do STORE (veja 'leave').
+	private static int first(AST node) {
+		return isVarAssign(node) ? 1 : 0;
+	}
+
+	// Cópia especializada de 'node' com os filhos já reescritos.
+	private AST leave(AST node, List<AST> children) {
+		switch (node.kind) {
+			case ASSIGN_NODE:
+				return quickenAssign(node, children);
+			case VAR_USE_NODE:
+				return rebuild(node, node.type == REAL_TYPE ? NodeKind.REAL_LOAD_NODE : NodeKind.INT_LOAD_NODE, children);
+			case PLUS_NODE:
+				return rebuild(node, plus(node.type), children);
+			case MINUS_NODE:
+				return rebuild(node, arith(node.type, NodeKind.INT_MINUS_NODE, NodeKind.REAL_MINUS_NODE, node.kind), children);
+			case TIMES_NODE:
+				return rebuild(node, arith(node.type, NodeKind.INT_TIMES_NODE, NodeKind.REAL_TIMES_NODE, node.kind), children);
+			case OVER_NODE:
+				return rebuild(node, arith(node.type, NodeKind.INT_OVER_NODE, NodeKind.REAL_OVER_NODE, node.kind), children);
+			case EQ_NODE:
+				return rebuild(node, comp(node, NodeKind.INT_EQ_NODE, NodeKind.REAL_EQ_NODE, NodeKind.STR_EQ_NODE), children);
+			case LT_NODE:
+				return rebuild(node, comp(node, NodeKind.INT_LT_NODE, NodeKind.REAL_LT_NODE, NodeKind.STR_LT_NODE), children);
+			case GT_NODE:
+				return rebuild(node, comp(node, NodeKind.INT_GT_NODE, NodeKind.REAL_GT_NODE, NodeKind.STR_GT_NODE), children);
+			default:
+				return rebuild(node, node.kind, children);
+		}
+	}
+
+	// Cópia do nó com o 'kind' dado e os filhos dados.
+	private AST rebuild(AST node, NodeKind kind, List<AST> children) {
+		if (kind != node.kind) {
+			quickened++;
+		}
+		AST copy = kind == NodeKind.REAL_VAL_NODE
+		         ? new AST(kind, node.floatData, node.type)
+		         : new AST(kind, node.intData, node.type);
+		for (AST child : children) {
+			copy.addChild(child);
+		}
+		return copy;
+	}
+
+	// Só as atribuições a variável; a do valor de retorno de uma função
+	// (com um FUNC_IDENT à esquerda) fica como está.
+	private static boolean isVarAssign(AST node) {
+		return node.kind == NodeKind.ASSIGN_NODE && node.getChild(0).kind == NodeKind.VAR_USE_NODE;
+	}
+
+	private AST quickenAssign(AST node, List<AST> children) {
+		if (!isVarAssign(node)) {
+			return rebuild(node, node.kind, children);
+		}
+		AST var = node.getChild(0);
+		NodeKind kind = var.type == REAL_TYPE ? NodeKind.REAL_STORE_NODE : NodeKind.INT_STORE_NODE;
+		AST copy = new AST(kind, var.intData, node.type);
+		copy.addChild(new AST(var.kind, var.intData, var.type));
+		copy.addChild(children.get(0));
+		quickened++;
+		return copy;
+	}
+
+	private static NodeKind plus(Type type) {
+		switch (type) {
+			case INT_TYPE:  return NodeKind.INT_PLUS_NODE;
+			case REAL_TYPE: return NodeKind.REAL_PLUS_NODE;
+			case BOOL_TYPE: return NodeKind.BOOL_PLUS_NODE;
+			case STR_TYPE:  return NodeKind.STR_PLUS_NODE;
+			default:        return NodeKind.PLUS_NODE;
+		}
+	}
+
+	private static NodeKind arith(Type type, NodeKind intKind, NodeKind realKind, NodeKind generic) {
+		switch (type) {
+			case INT_TYPE:  return intKind;
+			case REAL_TYPE: return realKind;
+			default:        return generic;
+		}
+	}
+
+	// Pelo tipo do operando da direita, como no Interpreter. Os dois lados
+	// têm o mesmo tipo por causa dos nós de conversão.
+	private static NodeKind comp(AST node, NodeKind intKind, NodeKind realKind, NodeKind strKind) {
+		switch (node.getChild(1).type) {
+			case INT_TYPE:  return intKind;
+			case REAL_TYPE: return realKind;
+			case STR_TYPE:  return strKind;
+			default:        return node.kind;
+		}
+	}
+
+}
@@ -37,6 +37,7 @@ import static typing.Type.ARRAY_TYPE;
 
 import ast.AST;
 import ast.NodeKind;
+import driver.CompileError;
 import parser.pascalBaseVisitor;
 import parser.pascalParser;
 import parser.pascalParser.SimpleExpressionContext;
@@ -110,8 +111,7 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
     	if (idx == -1) {
     		System.err.printf("SEMANTIC ERROR (%d): variable '%s' was not declared.\n", line, text);
     		// A partir de agora vou abortar no primeiro erro para facilitar.
-    		System.exit(1);
-            return null; // Never reached.
+    		throw new CompileError();
         }
     	return new AST(VAR_USE_NODE, idx, vt.getType(idx));
     }
@@ -123,8 +123,7 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
     	if (idx == -1) {
     		System.err.printf("SEMANTIC ERROR (%d): variable '%s' was not declared.\n", line, text);
     		// A partir de agora vou abortar no primeiro erro para facilitar.
-    		System.exit(1);
-            return null; // Never reached.
+    		throw new CompileError();
         }
     	return new AST(VAR_USE_NODE, idx, ft.getVarTable(ft.getSize()-1).getType(idx));
     }
@@ -136,8 +135,7 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
     	if (idx == -1) {
     		System.err.printf("SEMANTIC ERROR (%d): function '%s' was not declared.\n", line, text);
     		// A partir de agora vou abortar no primeiro erro para facilitar.
-    		System.exit(1);
-            return null; // Never reached.
+    		throw new CompileError();
         }
     	return new AST(NodeKind.FUNC_IDENT_NODE, idx, ft.getType(idx));
     }
@@ -151,8 +149,7 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
         if (idx != -1) {
         	System.err.printf("SEMANTIC ERROR (%d): variable '%s' already declared at line %d.\n", line, text, vt.getLine(idx));
         	// A partir de agora vou abortar no primeiro erro para facilitar.
-        	System.exit(1);
-            return null; // Never reached.
+        	throw new CompileError();
         }
         idx = vt.addVar(text, line, lastDeclType);
         if (isArray){
@@ -168,8 +165,7 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
         if (idx != -1) {
         	System.err.printf("SEMANTIC ERROR (%d): function '%s' already declared at line %d.\n", line, text, vt.getLine(idx));
         	// A partir de agora vou abortar no primeiro erro para facilitar.
-        	System.exit(1);
-            return null; // Never reached.
+        	throw new CompileError();
         }
         idx = ft.addFunction(text, line, lastDeclType);
         return new AST(NodeKind.FUNC_IDENT_NODE, idx, lastDeclType);
@@ -182,8 +178,7 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
         if (idx != -1) {
         	System.err.printf("SEMANTIC ERROR (%d): variable '%s' already declared at line %d.\n", line, text, vt.getLine(idx));
         	// A partir de agora vou abortar no primeiro erro para facilitar.
-        	System.exit(1);
-            return null; // Never reached.
+        	throw new CompileError();
         }
         idx = ft.setVariable(text, line, lastDeclType);
         if (isArray){
@@ -215,16 +210,16 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
     // Type checking and inference.
 
     private static void typeError(int lineNo, String op, Type t1, Type t2) {
-    	System.out.printf("SEMANTIC ERROR (%d): incompatible types for operator '%s', LHS is '%s' and RHS is '%s'.\n",
+    	System.err.printf("SEMANTIC ERROR (%d): incompatible types for operator '%s', LHS is '%s' and RHS is '%s'.\n",
     			lineNo, op, t1.toString(), t2.toString());
-    	System.exit(1);
+    	throw new CompileError();
     }
 
     private static void checkBoolExpr(int lineNo, String cmd, Type t) {
         if (t != BOOL_TYPE) {
-            System.out.printf("SEMANTIC ERROR (%d): conditional expression in '%s' is '%s' instead of '%s'.\n",
+            System.err.printf("SEMANTIC ERROR (%d): conditional expression in '%s' is '%s' instead of '%s'.\n",
                lineNo, cmd, t.toString(), BOOL_TYPE.toString());
-            System.exit(1);
+            throw new CompileError();
         }
     }
 
@@ -263,6 +258,11 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
     public AST visitProgram(pascalParser.ProgramContext ctx) {
         AST programHeading = visit(ctx.programHeading());
         AST block          = visit(ctx.block());
+        return program(programHeading, block);
+    }
+
+    // Raiz da AST a partir do cabeçalho e do bloco já verificados.
+    public AST program(AST programHeading, AST block) {
         this.root = AST.newSubtree(NodeKind.PROGRAM_NODE, NO_TYPE, programHeading, block);
         return this.root;
     }
@@ -292,13 +292,23 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
             }
         }*/
 
-        for (int i = 0; i < ctx.procedureAndFunctionDeclarationPart().size(); i++) {
+        // A lista é pega uma vez só: cada procedureAndFunctionDeclarationPart(i)
+        // percorre todos os filhos do bloco, o que fica quadrático com muitas funções.
+        List<pascalParser.ProcedureAndFunctionDeclarationPartContext> parts = ctx.procedureAndFunctionDeclarationPart();
+        for (int i = 0; i < parts.size(); i++) {
             // Visita um por um, com o 0 sendo o primeiro (fora do fecho), e
             // os demais dentro do fecho.
-            AST child = visit(ctx.procedureAndFunctionDeclarationPart(i));
+            AST child = visit(parts.get(i));
             node.addChild(child);
         }
 
+        return finishBlock(node, ctx);
+    }
+
+    // Resto do bloco, depois das funções: as variáveis e os comandos.
+    // Separado porque o front-end em pipeline (driver.Pipeline) verifica
+    // as funções do programa enquanto o parser ainda lê o resto.
+    public AST finishBlock(AST node, pascalParser.BlockContext ctx) {
         if (ctx.variableDeclarationPart().size() > 0){
             node.addChild(visit(ctx.variableDeclarationPart(0)));
         }
@@ -485,10 +495,13 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
     @Override public AST visitStatements(pascalParser.StatementsContext ctx) {
         AST node = AST.newSubtree(NodeKind.STATEMENT_LIST_NODE, NO_TYPE);
 
-        for (int i = 0; i < ctx.statement().size()-1; i++) {
+        // ctx.statement(i) percorre os filhos do nó a cada chamada, então
+        // pega a lista uma vez só para não ficar quadrático.
+        List<pascalParser.StatementContext> statements = ctx.statement();
+        for (int i = 0; i < statements.size()-1; i++) {
             // Visita um por um, com o 0 sendo o primeiro (fora do fecho), e
             // os demais dentro do fecho.
-            AST child = visit(ctx.statement(i));
+            AST child = visit(statements.get(i));
             node.addChild(child);
         }
 
@@ -550,13 +563,13 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
             // Compara os parametros que foram lidos com os esperados da função.
             if (parameters.size() != parameters_esperados.size()){
                 System.err.printf("SEMANTIC ERROR (%d): function '%s' mismatch number of arguments.\n", line, text);
-                System.exit(1);
+                throw new CompileError();
             }
 
             for (int i=0; i<parameters.size(); i++){
                 if (parameters.get(i) != parameters_esperados.get(i)){
                     System.err.printf("SEMANTIC ERROR (%d): function '%s' mismatch type of arguments.\n", line, text);
-                    System.exit(1);
+                    throw new CompileError();
                 }
             }
         }
@@ -590,116 +603,129 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
 		return checkAssign(idToken.getLine(), idNode, exprNode);
     }
 
+    // As três regras de expressão são iterativas na gramática (operando,
+    // e depois pares operador/operando), então a AST é montada aqui da
+    // esquerda para a direita: 'a - b - c' vira '(a - b) - c'. As listas
+    // são pegas uma vez só porque ctx.term(i) percorre os filhos a cada
+    // chamada.
     @Override public AST visitExpression(pascalParser.ExpressionContext ctx) {
-        if (ctx.relationaloperator() != null){
-            AST simpleExpression = visit(ctx.simpleExpression());
-            AST Expression = visit(ctx.expression());
-            Unif unif = simpleExpression.type.unifyComp(Expression.type);
+        List<pascalParser.SimpleExpressionContext> operands = ctx.simpleExpression();
+        List<pascalParser.RelationaloperatorContext> operators = ctx.relationaloperator();
+        AST left = visit(operands.get(0));
+
+        for (int i = 0; i < operators.size(); i++) {
+            Token operator = operators.get(i).operator;
+            AST right = visit(operands.get(i + 1));
+            Unif unif = left.type.unifyComp(right.type);
 
             if (unif.type == NO_TYPE) {
-                typeError(
-                    ctx.relationaloperator().operator.getLine(),
-                    ctx.relationaloperator().operator.getText().toLowerCase(),
-                    simpleExpression.type, Expression.type);
+                typeError(operator.getLine(), operator.getText().toLowerCase(), left.type, right.type);
             }
 
-            simpleExpression = Conv.createConvNode(unif.lc, simpleExpression);
-            Expression = Conv.createConvNode(unif.rc, Expression);
-
-            if (ctx.relationaloperator().operator.getType() == pascalParser.EQUAL)
-                return AST.newSubtree(EQ_NODE, unif.type, simpleExpression, Expression);
-            else if(ctx.relationaloperator().operator.getType() == pascalParser.NOT_EQUAL)
-                return AST.newSubtree(NOT_EQ_NODE, unif.type, simpleExpression, Expression);
-            else if(ctx.relationaloperator().operator.getType() == pascalParser.LT)
-                return AST.newSubtree(LT_NODE, unif.type, simpleExpression, Expression);
-            else if(ctx.relationaloperator().operator.getType() == pascalParser.LE)
-                return AST.newSubtree(LE_NODE, unif.type, simpleExpression, Expression);
-            else if(ctx.relationaloperator().operator.getType() == pascalParser.GT)
-                return AST.newSubtree(GT_NODE, unif.type, simpleExpression, Expression);
-            else if(ctx.relationaloperator().operator.getType() == pascalParser.GE)
-                return AST.newSubtree(GE_NODE, unif.type, simpleExpression, Expression);
+            NodeKind kind = null;
+            if (operator.getType() == pascalParser.EQUAL)
+                kind = EQ_NODE;
+            else if(operator.getType() == pascalParser.NOT_EQUAL)
+                kind = NOT_EQ_NODE;
+            else if(operator.getType() == pascalParser.LT)
+                kind = LT_NODE;
+            else if(operator.getType() == pascalParser.LE)
+                kind = LE_NODE;
+            else if(operator.getType() == pascalParser.GT)
+                kind = GT_NODE;
+            else if(operator.getType() == pascalParser.GE)
+                kind = GE_NODE;
+
+            // 'in' ainda não tem nó: fica só o operando da esquerda.
+            if (kind != null) {
+                left = AST.newSubtree(kind, unif.type,
+                    Conv.createConvNode(unif.lc, left), Conv.createConvNode(unif.rc, right));
+            }
         }
-        
-        return visit(ctx.simpleExpression());
+
+        return left;
     }
 
     @Override public AST visitSimpleExpression(pascalParser.SimpleExpressionContext ctx) {
-        if (ctx.additiveoperator() != null){
-            AST term = visit(ctx.term());
-            AST simpleExpression = visit(ctx.simpleExpression());
+        List<pascalParser.TermContext> operands = ctx.term();
+        List<pascalParser.AdditiveoperatorContext> operators = ctx.additiveoperator();
+        AST left = visitTerm(operands.get(0));
+
+        for (int i = 0; i < operators.size(); i++) {
+            Token operator = operators.get(i).operator;
+            AST right = visitTerm(operands.get(i + 1));
             Unif unif = null;
 
-            if(ctx.additiveoperator().operator.getType() == pascalParser.PLUS){
-                unif = term.type.unifyPlus(term.type);
+            // O tipo do resultado vem só do operando da esquerda.
+            if(operator.getType() == pascalParser.PLUS){
+                unif = left.type.unifyPlus(left.type);
             }
-            else if(ctx.additiveoperator().operator.getType() == pascalParser.OR){
-                unif = term.type.unifyComp(term.type);
+            else if(operator.getType() == pascalParser.OR){
+                unif = left.type.unifyComp(left.type);
             }
-            else if(ctx.additiveoperator().operator.getType() == pascalParser.MINUS){
-                unif = term.type.unifyOtherArith(term.type);
+            else if(operator.getType() == pascalParser.MINUS){
+                unif = left.type.unifyOtherArith(left.type);
             }
 
             if (unif.type == NO_TYPE) {
-                typeError(
-                    ctx.additiveoperator().operator.getLine(),
-                    ctx.additiveoperator().operator.getText().toLowerCase(),
-                    term.type, simpleExpression.type);
+                typeError(operator.getLine(), operator.getText().toLowerCase(), left.type, right.type);
             }
 
-            term = Conv.createConvNode(unif.lc, term);
-            simpleExpression = Conv.createConvNode(unif.rc, simpleExpression);
+            left = Conv.createConvNode(unif.lc, left);
+            right = Conv.createConvNode(unif.rc, right);
 
-            if (ctx.additiveoperator().operator.getType() == pascalParser.PLUS)
-                return AST.newSubtree(PLUS_NODE, unif.type, term, simpleExpression);
-            else if(ctx.additiveoperator().operator.getType() == pascalParser.MINUS)
-                return AST.newSubtree(MINUS_NODE, unif.type, term, simpleExpression);
-            else if(ctx.additiveoperator().operator.getType() == pascalParser.OR)
-                return AST.newSubtree(OR_NODE, unif.type, term, simpleExpression);
+            if (operator.getType() == pascalParser.PLUS)
+                left = AST.newSubtree(PLUS_NODE, unif.type, left, right);
+            else if(operator.getType() == pascalParser.MINUS)
+                left = AST.newSubtree(MINUS_NODE, unif.type, left, right);
+            else if(operator.getType() == pascalParser.OR)
+                left = AST.newSubtree(OR_NODE, unif.type, left, right);
         }
-        
-        return visitTerm(ctx.term());
+
+        return left;
     }
 
     @Override public AST visitTerm(pascalParser.TermContext ctx) {
-        if (ctx.multiplicativeoperator() != null){
-            AST signedFactor = visit(ctx.signedFactor());
-            AST term = visit(ctx.term());
+        List<pascalParser.SignedFactorContext> operands = ctx.signedFactor();
+        List<pascalParser.MultiplicativeoperatorContext> operators = ctx.multiplicativeoperator();
+        AST left = visitSignedFactor(operands.get(0));
+
+        for (int i = 0; i < operators.size(); i++) {
+            Token operator = operators.get(i).operator;
+            AST right = visitSignedFactor(operands.get(i + 1));
             Unif unif = null;
 
-            if(ctx.multiplicativeoperator().operator.getType() == pascalParser.STAR){
-                unif = signedFactor.type.unifyPlus(term.type);
+            if(operator.getType() == pascalParser.STAR){
+                unif = left.type.unifyPlus(right.type);
             }
-            else if(ctx.multiplicativeoperator().operator.getType() == pascalParser.SLASH){
-                unif = signedFactor.type.unifyPlus(term.type);
+            else if(operator.getType() == pascalParser.SLASH){
+                unif = left.type.unifyPlus(right.type);
             }
-            else if(ctx.multiplicativeoperator().operator.getType() == pascalParser.DIV){
-                unif = signedFactor.type.unifyPlus(term.type);
+            else if(operator.getType() == pascalParser.DIV){
+                unif = left.type.unifyPlus(right.type);
             }
-            else if(ctx.multiplicativeoperator().operator.getType() == pascalParser.AND){
-                unif = signedFactor.type.unifyComp(term.type);
+            else if(operator.getType() == pascalParser.AND){
+                unif = left.type.unifyComp(right.type);
             }
 
             if (unif.type == NO_TYPE) {
-                typeError(
-                    ctx.multiplicativeoperator().operator.getLine(),
-                    ctx.multiplicativeoperator().operator.getText().toLowerCase(),
-                    signedFactor.type, term.type);
+                typeError(operator.getLine(), operator.getText().toLowerCase(), left.type, right.type);
             }
 
-            signedFactor = Conv.createConvNode(unif.lc, signedFactor);
-            term = Conv.createConvNode(unif.rc, term);
+            left = Conv.createConvNode(unif.lc, left);
+            right = Conv.createConvNode(unif.rc, right);
 
-            if (ctx.multiplicativeoperator().operator.getType() == pascalParser.STAR)
-                return AST.newSubtree(TIMES_NODE, unif.type, signedFactor, term);
-            else if(ctx.multiplicativeoperator().operator.getType() == pascalParser.SLASH)
-                return AST.newSubtree(OVER_NODE, unif.type, signedFactor, term);
-            else if(ctx.multiplicativeoperator().operator.getType() == pascalParser.DIV)
-                return AST.newSubtree(OVER_NODE, unif.type, signedFactor, term);
-            else if(ctx.multiplicativeoperator().operator.getType() == pascalParser.AND)
-                return AST.newSubtree(AND_NODE, unif.type, signedFactor, term);
+            if (operator.getType() == pascalParser.STAR)
+                left = AST.newSubtree(TIMES_NODE, unif.type, left, right);
+            else if(operator.getType() == pascalParser.SLASH)
+                left = AST.newSubtree(OVER_NODE, unif.type, left, right);
+            else if(operator.getType() == pascalParser.DIV)
+                left = AST.newSubtree(OVER_NODE, unif.type, left, right);
+            else if(operator.getType() == pascalParser.AND)
+                left = AST.newSubtree(AND_NODE, unif.type, left, right);
         }
-        
-        return visitSignedFactor(ctx.signedFactor());
+
+        return left;
     }
 
     @Override public AST visitSignedFactor(pascalParser.SignedFactorContext ctx) {
@@ -747,13 +773,13 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
         // Compara os parametros que foram lidos com os esperados da função.
         if (parameters.size() != parameters_esperados.size()){
             System.err.printf("SEMANTIC ERROR (%d): function '%s' mismatch number of arguments.\n", line, text);
-            System.exit(1);
+            throw new CompileError();
         }
 
         for (int i=0; i<parameters.size(); i++){
             if (parameters.get(i) != parameters_esperados.get(i)){
                 System.err.printf("SEMANTIC ERROR (%d): function '%s' mismatch type of arguments.\n", line, text);
-                System.exit(1);
+                throw new CompileError();
             }
         }
 
@@ -789,7 +815,7 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
                     "line %d: array index type('%s') is incompatible, index must be an integer.",
                     token.getLine(), exprNode.type);
                 System.err.printf("%s",msg);
-                System.exit(1);
+                throw new CompileError();
             }
 
             node.addChild(exprNode);
@@ -822,25 +848,41 @@ public class SemanticChecker extends pascalBaseVisitor<AST> {
 		return new AST(STR_VAL_NODE, idx, STR_TYPE);
     }
 
+    // Uma cadeia 'if ... else if ... else' vem numa regra só, com uma
+    // expressão e um comando por 'if'. Visita tudo na ordem do fonte e
+    // monta os IF_NODE aninhados de trás para frente, sem recursão.
     @Override
     public AST visitIfStatement(pascalParser.IfStatementContext ctx) {
-        // Analisa a expressão booleana.
-        AST exprNode = visit(ctx.expression());
-
-        AST thenNode = visit(ctx.statement(0).unlabelledStatement());
-
-        checkBoolExpr(ctx.IF().getSymbol().getLine(), "if", exprNode.type);
-
-        // Constrói o bloco da condicional.
-        if (ctx.ELSE() == null) {
-            return AST.newSubtree(IF_NODE, NO_TYPE, exprNode, thenNode);
-        } 
-        else {
-            AST elseNode = AST.newSubtree(ELSE_NODE, NO_TYPE); 
-            elseNode.addChild(visitUnlabelledStatement(ctx.statement(1).unlabelledStatement()));
-
-            return AST.newSubtree(IF_NODE, NO_TYPE, exprNode, thenNode, elseNode);
+        // As listas saem uma vez só: ctx.expression(i) e os outros
+        // procuram o i-ésimo filho do começo a cada chamada.
+        List<pascalParser.ExpressionContext> exprs = ctx.expression();
+        List<pascalParser.StatementContext> stmts = ctx.statement();
+        List<TerminalNode> ifs = ctx.IF();
+        int n = exprs.size();
+        AST[] exprNodes = new AST[n];
+        AST[] thenNodes = new AST[n];
+        for (int i = 0; i < n; i++) {
+            // Analisa a expressão booleana.
+            exprNodes[i] = visit(exprs.get(i));
+            thenNodes[i] = visit(stmts.get(i).unlabelledStatement());
+            checkBoolExpr(ifs.get(i).getSymbol().getLine(), "if", exprNodes[i].type);
+        }
+
+        // Constrói o bloco da condicional, a partir do último 'else'.
+        AST tail = null;
+        if (stmts.size() > n) {
+            tail = visitUnlabelledStatement(stmts.get(n).unlabelledStatement());
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            if (tail == null) {
+                tail = AST.newSubtree(IF_NODE, NO_TYPE, exprNodes[i], thenNodes[i]);
+            } else {
+                AST elseNode = AST.newSubtree(ELSE_NODE, NO_TYPE);
+                elseNode.addChild(tail);
+                tail = AST.newSubtree(IF_NODE, NO_TYPE, exprNodes[i], thenNodes[i], elseNode);
+            }
         }
+        return tail;
     }
 
     @Override public AST visitRepeatStatement(pascalParser.RepeatStatementContext ctx) {
@@ -1,12 +1,21 @@
 package code;
 
-import java.io.IOException;
-import java.io.StreamTokenizer;
-import java.io.StringReader;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import ast.AST;
 import ast.ASTBaseVisitor;
+import code.ir.BasicBlock;
+import code.ir.Constant;
+import code.ir.Function;
+import code.ir.Global;
+import code.ir.IRPrinter;
+import code.ir.Instruction;
+import code.ir.Instruction.Op;
+import code.ir.SSABuilder;
+import code.ir.Value;
+import driver.CompileError;
 import tables.StrTable;
 import tables.VarTable;
 import tables.FunctionTable;
@@ -17,11 +26,19 @@ import static typing.Type.REAL_TYPE;
 import static typing.Type.BOOL_TYPE;
 import static typing.Type.STR_TYPE;
 
-import java.util.ArrayList;
-import java.util.Formatter;
-import java.util.HashMap;
 
-public final class CodeGen extends ASTBaseVisitor<String> {
+/*
+ * Gerador de código LLVM. Visita a AST montando um code.ir.Module em
+ * memória, que só é impresso (pelo IRPrinter) depois que a AST inteira
+ * foi visitada. Com o módulo montado dá para passar otimizações sobre
+ * ele antes de imprimir.
+ *
+ * No modo SSA as variáveis int, real e bool não ficam na memória (alloca,
+ * load e store): cada atribuição vira só um novo valor, e os phis nas
+ * junções (if.cont, while.test) são criados pelo SSABuilder conforme o
+ * código é gerado. É o que o 'opt -mem2reg' faria depois.
+ */
+public final class CodeGen extends ASTBaseVisitor<Value> {
 
 	private final StrTable st;
 	private final VarTable vt;
@@ -29,210 +46,221 @@ public final class CodeGen extends ASTBaseVisitor<String> {
 
 	private int functionIDX = -1;
 
-	private static ArrayList<String> declares;
-	private static HashMap<Print, Print> printStrs;
+	// Estado da emissão desta compilação. Nada aqui é estático, então
+	// vários CodeGen podem rodar ao mesmo tempo.
+	private EmitContext ctx;
 
-	private static Formatter strs;
+	// Para onde vai o código gerado.
+	private final IRWriter out;
 
-	private static int globalRegsCount;
-	private static int localRegsCount;
-	private static int jumpLabel;
+	// Funções da libc chamadas pelo código gerado.
+	private final Function strcmp = new Function("strcmp", "i32", List.of("i8*", "i8*"), false);
+	private final Function scanf = new Function("__isoc99_scanf", "i32", List.of("i8*"), true);
+	private final Function printf = new Function("printf", "i32", List.of("i8*"), true);
 
-	private static String compPrototype = "declare i32 @strcmp(i8*, i8*)";
-	private static String scanPrototype = "declare i32 @__isoc99_scanf(i8*, ...)";
-	private static String printPrototype = "declare i32 @printf(i8*, ...)";
+	private Function main;
+	private BasicBlock block;     // Onde as instruções novas são colocadas.
+	private Instruction[] vars;   // 'alloca' de cada variável, pelo índice na VarTable.
+	private Global[] strs;        // Global de cada string, pelo índice na StrTable.
+
+	private final boolean ssa;
+	private SSABuilder ssaBuilder;
+	private boolean[] inRegister;          // Variáveis que o modo SSA tirou da memória.
+	private BasicBlock entry;
+	private Map<Integer, Instruction> readSlots; // Memória para o scanf das variáveis em registrador.
 
 	public CodeGen(StrTable st, VarTable vt, FunctionTable ft) {
+		this(st, vt, ft, IRWriter.toStdout());
+	}
+
+	public CodeGen(StrTable st, VarTable vt, FunctionTable ft, IRWriter out) {
+		this(st, vt, ft, out, false);
+	}
+
+	public CodeGen(StrTable st, VarTable vt, FunctionTable ft, IRWriter out, boolean ssa) {
 		this.st = st;
         this.vt = vt;
         this.ft = ft;
-
-		declares = new ArrayList<>();
-		printStrs = new HashMap<>();
-		strs = new Formatter();
+        this.out = out;
+        this.ssa = ssa;
 	}
 
 	public void execute(AST root) {
-		globalRegsCount = 0;
-		localRegsCount = 1;
-		visit(root);
+		ctx = new EmitContext();
+		vars = new Instruction[vt.getSize()];
+		inRegister = new boolean[vt.getSize()];
+		ssaBuilder = new SSABuilder();
+		readSlots = new HashMap<>();
+		super.execute(root);
+
+		new IRPrinter(out).print(ctx.module);
+		out.flush();
 	}
 
 	// ----------------------------------------------------------------------------
-	// ------------------------------- Prints -------------------------------------
+	// ------------------------------- Módulo -------------------------------------
 
 	private void getStringTable() {
+		strs = new Global[st.size()];
 		for (int i = 0; i < st.size(); i++) {
-			String s = st.getString(i);
-			int x = newGlobalReg();
-			strs.format("@%d = private constant [%d x i8] c\"%s\\00\"\n", x, s.length() + 1, s);
-		}
-	}
-
-	private void getPrintStrings() {
-		ArrayList<Print> a = new ArrayList<Print>(printStrs.values());
-		PrintComparator pc = new PrintComparator();
-		a.sort(pc);
-		for (Print ele : a) {
-			strs.format("%s", ele);
+			strs[i] = ctx.module.addString(st.getString(i));
 		}
 	}
 
-	private void dumpStrings() {
-		System.out.println(strs.toString());
-		strs.close();
+	private Instruction emit(Instruction inst) {
+		return block.add(inst);
 	}
 
-	private void dumpFuncDeclare() {
-		for (String declare : declares) {
-			System.out.println(declare);
+	// Passa a gerar as instruções no bloco 'b', que entra no fim da função.
+	// Se todos os predecessores de 'b' já são conhecidos ('seal'), avisa o
+	// SSABuilder.
+	private void startBlock(BasicBlock b, boolean seal) {
+		block = main.append(b);
+		if (seal) {
+			ssaBuilder.sealBlock(b);
 		}
 	}
 
-	// ----------------------------------------------------------------------------
-	// ---------------------------- Registradores ---------------------------------
-
-	private int newGlobalReg() {
-		return globalRegsCount++;
-	}
-
-	private int newLocalReg() {
-		return localRegsCount++;
+	private int newJumpLabel() {
+		return ctx.newJumpLabel();
 	}
 
-
-	private int newJumpLabel() {
-		return jumpLabel++;
+	// Strings literais são globais. Onde é preciso um 'i8*' pega o
+	// endereço do primeiro caractere.
+	private Value strPointer(Value x) {
+		if (x instanceof Global) {
+			return emit(Instruction.gep((Global) x));
+		}
+		return x;
 	}
 
 	// ----------------------------------------------------------------------------
 	// -------------------------------- Árvore ------------------------------------
-	
+
 	@Override
-    protected String visitProgram(AST node){
+    protected Value visitProgram(AST node){
 
 		getStringTable();
 
-		System.out.println("\ndefine void @main() {");
+		main = ctx.module.define(new Function("main", "void", List.of(), false));
+		entry = new BasicBlock(null);
+		startBlock(entry, true);
 
 		visit(node.getChild(0)); // run program heading
 		visit(node.getChild(1)); // run block
-	
-		System.out.println("  ret void \n}\n");
 
-		getPrintStrings();
-		dumpStrings();
-
-		dumpFuncDeclare();
+		emit(Instruction.retVoid());
+		ssaBuilder.finish(main);
 
 		return null;
 	}
 
 	@Override
-	protected String visitProgramHeading(AST node){
+	protected Value visitProgramHeading(AST node){
 		// Nothing to do.
-		return "";
+		return null;
 	}
 
 	@Override
-	protected String visitIdentifier(AST node){
+	protected Value visitIdentifier(AST node){
 		// Nothing to do.
-		return "";
+		return null;
 	}
 
 	@Override
-    protected String visitBlock(AST node){
+    protected Value visitBlock(AST node){
 		// Visita todos os filhos do bloco na ordem.
 		// Função, Variable Declaration e Statements
 		for (int i = 0; i < node.getChildCount(); i++) {
 			visit(node.getChild(i));
 		}
 
-		return "";
+		return null;
 	}
 
 	@Override
-	protected String visitVarDeclPart(AST node){
+	protected Value visitVarDeclPart(AST node){
 		// Visita todos os filhos do bloco na ordem.
 		for (int i = 0; i < node.getChildCount(); i++) {
 			visit(node.getChild(i));
 		}
 
-		return "";
+		return null;
 	}
 
 	@Override
-	protected String visitIdentifierList(AST node){
+	protected Value visitIdentifierList(AST node){
 		// Visita todos os filhos do bloco na ordem.
 		for (int i = 0; i < node.getChildCount(); i++) {
 			visit(node.getChild(i));
 		}
 
-		return "";		
+		return null;
 	}
 
-	@Override
-	protected String visitVarDecl(AST node){
-		int x = newLocalReg();
-
-		switch(node.type){
-			case INT_TYPE:
-				System.out.printf("  %%%d = alloca i32\n", x);
-				break;
-			case REAL_TYPE:
-				System.out.printf("  %%%d = alloca double\n", x);
-				break;
-			case BOOL_TYPE:
-				System.out.printf("  %%%d = alloca i1\n", x);
-				break;
-			case STR_TYPE:
-				System.out.printf("  %%%d = alloca i8*\n", x);
-				break;
+	// Tipo LLVM de um tipo da linguagem.
+	private static String llvmType(Type t) {
+		switch(t){
+			case INT_TYPE:  return "i32";
+			case REAL_TYPE: return "double";
+			case BOOL_TYPE: return "i1";
+			case STR_TYPE:  return "i8*";
 			case NO_TYPE:
 			default:
 				System.err.println("Missing VarDecl!");
+				throw new CompileError();
 		}
+	}
 
-		return "";
+	@Override
+	protected Value visitVarDecl(AST node){
+		String type = llvmType(node.type);
+
+		if (ssa && node.type != STR_TYPE) {
+			inRegister[node.intData] = true;
+			ssaBuilder.declare(node.intData, type);
+		} else {
+			vars[node.intData] = emit(Instruction.alloca(type));
+		}
+		return null;
 	}
 
 	@Override
-	protected String visitStatementList(AST node){
+	protected Value visitStatementList(AST node){
 		// Visita todos os filhos do bloco na ordem.
 		// Corpo do programa.
 		for (int i = 0; i < node.getChildCount(); i++) {
 			visit(node.getChild(i));
 		}
 
-		return "";
+		return null;
 	}
 
 	@Override
-	protected String visitProcedureDesignator(AST node){
+	protected Value visitProcedureDesignator(AST node){
 		// Identifica o procedimento.
 		visit(node.getChild(0));
 
 		// Salva os parametros e executa o procedimento.
 		visit(node.getChild(1));
 
-		return "";
+		return null;
 	}
 
 	@Override
-	protected String visitFuncIdentifier(AST node){
+	protected Value visitFuncIdentifier(AST node){
 		// Salva o índice da função para ser usado na function table.
 		functionIDX = node.intData;
 
-		return "";
+		return null;
 	}
 
 	@Override
-	protected String visitParameterList(AST node){
-		if (!declares.contains(printPrototype))
-			declares.add(printPrototype);
+	protected Value visitParameterList(AST node){
+		ctx.module.declare(printf);
 
 		int size = node.getChildCount();
-		
+
 		// Executa o read
 		if (functionIDX == 0){
 			int varIdx = node.getChild(0).intData;
@@ -246,14 +274,14 @@ public final class CodeGen extends ASTBaseVisitor<String> {
 				case NO_TYPE:
 				default:
 					System.err.printf("Invalid type: %s!\n", varType.toString());
-					System.exit(1);
+					throw new CompileError();
 			}
 		}
 		//Executa o write
 		else if (functionIDX == 1){
 			for (int k = 0; k < node.getChildCount(); k++) {
 				AST expr = node.getChild(k);
-				String x = visit(expr);
+				Value x = visit(expr);
 
 				switch(expr.type) {
 					case INT_TYPE:  writeInt(x);    break;
@@ -263,7 +291,7 @@ public final class CodeGen extends ASTBaseVisitor<String> {
 					case NO_TYPE:
 					default:
 						System.err.printf("Invalid type: %s!\n", expr.type.toString());
-						System.exit(1);
+						throw new CompileError();
 				}
 			}
 
@@ -276,606 +304,375 @@ public final class CodeGen extends ASTBaseVisitor<String> {
 
 		functionIDX = -1;
 
-		return "";
+		return null;
 	}
 
 	// ----------------------------------------------------------------------------
 	// ------------------------ Funções Auxiliares de Read ------------------------
 
-	private String readInt(int varIdx) {
-		int x = 0;
-
-		if (!printStrs.containsKey(Print.INT)) {
-			int i = newGlobalReg();
-			Print p = Print.INT.setIndex(i);
-			printStrs.put(Print.INT, p);
-		}
-
-		int a = printStrs.get(Print.INT).index;
-		int pointer = newLocalReg();
-		x = newLocalReg();
-
-		System.out.printf("  %%%d = getelementptr inbounds [3 x i8], [3 x i8]* @%d, i64 0, i64 0\n", pointer, a);
-		System.out.printf("  %%%d = call i32 (i8*, ...) @__isoc99_scanf(i8* %%%d, i32* %%%d)\n", x, pointer, varIdx + 1);
-		return "";
+	private void readInt(int varIdx) {
+		ctx.module.declare(scanf);
+		Instruction pointer = emit(Instruction.gep(ctx.printStr(Print.INT)));
+		emit(Instruction.call(scanf, pointer, readSlot(varIdx)));
+		readDone(varIdx);
 	}
 
-	private String readReal(int varIdx) {
-		int x = 0;
+	private void readReal(int varIdx) {
+		ctx.module.declare(scanf);
+		Instruction pointer = emit(Instruction.gep(ctx.printStr(Print.REAL)));
+		emit(Instruction.call(scanf, pointer, readSlot(varIdx)));
+		readDone(varIdx);
+	}
 
-		if (!printStrs.containsKey(Print.REAL)) {
-			int i = newGlobalReg();
-			Print p = Print.REAL.setIndex(i);
-			printStrs.put(Print.REAL, p);
+	// O scanf precisa de um endereço. Variáveis em registrador ganham uma
+	// alloca só para isso, no bloco de entrada, e o valor lido é carregado
+	// logo depois.
+	private Instruction readSlot(int varIdx) {
+		if (!inRegister[varIdx]) {
+			return vars[varIdx];
 		}
+		return readSlots.computeIfAbsent(varIdx, i -> {
+			Instruction slot = Instruction.alloca(llvmType(vt.getType(i)));
+			entry.instructions.add(0, slot);
+			return slot;
+		});
+	}
 
-		int a = printStrs.get(Print.REAL).index;
-		int pointer = newLocalReg();
-		x = newLocalReg();
-
-		System.out.printf("  %%%d = getelementptr inbounds [4 x i8], [4 x i8]* @%d, i64 0, i64 0\n", pointer, a);
-		System.out.printf("  %%%d = call i32 (i8*, ...) @__isoc99_scanf(i8* %%%d, double* %%%d)\n", x, pointer, varIdx + 1);
-		return "";
+	private void readDone(int varIdx) {
+		if (inRegister[varIdx]) {
+			Instruction value = emit(Instruction.load(readSlots.get(varIdx)));
+			ssaBuilder.writeVariable(varIdx, block, value);
+		}
 	}
 
 	// ----------------------------------------------------------------------------
 	// ----------------------- Funções Auxiliares de Write ------------------------
 
-	private String writeInt(String x) {
-		int pointer = newLocalReg();
-		int result = newLocalReg();
-
-		if (!printStrs.containsKey(Print.INT)) {
-			int i = newGlobalReg();
-			Print p = Print.INT.setIndex(i);
-			printStrs.put(Print.INT, p);
-		}
-
-		int a = printStrs.get(Print.INT).index;
-
-		System.out.printf("  %%%d = getelementptr inbounds [3 x i8], [3 x i8]* @%d, i64 0, i64 0\n", pointer, a);
-		System.out.printf("  %%%d = call i32 (i8*, ...) @printf(i8* %%%d, i32 %s)\n", result, pointer, x);
-		return "";
+	private void writeInt(Value x) {
+		Instruction pointer = emit(Instruction.gep(ctx.printStr(Print.INT)));
+		emit(Instruction.call(printf, pointer, x));
 	}
 
-	private String writeReal(String x) {
-		int pointer = newLocalReg();
-		int result = newLocalReg();
-
-		if (!printStrs.containsKey(Print.REAL)) {
-			int i = newGlobalReg();
-			Print p = Print.REAL.setIndex(i);
-			printStrs.put(Print.REAL, p);
-		}
-
-		int a = printStrs.get(Print.REAL).index;
-
-		System.out.printf("  %%%d = getelementptr inbounds [4 x i8], [4 x i8]* @%d, i64 0, i64 0\n", pointer, a);
-		System.out.printf("  %%%d = call i32 (i8*, ...) @printf(i8* %%%d, double %s)\n", result, pointer, x);
-		return "";
+	private void writeReal(Value x) {
+		Instruction pointer = emit(Instruction.gep(ctx.printStr(Print.REAL)));
+		emit(Instruction.call(printf, pointer, x));
 	}
 
-	private String writeBool(String x) {
-		int pointer = newLocalReg();
-		int result = newLocalReg();
-
-		if (!printStrs.containsKey(Print.INT)) {
-			int i = newGlobalReg();
-			Print p = Print.INT.setIndex(i);
-			printStrs.put(Print.INT, p);
-		}
-
-		int a = printStrs.get(Print.INT).index;
-
-		System.out.printf("  %%%d = getelementptr inbounds [3 x i8], [3 x i8]* @%d, i64 0, i64 0\n", pointer, a);
-		System.out.printf("  %%%d = call i32 (i8*, ...) @printf(i8* %%%d, i1 %s)\n", result, pointer, x);
-		return "";
+	private void writeBool(Value x) {
+		Instruction pointer = emit(Instruction.gep(ctx.printStr(Print.INT)));
+		emit(Instruction.call(printf, pointer, x));
 	}
 
-	private String writeStr(String x) {
-		int pointer = newLocalReg();
-		int result = newLocalReg();
-
-		if (x.startsWith("@")) {
-			String s = st.getString(Integer.parseInt(x.substring(1)));
-			int len = s.length() + 1;
-
-			System.out.printf("  %%%d = getelementptr inbounds [%d x i8], [%d x i8]* %s, i64 0, i64 0\n", pointer, len, len, x);
-			System.out.printf("  %%%d = call i32 (i8*, ...) @printf(i8* %%%d)\n", result, pointer);
+	private void writeStr(Value x) {
+		if (x instanceof Global) {
+			// String literal: ela mesma é o formato.
+			emit(Instruction.call(printf, strPointer(x)));
 		} else {
-			if (!printStrs.containsKey(Print.STR)) {
-				int i = newGlobalReg();
-				Print p = Print.STR.setIndex(i);
-				printStrs.put(Print.STR, p);
-			}
-
-			int a = printStrs.get(Print.STR).index;
-
-			System.out.printf("  %%%d = getelementptr inbounds [3 x i8], [3 x i8]* @%d, i64 0, i64 0\n", pointer, a);
-			System.out.printf("  %%%d = call i32 (i8*, ...) @printf(i8* %%%d, i8* %s)\n", result, pointer, x);
+			Instruction pointer = emit(Instruction.gep(ctx.printStr(Print.STR)));
+			emit(Instruction.call(printf, pointer, x));
 		}
-		return "";
 	}
 
-	private String writeBr(){
-		int pointer = newLocalReg();
-		int result = newLocalReg();
-
-		if (!printStrs.containsKey(Print.CHAR)) {
-			int i = newGlobalReg();
-			Print p = Print.CHAR.setIndex(i);
-			printStrs.put(Print.CHAR, p);
-		}
-
-		int a = printStrs.get(Print.CHAR).index;
-
-		System.out.printf("  %%%d = getelementptr inbounds [3 x i8], [3 x i8]* @%d, i64 0, i64 0\n", pointer, a);
-		System.out.printf("  %%%d = call i32 (i8*, ...) @printf(i8* %%%d, i8 %s)\n", result, pointer, 10);
-		return "";
+	private void writeBr(){
+		Instruction pointer = emit(Instruction.gep(ctx.printStr(Print.CHAR)));
+		emit(Instruction.call(printf, pointer, Constant.i8(10)));
 	}
 
 	// ----------------------------------------------------------------------------
 	// -------------------------------- Árvore ------------------------------------
 
 	@Override
-    protected String visitAssign(AST node){
-	    String x = visit(node.getChild(1));
+    protected Value visitAssign(AST node){
+	    Value x = visit(node.getChild(1));
 	    int varIdx = node.getChild(0).intData;
 	    Type varType = vt.getType(varIdx);
 
+		if (inRegister[varIdx]) {
+			ssaBuilder.writeVariable(varIdx, block, x);
+			return null;
+		}
+
 		switch(varType) {
 			case INT_TYPE:
-				System.out.printf("  store i32 %s, i32* %%%d\n", x, varIdx + 1);
-				break;
 			case REAL_TYPE:
-				System.out.printf("  store double %s, double* %%%d\n", x, varIdx + 1);
-				break;
 			case BOOL_TYPE:
-				System.out.printf("  store i1 %s, i1* %%%d\n", x, varIdx + 1);
+				emit(Instruction.store(x, vars[varIdx]));
 				break;
 			case STR_TYPE:
-				if (x.startsWith("@")) {
-					int pointer = newLocalReg();
-					String s = st.getString(Integer.parseInt(x.substring(1)));
-					int len = s.length() + 1;
-
-					System.out.printf("  %%%d = getelementptr inbounds [%d x i8], [%d x i8]* %s, i64 0, i64 0\n", pointer, len, len, x);
-
-					System.out.printf("  store i8* %%%d, i8** %%%d\n", pointer, varIdx + 1);
-				} else {
-					System.out.printf("  store i8* %s, i8** %%%d\n", x, varIdx + 1);
-
-				}
+				emit(Instruction.store(strPointer(x), vars[varIdx]));
 				break;
 			case NO_TYPE:
 			default:
 				System.err.println("Assign type not known!");
 		}
-		return "";
+		return null;
 	}
 
+	// Os 'else if' seguidos são gerados aqui mesmo (veja elseIf), e todos
+	// os ramos da cadeia saltam para o mesmo bloco de continuação.
 	@Override
-    protected String visitIf(AST node){
-		String testReg = visit(node.getChild(0));
-		boolean hasElse = node.getChildCount() == 3;
+    protected Value visitIf(AST node){
+		int cont = 0;
+		BasicBlock contBlock = null;
 
-		int ifTrue = newJumpLabel();
-		int ifFalse = 0;
+		for (;;) {
+			Value testReg = visit(node.getChild(0));
+			boolean hasElse = node.getChildCount() == 3;
 
-		if (hasElse)
-			ifFalse = newJumpLabel();
+			int ifTrue = newJumpLabel();
+			int ifFalse = 0;
 
-		int cont = newJumpLabel();
+			if (hasElse)
+				ifFalse = newJumpLabel();
 
-		String l1 = String.format("if.false.%d", ifFalse);
-		String l2 = String.format("if.cont.%d", cont);
+			if (contBlock == null) {
+				cont = newJumpLabel();
+				contBlock = new BasicBlock("if.cont." + cont);
+			}
 
-		System.out.printf("  br i1 %s, label %%if.true.%d, label %%%s\n", testReg, ifTrue, hasElse ? l1 : l2);
-		System.out.printf("\nif.true.%d:\n", ifTrue);
-		
-		visit(node.getChild(1));
+			BasicBlock trueBlock = new BasicBlock("if.true." + ifTrue);
+			BasicBlock falseBlock = hasElse ? new BasicBlock("if.false." + ifFalse) : null;
+
+			emit(Instruction.condBr(testReg, trueBlock, hasElse ? falseBlock : contBlock));
+			startBlock(trueBlock, true);
 
-		System.out.printf("  br label %%if.cont.%d\n", cont);
-		System.out.printf("\n%s:\n", hasElse ? l1 : l2);
+			visit(node.getChild(1));
 
-		if (hasElse) {
-			visit(node.getChild(2));
-			System.out.printf("  br label %%if.cont.%d\n", cont);
-			System.out.printf("\nif.cont.%d:\n", cont);
+			emit(Instruction.br(contBlock));
+
+			if (!hasElse) {
+				break;
+			}
+
+			startBlock(falseBlock, true);
+			AST next = elseIf(node);
+			if (next == null) {
+				visit(node.getChild(2));
+				emit(Instruction.br(contBlock));
+				break;
+			}
+			node = next;
 		}
-		return "";
+
+		startBlock(contBlock, true);
+		return null;
 	}
 
 	@Override
-	protected String visitElse(AST node){
+	protected Value visitElse(AST node){
 		visit(node.getChild(0));
-		return "";
+		return null;
 	}
 
 	@Override
-    protected String visitEq(AST node){
-		String lexpr = visit(node.getChild(0));
-		String rexpr = visit(node.getChild(1));
-		int x = 0;
+    protected Value visitEq(AST node){
+		Value lexpr = operand(node, 0);
+		Value rexpr = operand(node, 1);
 
 		AST r_node = node.getChild(1);
 
 		switch (r_node.type){
 			case INT_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = icmp sgt eq %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.icmp("eq", "i32", lexpr, rexpr));
 			case REAL_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = fcmp oeq double %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.fcmp("oeq", lexpr, rexpr));
 			case BOOL_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = icmp eq i1 %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.icmp("eq", "i1", lexpr, rexpr));
 			case STR_TYPE:
-				x = eqStr(lexpr, rexpr);
-				break;
+				return compareStr(lexpr, rexpr);
 			case NO_TYPE:
 			default:
 				System.err.println("Eq type not known!");
+				return Constant.undef("i1");
 		}
-		return String.format("%%%d", x);
 	}
 
-	private int eqStr(String lexpr, String rexpr){
-		int x = 0;
-
-		if (!declares.contains(compPrototype))
-			declares.add(compPrototype);
-
-		if (lexpr.startsWith("@")) {
-			int b = newLocalReg();
-			String s = st.getString(Integer.parseInt(lexpr.substring(1)));
-			int len = s.length() + 1;
-
-			System.out.printf("  %%%d = getelementptr inbounds [%d x i8], [%d x i8]* %s, i64 0, i64 0\n", b, len, len, lexpr);
-
-			lexpr = String.format("%%%d", b);
-		}
-
-		if (rexpr.startsWith("@")) {
-			int c = newLocalReg();
-			String s = st.getString(Integer.parseInt(rexpr.substring(1)));
-			int len = s.length() + 1;
+	// Compara duas strings com o strcmp da libc.
+	private Value compareStr(Value lexpr, Value rexpr){
+		ctx.module.declare(strcmp);
 
-			System.out.printf("  %%%d = getelementptr inbounds [%d x i8], [%d x i8]* %s, i64 0, i64 0\n", c, len, len, rexpr);
+		lexpr = strPointer(lexpr);
+		rexpr = strPointer(rexpr);
 
-			rexpr = String.format("%%%d", c);
-		}
-
-		int a = newLocalReg();
-		x = newLocalReg();
-
-		System.out.printf("  %%%d = call i32 @strcmp(i8* %s, i8* %s)\n", a, lexpr, rexpr);
-		System.out.printf("  %%%d = icmp slt i32 %%%d, 0\n", x, a);
-		return x;
+		Instruction a = emit(Instruction.call(strcmp, lexpr, rexpr));
+		return emit(Instruction.icmp("slt", "i32", a, Constant.i32(0)));
 	}
 
 	@Override
-	protected String visitGt(AST node) {
-		String lexpr = visit(node.getChild(0));
-		String rexpr = visit(node.getChild(1));
-		int x = 0;
+	protected Value visitGt(AST node) {
+		Value lexpr = operand(node, 0);
+		Value rexpr = operand(node, 1);
 
 		AST r_node = node.getChild(1);
 
 		switch (r_node.type){
 			case INT_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = icmp sgt i32 %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.icmp("sgt", "i32", lexpr, rexpr));
 			case REAL_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = fcmp ogt double %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.fcmp("ogt", lexpr, rexpr));
 			case BOOL_TYPE:
-				int convY = newLocalReg();
-				int convZ = newLocalReg();
-				x = newLocalReg();
-				System.out.printf("  %%%d = zext i1 %s to i32\n", convY, lexpr);
-				System.out.printf("  %%%d = zext i1 %s to i32\n", convZ, rexpr);
-				System.out.printf("  %%%d = icmp sgt i32 %%%d, %%%d\n", x, convY, convZ);
-				break;
+				Instruction convY = emit(Instruction.zext(lexpr, "i32"));
+				Instruction convZ = emit(Instruction.zext(rexpr, "i32"));
+				return emit(Instruction.icmp("sgt", "i32", convY, convZ));
 			case STR_TYPE:
-				x = gtStr(lexpr, rexpr);
-				break;
+				return compareStr(lexpr, rexpr);
 			case NO_TYPE:
 			default:
 				System.err.println("Gt type not known!");
+				return Constant.undef("i1");
 		}
-		return String.format("%%%d", x);
-	}
-
-	private int gtStr(String lexpr, String rexpr){
-		int x = 0;
-
-		if (!declares.contains(compPrototype))
-			declares.add(compPrototype);
-
-		if (lexpr.startsWith("@")) {
-			int b = newLocalReg();
-			String s = st.getString(Integer.parseInt(lexpr.substring(1)));
-			int len = s.length() + 1;
-
-			System.out.printf("  %%%d = getelementptr inbounds [%d x i8], [%d x i8]* %s, i64 0, i64 0\n", b, len, len, lexpr);
-
-			lexpr = String.format("%%%d", b);
-		}
-
-		if (rexpr.startsWith("@")) {
-			int c = newLocalReg();
-			String s = st.getString(Integer.parseInt(rexpr.substring(1)));
-			int len = s.length() + 1;
-
-			System.out.printf("  %%%d = getelementptr inbounds [%d x i8], [%d x i8]* %s, i64 0, i64 0\n", c, len, len, rexpr);
-
-			rexpr = String.format("%%%d", c);
-		}
-
-		int a = newLocalReg();
-		x = newLocalReg();
-
-		System.out.printf("  %%%d = call i32 @strcmp(i8* %s, i8* %s)\n", a, lexpr, rexpr);
-		System.out.printf("  %%%d = icmp slt i32 %%%d, 0\n", x, a);
-		return x;
 	}
 
 	@Override
-    protected String visitLt(AST node){
-		String lexpr = visit(node.getChild(0));
-		String rexpr = visit(node.getChild(1));
-		int x = 0;
+    protected Value visitLt(AST node){
+		Value lexpr = operand(node, 0);
+		Value rexpr = operand(node, 1);
 
 		AST r_node = node.getChild(1);
 
 		switch (r_node.type){
 			case INT_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = icmp slt i32 %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.icmp("slt", "i32", lexpr, rexpr));
 			case REAL_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = fcmp olt double %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.fcmp("olt", lexpr, rexpr));
 			case BOOL_TYPE:
-				int convY = newLocalReg();
-				int convZ = newLocalReg();
-				x = newLocalReg();
-				System.out.printf("  %%%d = zext i1 %s to i32\n", convY, lexpr);
-				System.out.printf("  %%%d = zext i1 %s to i32\n", convZ, rexpr);
-				System.out.printf("  %%%d = icmp slt i32 %%%d, %%%d\n", x, convY, convZ);
-				break;
+				Instruction convY = emit(Instruction.zext(lexpr, "i32"));
+				Instruction convZ = emit(Instruction.zext(rexpr, "i32"));
+				return emit(Instruction.icmp("slt", "i32", convY, convZ));
 			case STR_TYPE:
-				x = ltStr(lexpr, rexpr);
-				break;
+				return compareStr(lexpr, rexpr);
 			case NO_TYPE:
 			default:
 				System.err.println("Lt type not known!");
+				return Constant.undef("i1");
 		}
-		return String.format("%%%d", x);
-	}
-
-	private int ltStr(String lexpr, String rexpr){
-		int x = 0;
-
-		if (!declares.contains(compPrototype))
-			declares.add(compPrototype);
-
-		if (lexpr.startsWith("@")) {
-			int b = newLocalReg();
-			String s = st.getString(Integer.parseInt(lexpr.substring(1)));
-			int len = s.length() + 1;
-
-			System.out.printf("  %%%d = getelementptr inbounds [%d x i8], [%d x i8]* %s, i64 0, i64 0\n", b, len, len, lexpr);
-
-			lexpr = String.format("%%%d", b);
-		}
-
-		if (rexpr.startsWith("@")) {
-			int c = newLocalReg();
-			String s = st.getString(Integer.parseInt(rexpr.substring(1)));
-			int len = s.length() + 1;
-
-			System.out.printf("  %%%d = getelementptr inbounds [%d x i8], [%d x i8]* %s, i64 0, i64 0\n", c, len, len, rexpr);
-
-			rexpr = String.format("%%%d", c);
-		}
-
-		int a = newLocalReg();
-		x = newLocalReg();
-
-		System.out.printf("  %%%d = call i32 @strcmp(i8* %s, i8* %s)\n", a, lexpr, rexpr);
-		System.out.printf("  %%%d = icmp slt i32 %%%d, 0\n", x, a);
-		return x;
 	}
 
 	@Override
-    protected String visitRepeat(AST node){
+    protected Value visitRepeat(AST node){
 		int test = newJumpLabel();
 		int repeat = newJumpLabel();
 		int cont = newJumpLabel();
-		
-		System.out.printf("  br label %%while.test.%d\n", test);
-		System.out.printf("\nwhile.test.%d:\n", test);
 
-		String testReg = visit(node.getChild(0));
+		BasicBlock testBlock = new BasicBlock("while.test." + test);
+		BasicBlock repeatBlock = new BasicBlock("while.repeat." + repeat);
+		BasicBlock contBlock = new BasicBlock("while.cont." + cont);
+
+		// O while.test só é selado depois do corpo, que desvia de volta para ele.
+		emit(Instruction.br(testBlock));
+		startBlock(testBlock, false);
+
+		Value testReg = visit(node.getChild(0));
 
-		System.out.printf("  br i1 %s, label %%while.repeat.%d, label %%while.cont.%d\n", testReg, repeat, cont);
-		System.out.printf("\nwhile.repeat.%d:\n", repeat);
+		emit(Instruction.condBr(testReg, repeatBlock, contBlock));
+		startBlock(repeatBlock, true);
 
 		visit(node.getChild(1));
 
-		System.out.printf("  br label %%while.test.%d\n", test);
-		System.out.printf("\nwhile.cont.%d:\n", cont);
-		return "";
+		emit(Instruction.br(testBlock));
+		ssaBuilder.sealBlock(testBlock);
+
+		startBlock(contBlock, true);
+		return null;
 	}
 
-	@Override
-    protected String visitMinus(AST node){
-		String lexpr = visit(node.getChild(0));
-		String rexpr = visit(node.getChild(1));
-		int x = 0;
+	// Operação aritmética com a instrução inteira ou a real, conforme o tipo do nó.
+	private Value arith(AST node, Op intOp, Op realOp, String what) {
+		Value lexpr = operand(node, 0);
+		Value rexpr = operand(node, 1);
 
 		switch(node.type){
 			case INT_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = sub i32 %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.binary(intOp, "i32", lexpr, rexpr));
 			case REAL_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = fsub double %s, %s\n", x, lexpr, rexpr);
-				break;
+				return emit(Instruction.binary(realOp, "double", lexpr, rexpr));
 			default:
-				System.err.println("This type is impossible to sub");
+				System.err.println("This type is impossible to " + what);
+				return Constant.undef("i32");
 		}
-		return String.format("%%%d", x);
 	}
 
 	@Override
-    protected String visitOver(AST node){
-		String lexpr = visit(node.getChild(0));
-		String rexpr = visit(node.getChild(1));
-		int x = 0;
-
-		switch(node.type){
-			case INT_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = sdiv i32 %s, %s\n", x, lexpr, rexpr);
-				break;
-			case REAL_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = fdiv double %s, %s\n", x, lexpr, rexpr);
-				break;
-			default:
-				System.err.println("This type is impossible to divide");
-		}
-		return String.format("%%%d", x);
+    protected Value visitMinus(AST node){
+		return arith(node, Op.SUB, Op.FSUB, "sub");
 	}
 
 	@Override
-    protected String visitPlus(AST node){
-		String lexpr = visit(node.getChild(0));
-		String rexpr = visit(node.getChild(1));
-		int x = 0;
-
-		switch(node.type){
-			case INT_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = add i32 %s, %s\n", x, lexpr, rexpr);
-				break;
-			case REAL_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = fadd double %s, %s\n", x, lexpr, rexpr);
-				break;
-			default:
-				System.err.println("This type is impossible to add");
-		}
-		return String.format("%%%d", x);
+    protected Value visitOver(AST node){
+		return arith(node, Op.SDIV, Op.FDIV, "divide");
 	}
 
 	@Override
-    protected String visitTimes(AST node){
-		String lexpr = visit(node.getChild(0));
-		String rexpr = visit(node.getChild(1));
-		int x = 0;
+    protected Value visitPlus(AST node){
+		return arith(node, Op.ADD, Op.FADD, "add");
+	}
 
-		switch (node.type){
-			case INT_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = mul i32 %s, %s\n", x, lexpr, rexpr);
-				break;
-			case REAL_TYPE:
-				x = newLocalReg();
-				System.out.printf("  %%%d = fmul double %s, %s\n", x, lexpr, rexpr);
-				break;
-			default:
-				System.err.println("This type is impossible to mul");
-		}
-		return String.format("%%%d", x);
+	@Override
+    protected Value visitTimes(AST node){
+		return arith(node, Op.MUL, Op.FMUL, "mul");
 	}
 
 	@Override
-    protected String visitVarUse(AST node){
-		int x = newLocalReg();
+    protected Value visitVarUse(AST node){
 		int varIdx = node.intData;
 
+		if (inRegister[varIdx]) {
+			return ssaBuilder.readVariable(varIdx, block);
+		}
+
 		switch (node.type){
 			case INT_TYPE:
-				System.out.printf("  %%%d = load i32, i32* %%%d\n", x, varIdx + 1);
-				break;
 			case REAL_TYPE:
-				System.out.printf("  %%%d = load double, double* %%%d\n", x, varIdx + 1);
-				break;
 			case BOOL_TYPE:
-				System.out.printf("  %%%d = load i1, i1* %%%d\n", x, varIdx + 1);
-				break;
 			case STR_TYPE:
-				System.out.printf("  %%%d = load i8*, i8** %%%d\n", x, varIdx + 1);
-				break;
+				return emit(Instruction.load(vars[varIdx]));
 			case NO_TYPE:
 			default:
 				System.err.println("Missing VarUse!");
+				return Constant.undef("i32");
 		}
-		return String.format("%%%d", x);
 	}
 
 	@Override
-    protected String visitIntVal(AST node){
-		return Integer.toString(node.intData);
+    protected Value visitIntVal(AST node){
+		return Constant.i32(node.intData);
 	}
 
 	@Override
-    protected String visitStrVal(AST node){
-		return String.format("@%d", node.intData);
+    protected Value visitStrVal(AST node){
+		return strs[node.intData];
 	}
 
 	@Override
-    protected String visitBoolVal(AST node){
-		boolean x;
-
-		if (node.intData == 0) {
-			x = false;
-		} else {
-			x = true;
-		}
-
-		String val = Boolean.toString(x);
-		return val;
+    protected Value visitBoolVal(AST node){
+		return Constant.i1(node.intData != 0);
 	}
 
 	@Override
-    protected String visitRealVal(AST node){
-		return Float.toString(node.floatData);
+    protected Value visitRealVal(AST node){
+		return Constant.real(node.floatData);
 	}
 
+	// As conversões de e para bool e para string ainda não são geradas.
+
 	@Override
-    protected String visitB2I(AST node){return "";}
+    protected Value visitB2I(AST node){return Constant.undef("i32");}
 
 	@Override
-    protected String visitB2R(AST node){return "";}
+    protected Value visitB2R(AST node){return Constant.undef("double");}
 
 	@Override
-    protected String visitB2S(AST node){return "";}
+    protected Value visitB2S(AST node){return Constant.undef("i8*");}
 
 	@Override
-    protected String visitI2R(AST node){
-		String i = visit(node.getChild(0));
-		int r = newLocalReg();
-		
-		System.out.printf("  %%%d = sitofp i32 %s to double\n", r, i);
-		return String.format("%%%d", r);
+    protected Value visitI2R(AST node){
+		Value i = visit(node.getChild(0));
+		return emit(Instruction.sitofp(i));
 	}
 
 	@Override
-    protected String visitI2S(AST node){return "";}
+    protected Value visitI2S(AST node){return Constant.undef("i8*");}
 
 	@Override
-    protected String visitR2S(AST node){return "";}
-
-}
\ No newline at end of file
+    protected Value visitR2S(AST node){return Constant.undef("i8*");}
+}
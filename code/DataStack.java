@@ -1,39 +1,65 @@
 package code;
 
+import java.util.Arrays;
 import java.util.Formatter;
-import java.util.Stack;
 
 /*
  * Implementação de uma pilha de words, com os métodos
  * que facilitam empilhar ou desempilhar um valor
  * inteiro ou real.
+ *
+ * A pilha guarda os valores direto em um vetor de int que
+ * cresce conforme a necessidade. Reais são guardados pelos
+ * seus bits crus (Float.floatToRawIntBits), então nenhuma
+ * operação de push ou pop aloca objetos.
  */
-@SuppressWarnings("serial")
-public final class DataStack extends Stack<Word> {
+public final class DataStack {
 	// No mundo real esses métodos precisam de verificações de erros.
-	
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private int[] data = new int[INITIAL_CAPACITY];
+	private int top = 0; // Próxima posição livre.
+
 	public void pushi(int value) {
-		super.push(Word.fromInt(value));
+		if (top == data.length) {
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		data[top++] = value;
 	}
 
 	public int popi() {
-		return super.pop().toInt();
+		return data[--top];
 	}
 	
 	public void pushf(float value) {
-		super.push(Word.fromFloat(value));
+		pushi(Float.floatToRawIntBits(value));
 	}
 
 	public float popf() {
-		return super.pop().toFloat();
+		return Float.intBitsToFloat(popi());
+	}
+
+	public int size() {
+		return top;
+	}
+
+	// O vetor em si, com 'size()' words em uso, para a coleta das
+	// strings achar os handles na pilha (veja StringHeap).
+	public int[] words() {
+		return data;
+	}
+
+	public boolean isEmpty() {
+		return top == 0;
 	}
 
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		Formatter f = new Formatter(sb);
 		f.format("*** STACK: ");
-		for (int i = 0; i < this.size(); i++) {
-			f.format("%d ", this.get(i).toInt());
+		for (int i = 0; i < top; i++) {
+			f.format("%d ", data[i]);
 		}
 		f.format("\n");
 		f.close();
@@ -0,0 +1,32 @@
+package code;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import code.ir.Global;
+import code.ir.Module;
+
+/*
+ * Estado da emissão de uma única compilação: o módulo sendo construído,
+ * as strings de formato já criadas nele e o contador de labels.
+ *
+ * Cada CodeGen tem o seu, então várias compilações podem gerar código
+ * ao mesmo tempo na mesma JVM sem uma interferir na outra.
+ */
+final class EmitContext {
+
+	final Module module = new Module();
+
+	private final Map<Print, Global> printStrs = new EnumMap<>(Print.class);
+	private int jumpLabel = 0;
+
+	int newJumpLabel() {
+		return jumpLabel++;
+	}
+
+	// Global com a string de formato 'p', criada no primeiro uso.
+	Global printStr(Print p) {
+		return printStrs.computeIfAbsent(p, k -> module.addString(k.format));
+	}
+
+}
@@ -0,0 +1,158 @@
+package code;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Saída do código LLVM gerado pelo CodeGen.
+ *
+ * O texto vai sendo acumulado num StringBuilder reaproveitado e só é
+ * escrito no canal de saída (um arquivo, ou a stdout) quando passa de
+ * CHUNK caracteres, ou no flush final. O 'printf' aqui entende apenas
+ * '%d', '%s' e '%%', que é tudo o que o CodeGen usa, e por isso não
+ * precisa do java.util.Formatter nem do PrintStream sincronizado.
+ */
+public final class IRWriter implements AutoCloseable {
+
+	private static final int CHUNK = 1 << 16;
+
+	private final WritableByteChannel channel;
+	private final Flushable stream; // Para a stdout, que também tem buffer.
+	private final boolean ownsChannel;
+
+	private final StringBuilder buf = new StringBuilder(CHUNK + 1024);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private final ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK * 2);
+
+	private IRWriter(WritableByteChannel channel, Flushable stream, boolean ownsChannel) {
+		this.channel = channel;
+		this.stream = stream;
+		this.ownsChannel = ownsChannel;
+	}
+
+	// Escreve no arquivo dado, apagando o que houver nele.
+	public static IRWriter toFile(Path file) throws IOException {
+		FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE,
+		                                        StandardOpenOption.TRUNCATE_EXISTING,
+		                                        StandardOpenOption.WRITE);
+		return new IRWriter(fc, null, true);
+	}
+
+	// Escreve no System.out atual (que pode estar sendo capturado, veja
+	// driver.Capture).
+	public static IRWriter toStdout() {
+		return new IRWriter(Channels.newChannel(System.out), System.out, false);
+	}
+
+	// ----------------------------------------------------------------------------
+	// -------------------------------- Escrita -----------------------------------
+
+	public IRWriter print(String s) {
+		buf.append(s);
+		return spill();
+	}
+
+	public IRWriter println(String s) {
+		buf.append(s).append('\n');
+		return spill();
+	}
+
+	public IRWriter printf(String fmt, Object... args) {
+		format(buf, fmt, args);
+		return spill();
+	}
+
+	// Formata 'fmt' em 'sb'. Só '%d', '%s' e '%%' são reconhecidos.
+	static void format(StringBuilder sb, String fmt, Object... args) {
+		int arg = 0;
+		int start = 0;
+		int len = fmt.length();
+		for (int i = 0; i < len; i++) {
+			if (fmt.charAt(i) != '%') {
+				continue;
+			}
+			sb.append(fmt, start, i);
+			char c = fmt.charAt(++i);
+			if (c == '%') {
+				sb.append('%');
+			} else if (c == 'd' || c == 's') {
+				sb.append(args[arg++]);
+			} else {
+				throw new IllegalArgumentException("Unsupported format: %" + c);
+			}
+			start = i + 1;
+		}
+		sb.append(fmt, start, len);
+	}
+
+	// ----------------------------------------------------------------------------
+	// -------------------------------- Canal -------------------------------------
+
+	private IRWriter spill() {
+		if (buf.length() >= CHUNK) {
+			drain();
+		}
+		return this;
+	}
+
+	// Codifica o buffer de texto e escreve tudo no canal.
+	private void drain() {
+		try {
+			CharBuffer in = CharBuffer.wrap(buf);
+			for (;;) {
+				CoderResult r = encoder.encode(in, bytes, true);
+				writeBytes();
+				if (r.isUnderflow()) {
+					break;
+				}
+			}
+			encoder.reset();
+			buf.setLength(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeBytes() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	public void flush() {
+		drain();
+		try {
+			if (stream != null) {
+				stream.flush();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		flush();
+		if (ownsChannel) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package code;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/*
+ * Leitura do Readln. Faz o papel do java.util.Scanner, que o
+ * Interpreter usava, mas sem expressões regulares: os tokens (separados
+ * por espaço em branco, como no Scanner) são lidos direto dos bytes de
+ * um ByteBuffer e os números são convertidos sem criar String.
+ *
+ * Quando a stdin é um arquivo ('prog < dados.txt') ele é mapeado em
+ * memória inteiro e não há cópia nenhuma. Nos outros casos (terminal,
+ * pipe) os bytes vêm da System.in em blocos, e a leitura para no fim do
+ * token, sem esperar o bloco encher.
+ *
+ * Os erros são os mesmos do Scanner: InputMismatchException para um
+ * token que não é do tipo pedido e NoSuchElementException no fim da
+ * entrada.
+ */
+public final class Input {
+
+	private static final int SIZE = 1 << 16;
+
+	// Potências de 10 exatas em float (5^10 < 2^24).
+	private static final float[] POW10 = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	private final InputStream in;   // null quando a entrada está mapeada.
+	private final FileChannel file; // Só para fechar, quando mapeada.
+	private final Charset charset = Charset.defaultCharset();
+	private final ByteBuffer buf;
+
+	// Token atual, copiado para cá por 'token()'.
+	private byte[] token = new byte[64];
+	private int length;
+
+	private Input(InputStream in, FileChannel file, ByteBuffer buf) {
+		this.in = in;
+		this.file = file;
+		this.buf = buf;
+	}
+
+	public Input(InputStream in) {
+		this(in, null, ByteBuffer.allocate(SIZE).flip());
+	}
+
+	// Entrada padrão do processo, mapeada se for um arquivo.
+	public static Input stdin() {
+		FileChannel ch = new FileInputStream(FileDescriptor.in).getChannel();
+		try {
+			long start = ch.position();
+			long size = ch.size();
+			if (size > start && size - start <= Integer.MAX_VALUE) {
+				return new Input(null, ch, ch.map(FileChannel.MapMode.READ_ONLY, start, size - start));
+			}
+		} catch (IOException | UnsupportedOperationException e) {
+			// Pipe ou terminal: não dá para mapear.
+		}
+		return new Input(System.in);
+	}
+
+	public void close() {
+		try {
+			if (file != null) {
+				file.close();
+			} else {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Tokens -------------------------------------
+
+	public int nextInt() {
+		if (!token()) {
+			throw new NoSuchElementException();
+		}
+		int i = 0;
+		boolean negative = false;
+		if (length > 1 && (token[0] == '-' || token[0] == '+')) {
+			negative = token[0] == '-';
+			i = 1;
+		}
+		long value = 0;
+		for (; i < length; i++) {
+			int d = token[i] - '0';
+			if (d < 0 || d > 9) {
+				throw new InputMismatchException();
+			}
+			value = value * 10 + d;
+			if (value > 1L + Integer.MAX_VALUE) {
+				throw new InputMismatchException("For input string: \"" + text() + "\"");
+			}
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw new InputMismatchException("For input string: \"" + text() + "\"");
+		}
+		return (int) value;
+	}
+
+	public float nextFloat() {
+		if (!token()) {
+			throw new NoSuchElementException();
+		}
+		// Caso comum: sinal, até 7 dígitos e uma parte decimal curta. O
+		// inteiro com os dígitos e a potência de 10 são exatos em float,
+		// então uma divisão dá o mesmo arredondamento do Float.parseFloat.
+		int i = 0;
+		boolean negative = false;
+		if (length > 1 && (token[0] == '-' || token[0] == '+')) {
+			negative = token[0] == '-';
+			i = 1;
+		}
+		int mantissa = 0, digits = 0, decimals = -1;
+		boolean simple = true;
+		for (; i < length && simple; i++) {
+			byte c = token[i];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else if (c == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				simple = false;
+			}
+		}
+		if (simple && digits > 0 && digits <= 7 && decimals < POW10.length) {
+			float value = decimals > 0 ? mantissa / POW10[decimals] : mantissa;
+			return negative ? -value : value;
+		}
+		return parseFloat(text());
+	}
+
+	public String next() {
+		if (!token()) {
+			throw new NoSuchElementException();
+		}
+		return text();
+	}
+
+	// Os formatos que o Scanner aceita e o caso rápido não trata:
+	// expoente, muitos dígitos, NaN e Infinity.
+	private static float parseFloat(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == 'f' || c == 'F' || c == 'd' || c == 'D' || c == 'x' || c == 'X') {
+				throw new InputMismatchException(); // Sufixos do Java, que o Scanner não aceita.
+			}
+		}
+		try {
+			return Float.parseFloat(s);
+		} catch (NumberFormatException e) {
+			throw new InputMismatchException();
+		}
+	}
+
+	private String text() {
+		return new String(token, 0, length, charset);
+	}
+
+	// Copia o próximo token para 'token'. Retorna false no fim da entrada.
+	private boolean token() {
+		int c;
+		do {
+			c = read();
+			if (c < 0) {
+				return false;
+			}
+		} while (isSpace(c));
+		length = 0;
+		while (c >= 0 && !isSpace(c)) {
+			if (length == token.length) {
+				byte[] grown = new byte[token.length * 2];
+				System.arraycopy(token, 0, grown, 0, length);
+				token = grown;
+			}
+			token[length++] = (byte) c;
+			c = read();
+		}
+		return true;
+	}
+
+	// Mesmos separadores do Scanner (Character.isWhitespace) entre os ASCII.
+	private static boolean isSpace(int c) {
+		return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1C && c <= 0x1F);
+	}
+
+	// Próximo byte, ou -1 no fim da entrada.
+	private int read() {
+		if (!buf.hasRemaining() && !fill()) {
+			return -1;
+		}
+		return buf.get() & 0xFF;
+	}
+
+	// Lê mais um bloco da System.in, esperando só até chegar algum byte.
+	private boolean fill() {
+		if (in == null) {
+			return false;
+		}
+		try {
+			int n = in.read(buf.array(), 0, buf.capacity());
+			if (n <= 0) {
+				return false;
+			}
+			buf.clear();
+			buf.limit(n);
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
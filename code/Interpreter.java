@@ -1,15 +1,17 @@
 package code;
 
+import static typing.Type.BOOL_TYPE;
 import static typing.Type.INT_TYPE;
 import static typing.Type.REAL_TYPE;
+import static typing.Type.STR_TYPE;
 
-import java.io.IOException;
-import java.io.StreamTokenizer;
-import java.io.StringReader;
-import java.util.Scanner;
+import java.lang.invoke.MethodHandle;
 
 import ast.AST;
 import ast.ASTBaseVisitor;
+import code.jit.JitRuntime;
+import code.jit.OsrCompiler;
+import driver.CompileError;
 import tables.StrTable;
 import tables.VarTable;
 import tables.FunctionTable;
@@ -32,22 +34,47 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	private final StrTable st;
 	private final VarTable vt;
 	private final FunctionTable ft;
-	private final Scanner in; // Para leitura de stdin
+	private final Input in; // Para leitura de stdin
+	private final Output out; // Para escrita na stdout
+	private final StringHeap strings; // Strings criadas durante a execução
 
-	// Construtor basicão.
+	// Execução em camadas: null no Interpreter sozinho. Veja visitRepeat.
+	private final OsrCompiler osr;
+	private JitRuntime runtime; // Criado na primeira troca para o código compilado.
+
+	// Com 'interactive' o que o Writeln escreveu e o prompt do Readln vão
+	// para a tela antes de cada leitura. Sem ele os prompts continuam na
+	// saída, mas só vão junto com o resto, quando o buffer enche ou no
+	// fim, o que deixa a leitura de muitos valores de um arquivo rápida.
+	private final boolean interactive;
+
+	// Construtor basicão. É interativo quando há um terminal.
 	public Interpreter(StrTable st, VarTable vt, FunctionTable ft) {
+		this(st, vt, ft, null, System.console() != null);
+	}
+
+	// Com 'osr', os repeat quentes passam a ser executados em bytecode.
+	public Interpreter(StrTable st, VarTable vt, FunctionTable ft, OsrCompiler osr, boolean interactive) {
 		this.stack = new DataStack();
 		this.memory = new Memory(vt);
 		this.st = st;
 		this.vt = vt;
 		this.ft = ft;
-		this.in = new Scanner(System.in);
+		this.in = Input.stdin();
+		this.out = new Output(System.out);
+		this.strings = new StringHeap(st);
+		this.osr = osr;
+		this.interactive = interactive;
 	}
 
 	@Override
     protected Void visitProgram(AST node){
-		visit(node.getChild(0)); // run program heading
-		visit(node.getChild(1)); // run block
+		try {
+			visit(node.getChild(0)); // run program heading
+			visit(node.getChild(1)); // run block
+		} finally {
+			out.flush(); // Também quando o programa termina com erro.
+		}
 		in.close(); // Fim do programa, não precisa mais de ler de stdin.
 	
 		return null;
@@ -169,7 +196,7 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 				case NO_TYPE:
 				default:
 					System.err.printf("Invalid type: %s!\n", varType.toString());
-					System.exit(1);
+					throw new CompileError();
 			}
 		}
 		else if (functionIDX == 1){
@@ -183,7 +210,7 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 				case NO_TYPE:
 				default:
 					System.err.printf("Invalid type: %s!\n", expr.type.toString());
-					System.exit(1);
+					throw new CompileError();
 			}
 		}
 		else{
@@ -198,14 +225,14 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	}
 
 	private Void readInt(int varIdx) {
-		System.out.printf("read (int): ");
+		prompt("read (int): ");
 		int value = in.nextInt();
 		memory.storei(varIdx, value);
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	private Void readReal(int varIdx) {
-		System.out.printf("read (real): ");
+		prompt("read (real): ");
 		float value = in.nextFloat();
 		memory.storef(varIdx, value);
 		return null; // Java exige um valor de retorno mesmo para Void... :/
@@ -214,7 +241,7 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	private Void readBool(int varIdx) {
 		int value;
 	    do {
-	        System.out.printf("read (bool - 0 = false, 1 = true): ");
+	        prompt("read (bool - 0 = false, 1 = true): ");
 	        value = in.nextInt();
 	    } while (value != 0 && value != 1);
 	    memory.storei(varIdx, value);
@@ -222,63 +249,53 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	}
 
 	private Void readStr(int varIdx) {
-		System.out.printf("read (str): ");
+		prompt("read (str): ");
 		String s = in.next();
-		int strIdx = st.addStr(s);
+		int strIdx = newString(s);
 		memory.storei(varIdx, strIdx);
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
+	// Cria uma string em tempo de execução, recolhendo antes as que já
+	// não estão em nenhuma variável nem na pilha.
+	private int newString(String s) {
+		if (strings.needsCollect()) {
+			strings.collect(memory.words(), stack.words(), stack.size());
+		}
+		return strings.add(s);
+	}
+
+	// O prompt sai junto com o que o Writeln ainda tiver no buffer.
+	private void prompt(String text) {
+		out.print(text);
+		if (interactive) {
+			out.flush();
+		}
+	}
+
 	private Void writeInt() {
-		System.out.println(stack.popi());
+		out.writeInt(stack.popi());
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	private Void writeReal() {
-		System.out.println(stack.popf());
+		out.writeReal(stack.popf());
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	private Void writeBool() {
-		if (stack.popi() == 0) {
-			System.out.println("false");
-		} else {
-			System.out.println("true");
-		}
+		out.writeBool(stack.popi());
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	private Void writeStr() {
 		int strIdx = stack.popi(); // String pointer
-		String originalStr = st.get(strIdx);
-		String unescapedStr = unescapeStr(originalStr);
-		System.out.print(unescapedStr);
-		return null; // Java exige um valor de retorno mesmo para Void... :/
-	}
-
-	// Função auxiliar para converter a string com escapes.
-	// Há várias formas de se fazer isso em Java mas preferi
-	// deixar assim para não precisar de bibliotecas ou de uma
-	// versão do Java mais recente.
-	// Se você preferir, pode usar:
-	// org.apache.commons.lang.StringEscapeUtils.unescapeJava()
-	// ou
-	// String.translateEscapes(), disponível a partir do Java 15.
-	private String unescapeStr(String originalStr) {
-		StreamTokenizer parser = new StreamTokenizer(new StringReader(originalStr));
-		String unescapedStr = "";
-		try {
-		    parser.nextToken();
-		    if (parser.ttype == '\'') {
-			    unescapedStr = parser.sval;
-		    } else {
-			  unescapedStr = "ERROR at string conversion!";
-		    }
-		}
-		catch (IOException e) {
-		    e.printStackTrace();
+		if (strings.isConstant(strIdx)) {
+			out.writeStr(st, strIdx);
+		} else {
+			out.print(strings.unescaped(strIdx));
 		}
-		return unescapedStr;
+		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	@Override
@@ -301,15 +318,23 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 
 	@Override
     protected Void visitIf(AST node){
-		// Visita a expressão de teste.
-		visit(node.getChild(0));
-		int test = stack.popi();
-		if (test == 1) { // THEN
-			visit(node.getChild(1));
-		} else if (test == 0 && node.getChildCount() == 3) { // ELSE, se houver
-			visit(node.getChild(2));
+		// Os 'else if' seguidos são percorridos aqui mesmo (veja elseIf).
+		for (;;) {
+			// Visita a expressão de teste.
+			visit(node.getChild(0));
+			int test = stack.popi();
+			if (test == 1) { // THEN
+				visit(node.getChild(1));
+			} else if (test == 0 && node.getChildCount() == 3) { // ELSE, se houver
+				AST next = elseIf(node);
+				if (next != null) {
+					node = next;
+					continue;
+				}
+				visit(node.getChild(2));
+			}
+			return null; // Java exige um valor de retorno mesmo para Void... :/
 		}
-		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	@Override
@@ -321,81 +346,54 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	@Override
     protected Void visitEq(AST node){
 		// Executa as subexpressões cujos valores vão ficar na pilha.
-		AST lexpr = node.getChild(0);
 		AST rexpr = node.getChild(1);
-		visit(lexpr);
-		visit(rexpr);
-		// Poderia usar 'lexpr' também no teste abaixo, já que
+		operand(node, 0);
+		operand(node, 1);
+		// Poderia usar o filho da esquerda no teste abaixo, já que
 		// ambos os lados são garantidamente do mesmo tipo,
 		// por conta dos eventuais nós de conversão.
 		if (rexpr.type == INT_TYPE) {
-			int r = stack.popi();
-	        int l = stack.popi();
-	        stack.pushi(l == r ? 1 : 0); // 1 = true; 0 = false
+			eqInt();
 		} else if (rexpr.type == REAL_TYPE) {
-			float r = stack.popf();
-	        float l = stack.popf();
-	        stack.pushi(l == r ? 1 : 0);
+			eqReal();
 		} else { // Must be STR_TYPE
-			int r = stack.popi();
-	        int l = stack.popi();
-	        String ls = st.get(l);
-	        String rs = st.get(r);
-	        stack.pushi(ls.compareTo(rs) == 0 ? 1 : 0);
+			eqStr();
 		}
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	@Override
 	protected Void visitGt(AST node) {
-		AST lexpr = node.getChild(0);
 		AST rexpr = node.getChild(1);
-		visit(lexpr);
-		visit(rexpr);
-		// Poderia usar 'lexpr' também no teste abaixo, já que
+		operand(node, 0);
+		operand(node, 1);
+		// Poderia usar o filho da esquerda no teste abaixo, já que
 		// ambos os lados são garantidamente do mesmo tipo,
 		// por conta dos eventuais nós de conversão.
 		if (rexpr.type == INT_TYPE) {
-			int r = stack.popi();
-	        int l = stack.popi();
-	        stack.pushi(l > r ? 1 : 0);
+			gtInt();
 		} else if (rexpr.type == REAL_TYPE) {
-			float r = stack.popf();
-	        float l = stack.popf();
-	        stack.pushi(l > r ? 1 : 0);
+			gtReal();
 		} else { // Must be STR_TYPE
-			int r = stack.popi();
-	        int l = stack.popi();
-	        String ls = st.get(l);
-	        String rs = st.get(r);
-	        stack.pushi(ls.compareTo(rs) > 0 ? 1 : 0);
+			gtStr();
 		}
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	@Override
     protected Void visitLt(AST node){
-		AST lexpr = node.getChild(0);
 		AST rexpr = node.getChild(1);
-		visit(lexpr);
-		visit(rexpr);
-		// Poderia usar 'lexpr' também no teste abaixo, já que
+		operand(node, 0);
+		operand(node, 1);
+		// Poderia usar o filho da esquerda no teste abaixo, já que
 		// ambos os lados são garantidamente do mesmo tipo,
 		// por conta dos eventuais nós de conversão.
 		if (rexpr.type == INT_TYPE) {
-			int r = stack.popi();
-	        int l = stack.popi();
-	        stack.pushi(l < r ? 1 : 0);
+			ltInt();
 		} else if (rexpr.type == REAL_TYPE) {
-			float r = stack.popf();
-	        float l = stack.popf();
-	        stack.pushi(l < r ? 1 : 0);
+			ltReal();
 		} else { // Must be STR_TYPE
-			int r = stack.popi();
-	        int l = stack.popi();
-	        String ls = st.get(l);
-	        String rs = st.get(r);
-	        stack.pushi(ls.compareTo(rs) < 0 ? 1 : 0);
+			ltStr();
 		}
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
@@ -404,84 +402,116 @@ public class Interpreter extends ASTBaseVisitor<Void> {
     protected Void visitRepeat(AST node){
 		// Usando um loop para implementar um loop, que coisa "meta" isso... :P
 		int again = 1;
+		int count = 0;
+		int check = osr == null ? 0 : osr.checkInterval();
 	    while (again == 1) {
 	    	visit(node.getChild(1)); // run body
 			visit(node.getChild(0)); // run test
 	        again = (stack.popi() == 1? 1 : 0); // again = !popi();
+	        if (osr != null && again == 1 && ++count == check) {
+	        	// Laço quente: se o código compilado já estiver pronto,
+	        	// continua nele a partir da próxima iteração.
+	        	count = 0;
+	        	MethodHandle code = osr.poll(node, check, () -> node);
+	        	if (code != null) {
+	        		out.flush(); // O código compilado escreve pelo JitRuntime.
+	        		osr.enter(code, runtime(), memory.words());
+	        		break;
+	        	}
+	        }
 	    }
 	    return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
+	private JitRuntime runtime() {
+		if (runtime == null) {
+			runtime = new JitRuntime(strings, in); // Mesmo Input e heap, para não perder nada.
+		}
+		return runtime;
+	}
+
 	@Override
     protected Void visitMinus(AST node){
-		visit(node.getChild(0));
-		visit(node.getChild(1));
+		operand(node, 0);
+		operand(node, 1);
 		if (node.type == INT_TYPE) {
-	        int r = stack.popi();
-	        int l = stack.popi();
-	        stack.pushi(l - r);
-	    } else { // Result must be REAL_TYPE.
-	        float r = stack.popf();
-	        float l = stack.popf();
-	        stack.pushf(l - r);
-	    }
+			minusInt();
+		} else { // Result must be REAL_TYPE.
+			minusReal();
+		}
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	@Override
     protected Void visitOver(AST node){
-		visit(node.getChild(0));
-		visit(node.getChild(1));
+		operand(node, 0);
+		operand(node, 1);
 		if (node.type == INT_TYPE) {
-	        int r = stack.popi();
-	        int l = stack.popi();
-	        stack.pushi(l / r);
-	    } else { // Result must be REAL_TYPE.
-	        float r = stack.popf();
-	        float l = stack.popf();
-	        stack.pushf(l / r);
-	    }
+			overInt();
+		} else { // Result must be REAL_TYPE.
+			overReal();
+		}
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
 	@Override
     protected Void visitPlus(AST node){
-		// Poderia fazer tudo em um método só mas como o '+'
-		// é sobrecarregado, preferi dividir em métodos auxiliares.
-		switch(node.type) {
-			case INT_TYPE:  plusInt(node);    break;
-	        case REAL_TYPE: plusReal(node);   break;
-	        case BOOL_TYPE: plusBool(node);   break;
-	        case STR_TYPE:  plusStr(node);    break;
-			case NO_TYPE:
-		    default:
-	            System.err.printf("Invalid type: %s!\n",node.type.toString());
-	            System.exit(1);
+		// O '+' é sobrecarregado: soma, 'ou' dos bools ou concatenação.
+		Type type = node.type;
+		if (type != INT_TYPE && type != REAL_TYPE && type != BOOL_TYPE && type != STR_TYPE) {
+			System.err.printf("Invalid type: %s!\n", type.toString());
+			throw new CompileError();
 		}
+		operand(node, 0);
+		operand(node, 1);
+		plus(type);
 		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
-	private Void plusInt(AST node) {
-		visit(node.getChild(0));
-		visit(node.getChild(1));
-	    int r = stack.popi();
-	    int l = stack.popi();
-	    stack.pushi(l + r);
-	    return null; // Java exige um valor de retorno mesmo para Void... :/
+	@Override
+    protected Void visitTimes(AST node){
+		operand(node, 0);
+		operand(node, 1);
+		if (node.type == INT_TYPE) {
+			timesInt();
+		} else { // Result must be REAL_TYPE.
+			timesReal();
+		}
+		return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
-	private Void plusReal(AST node) {
-		visit(node.getChild(0));
-		visit(node.getChild(1));
-	    float r = stack.popf();
-	    float l = stack.popf();
-	    stack.pushf(l + r);
-	    return null; // Java exige um valor de retorno mesmo para Void... :/
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Operações ----------------------------------
+
+	// A parte de cada operador que não depende de como a árvore é
+	// percorrida: todos os visitors de operador (genéricos e especializados,
+	// na AST e na FlatAST) calculam os dois lados com 'operand' e chamam
+	// um destes, que tira os dois valores do topo da pilha e empilha o
+	// resultado.
+
+	// '+' de um nó do tipo 'type', que já foi conferido.
+	private void plus(Type type) {
+		switch(type) {
+			case INT_TYPE:  plusInt();    break;
+			case REAL_TYPE: plusReal();   break;
+			case BOOL_TYPE: orBools();    break;
+			default:        concatStrs(); break; // STR_TYPE
+		}
 	}
 
-	private Void plusBool(AST node) {
-		visit(node.getChild(0));
-		visit(node.getChild(1));
+	private void plusInt() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(l + r);
+	}
+
+	private void plusReal() {
+		float r = stack.popf();
+		float l = stack.popf();
+		stack.pushf(l + r);
+	}
+
+	private void orBools() {
 	    int r = stack.popi();
 	    int l = stack.popi();
 	    if (l == 1 || r == 1) {
@@ -489,16 +519,13 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	    } else {
 	    	stack.pushi(0); // false
 	    }
-	    return null; // Java exige um valor de retorno mesmo para Void... :/
 	}
 
-	private Void plusStr(AST node) {
-		visit(node.getChild(0));
-		visit(node.getChild(1));
+	private void concatStrs() {
 	    int r = stack.popi();
 	    int l = stack.popi();
-	    String ls = st.get(l);
-	    String rs = st.get(r);
+	    String ls = strings.get(l);
+	    String rs = strings.get(r);
 	    StringBuilder sb = new StringBuilder();
 	    // Todas as strings ficam envoltas por ", por isso,
 	    // na hora de concatenar, precisamos retirar o último
@@ -506,27 +533,100 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	    sb.append(ls.substring(0, ls.length() - 1));
 	    // ...e o primeiro caractere da substring da direita.
 	    sb.append(rs.substring(1));
-	    // Adiciona a nova string na tabela.
-	    int newStrIdx = st.addStr(sb.toString());
+	    // Cria a nova string no heap (a StrTable só tem as constantes).
+	    int newStrIdx = newString(sb.toString());
 	    // Retorna o índice da nova string pela pilha.
 	    stack.pushi(newStrIdx);
-	    return null; // Java exige um valor de retorno mesmo para Void... :/
     }
 
-	@Override
-    protected Void visitTimes(AST node){
-		visit(node.getChild(0));
-		visit(node.getChild(1));
-		if (node.type == INT_TYPE) {
-	        int r = stack.popi();
-	        int l = stack.popi();
-	        stack.pushi(l * r);
-	    } else { // Result must be REAL_TYPE.
-	        float r = stack.popf();
-	        float l = stack.popf();
-	        stack.pushf(l * r);
-	    }
-		return null; // Java exige um valor de retorno mesmo para Void... :/
+	private void minusInt() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(l - r);
+	}
+
+	private void minusReal() {
+		float r = stack.popf();
+		float l = stack.popf();
+		stack.pushf(l - r);
+	}
+
+	private void timesInt() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(l * r);
+	}
+
+	private void timesReal() {
+		float r = stack.popf();
+		float l = stack.popf();
+		stack.pushf(l * r);
+	}
+
+	private void overInt() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(l / r);
+	}
+
+	private void overReal() {
+		float r = stack.popf();
+		float l = stack.popf();
+		stack.pushf(l / r);
+	}
+
+	private void eqInt() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(l == r ? 1 : 0); // 1 = true; 0 = false
+	}
+
+	private void eqReal() {
+		float r = stack.popf();
+		float l = stack.popf();
+		stack.pushi(l == r ? 1 : 0);
+	}
+
+	private void eqStr() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(strings.equal(l, r) ? 1 : 0);
+	}
+
+	private void ltInt() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(l < r ? 1 : 0);
+	}
+
+	private void ltReal() {
+		float r = stack.popf();
+		float l = stack.popf();
+		stack.pushi(l < r ? 1 : 0);
+	}
+
+	private void ltStr() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(strings.compare(l, r) < 0 ? 1 : 0);
+	}
+
+	private void gtInt() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(l > r ? 1 : 0);
+	}
+
+	private void gtReal() {
+		float r = stack.popf();
+		float l = stack.popf();
+		stack.pushi(l > r ? 1 : 0);
+	}
+
+	private void gtStr() {
+		int r = stack.popi();
+		int l = stack.popi();
+		stack.pushi(strings.compare(l, r) > 0 ? 1 : 0);
 	}
 
 	@Override
@@ -582,4 +682,668 @@ public class Interpreter extends ASTBaseVisitor<Void> {
 	@Override
     protected Void visitR2S(AST node){return null;}
 
-}
\ No newline at end of file
+	// ----------------------------------------------------------------------------
+	// --------------------------- Nós especializados -----------------------------
+
+	// Versões dos nós trocados pelo ast.opt.Quickener. O tipo já vem no
+	// 'kind', então não há teste nenhum antes da operação. Os ints, bools,
+	// índices de string e reais ficam todos como palavras de 32 bits na
+	// memória (os reais pelos bits), por isso o LOAD e o STORE são iguais
+	// para os dois tipos.
+
+	@Override
+	protected Void visitIntPlus(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		plusInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealPlus(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		plusReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitBoolPlus(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		orBools();
+		return null;
+	}
+
+	@Override
+	protected Void visitStrPlus(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		concatStrs();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntMinus(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		minusInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealMinus(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		minusReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntTimes(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		timesInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealTimes(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		timesReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntOver(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		overInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealOver(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		overReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntEq(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		eqInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealEq(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		eqReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitStrEq(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		eqStr();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntLt(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		ltInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealLt(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		ltReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitStrLt(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		ltStr();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntGt(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		gtInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealGt(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		gtReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitStrGt(AST node) {
+		operand(node, 0);
+		operand(node, 1);
+		gtStr();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntLoad(AST node) {
+		stack.pushi(memory.loadi(node.intData));
+		return null;
+	}
+
+	@Override
+	protected Void visitRealLoad(AST node) {
+		stack.pushi(memory.loadi(node.intData));
+		return null;
+	}
+
+	@Override
+	protected Void visitIntStore(AST node) {
+		visit(node.getChild(1));
+		memory.storei(node.intData, stack.popi());
+		return null;
+	}
+
+	@Override
+	protected Void visitRealStore(AST node) {
+		visit(node.getChild(1));
+		memory.storei(node.intData, stack.popi());
+		return null;
+	}
+
+	// ----------------------------------------------------------------------------
+	// --------------------------- Percurso pela FlatAST --------------------------
+
+	// Mesma semântica dos métodos acima, mas andando pelos índices da
+	// FlatAST (veja Compilation com '--flat'). Os nós que não estão aqui
+	// caem no padrão do ASTBaseVisitor, que recria a subárvore.
+
+	@Override
+	protected Void visitProgram(int node) {
+		try {
+			visit(flat.child(node, 0)); // run program heading
+			visit(flat.child(node, 1)); // run block
+		} finally {
+			out.flush();
+		}
+		in.close();
+		return null;
+	}
+
+	@Override
+	protected Void visitBlock(int node) {
+		for (int i = 0; i < flat.childCount(node); i++) {
+			visit(flat.child(node, i));
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitVarDeclPart(int node) {
+		return null;
+	}
+
+	@Override
+	protected Void visitStatementList(int node) {
+		for (int i = 0; i < flat.childCount(node); i++) {
+			visit(flat.child(node, i));
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitProcedureDesignator(int node) {
+		visit(flat.child(node, 0));
+		visit(flat.child(node, 1));
+		return null;
+	}
+
+	@Override
+	protected Void visitFuncIdentifier(int node) {
+		stack.pushi(flat.intData(node));
+		return null;
+	}
+
+	@Override
+	protected Void visitParameterList(int node) {
+		int functionIDX = stack.popi();
+		if (functionIDX == 0) {
+			int varIdx = flat.intData(flat.child(node, 0));
+			Type varType = vt.getType(varIdx);
+			switch(varType) {
+				case INT_TYPE:  readInt(varIdx);    break;
+				case REAL_TYPE: readReal(varIdx);   break;
+				case BOOL_TYPE: readBool(varIdx);   break;
+				case STR_TYPE:  readStr(varIdx);    break;
+				case NO_TYPE:
+				default:
+					System.err.printf("Invalid type: %s!\n", varType.toString());
+					throw new CompileError();
+			}
+		} else if (functionIDX == 1) {
+			int expr = flat.child(node, 0);
+			visit(expr);
+			Type type = flat.type(expr);
+			switch(type) {
+				case INT_TYPE:  writeInt();    break;
+				case REAL_TYPE: writeReal();   break;
+				case BOOL_TYPE: writeBool();   break;
+				case STR_TYPE:  writeStr();    break;
+				case NO_TYPE:
+				default:
+					System.err.printf("Invalid type: %s!\n", type.toString());
+					throw new CompileError();
+			}
+		} else {
+			for (int i = 0; i < flat.childCount(node); i++) {
+				visit(flat.child(node, i));
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitAssign(int node) {
+		visit(flat.child(node, 1));
+		int varIdx = flat.intData(flat.child(node, 0));
+		if (vt.getType(varIdx) == REAL_TYPE) {
+			memory.storef(varIdx, stack.popf());
+		} else {
+			memory.storei(varIdx, stack.popi());
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitIf(int node) {
+		for (;;) {
+			visit(flat.child(node, 0));
+			int test = stack.popi();
+			if (test == 1) {
+				visit(flat.child(node, 1));
+			} else if (test == 0 && flat.childCount(node) == 3) {
+				int next = elseIf(node);
+				if (next != -1) {
+					node = next;
+					continue;
+				}
+				visit(flat.child(node, 2));
+			}
+			return null;
+		}
+	}
+
+	@Override
+	protected Void visitElse(int node) {
+		visit(flat.child(node, 0));
+		return null;
+	}
+
+	@Override
+	protected Void visitRepeat(int node) {
+		int again = 1;
+		int count = 0;
+		int check = osr == null ? 0 : osr.checkInterval();
+		while (again == 1) {
+			visit(flat.child(node, 1)); // run body
+			visit(flat.child(node, 0)); // run test
+			again = (stack.popi() == 1? 1 : 0);
+			if (osr != null && again == 1 && ++count == check) {
+				count = 0;
+				MethodHandle code = osr.poll(node, check, () -> flat.toAST(node));
+				if (code != null) {
+					out.flush();
+					osr.enter(code, runtime(), memory.words());
+					break;
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitEq(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		Type type = flat.type(flat.child(node, 1));
+		if (type == INT_TYPE) {
+			eqInt();
+		} else if (type == REAL_TYPE) {
+			eqReal();
+		} else { // Must be STR_TYPE
+			eqStr();
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitGt(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		Type type = flat.type(flat.child(node, 1));
+		if (type == INT_TYPE) {
+			gtInt();
+		} else if (type == REAL_TYPE) {
+			gtReal();
+		} else { // Must be STR_TYPE
+			gtStr();
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitLt(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		Type type = flat.type(flat.child(node, 1));
+		if (type == INT_TYPE) {
+			ltInt();
+		} else if (type == REAL_TYPE) {
+			ltReal();
+		} else { // Must be STR_TYPE
+			ltStr();
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitMinus(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		if (flat.type(node) == INT_TYPE) {
+			minusInt();
+		} else {
+			minusReal();
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitOver(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		if (flat.type(node) == INT_TYPE) {
+			overInt();
+		} else {
+			overReal();
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitTimes(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		if (flat.type(node) == INT_TYPE) {
+			timesInt();
+		} else {
+			timesReal();
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitPlus(int node) {
+		Type type = flat.type(node);
+		if (type != INT_TYPE && type != REAL_TYPE && type != BOOL_TYPE && type != STR_TYPE) {
+			System.err.printf("Invalid type: %s!\n", type.toString());
+			throw new CompileError();
+		}
+		operand(node, 0);
+		operand(node, 1);
+		plus(type);
+		return null;
+	}
+
+	@Override
+	protected Void visitVarUse(int node) {
+		int varIdx = flat.intData(node);
+		if (flat.type(node) == REAL_TYPE) {
+			stack.pushf(memory.loadf(varIdx));
+		} else {
+			stack.pushi(memory.loadi(varIdx));
+		}
+		return null;
+	}
+
+	@Override
+	protected Void visitIntVal(int node) {
+		stack.pushi(flat.intData(node));
+		return null;
+	}
+
+	@Override
+	protected Void visitStrVal(int node) {
+		stack.pushi(flat.intData(node));
+		return null;
+	}
+
+	@Override
+	protected Void visitBoolVal(int node) {
+		stack.pushi(flat.intData(node));
+		return null;
+	}
+
+	@Override
+	protected Void visitRealVal(int node) {
+		stack.pushf(flat.floatData(node));
+		return null;
+	}
+
+	@Override
+	protected Void visitB2I(int node) {return null;}
+
+	@Override
+	protected Void visitB2R(int node) {return null;}
+
+	@Override
+	protected Void visitB2S(int node) {return null;}
+
+	@Override
+	protected Void visitI2R(int node) {return null;}
+
+	@Override
+	protected Void visitI2S(int node) {return null;}
+
+	@Override
+	protected Void visitR2S(int node) {return null;}
+
+	// Nós especializados, como os da AST acima.
+
+	@Override
+	protected Void visitIntPlus(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		plusInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealPlus(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		plusReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitBoolPlus(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		orBools();
+		return null;
+	}
+
+	@Override
+	protected Void visitStrPlus(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		concatStrs();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntMinus(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		minusInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealMinus(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		minusReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntTimes(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		timesInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealTimes(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		timesReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntOver(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		overInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealOver(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		overReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntEq(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		eqInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealEq(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		eqReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitStrEq(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		eqStr();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntLt(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		ltInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealLt(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		ltReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitStrLt(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		ltStr();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntGt(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		gtInt();
+		return null;
+	}
+
+	@Override
+	protected Void visitRealGt(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		gtReal();
+		return null;
+	}
+
+	@Override
+	protected Void visitStrGt(int node) {
+		operand(node, 0);
+		operand(node, 1);
+		gtStr();
+		return null;
+	}
+
+	@Override
+	protected Void visitIntLoad(int node) {
+		stack.pushi(memory.loadi(flat.intData(node)));
+		return null;
+	}
+
+	@Override
+	protected Void visitRealLoad(int node) {
+		stack.pushi(memory.loadi(flat.intData(node)));
+		return null;
+	}
+
+	@Override
+	protected Void visitIntStore(int node) {
+		visit(flat.child(node, 1));
+		memory.storei(flat.intData(node), stack.popi());
+		return null;
+	}
+
+	@Override
+	protected Void visitRealStore(int node) {
+		visit(flat.child(node, 1));
+		memory.storei(flat.intData(node), stack.popi());
+		return null;
+	}
+
+}
@@ -1,41 +1,55 @@
 package code;
 
-import java.util.Vector;
-
 import tables.VarTable;
 
 /*
  * Implementação de uma memória (vetor) de words,
  * com os métodos que facilitam acessar um valor
  * inteiro ou real.
+ *
+ * Assim como a DataStack, as words ficam em um vetor de int
+ * e os reais são guardados pelos seus bits crus, sem alocar
+ * nada a cada leitura ou escrita.
  */
-@SuppressWarnings("serial")
-public class Memory extends Vector<Word> {
+public final class Memory {
+
+	private final int[] words;
 
 	// Cria a memória do tamanho das tabela de variáveis.
-	// O índice na tabela é o "endereço" na memória.
+	// O índice na tabela é o "endereço" na memória. Este é o único
+	// ponto de alocação: a memória não cresce depois, e um endereço
+	// fora dela é erro do Interpreter (o vetor também é o mesmo que o
+	// código do tiered recebe em 'words').
 	public Memory(VarTable vt) {
-		for (int i = 0; i < vt.getSize(); i++) {
-			this.add(Word.fromInt(0));
-		}
+		this.words = new int[Math.max(vt.getSize(), 1)];
 	}
 
 	// No mundo real esses métodos precisam de verificações de erros.
 	
 	public void storei(int addr, int value) {
-		this.set(addr, Word.fromInt(value));
+		words[addr] = value;
 	}
 	
 	public int loadi(int addr) {
-		return this.get(addr).toInt();
+		return words[addr];
 	}
 	
 	public void storef(int addr, float value) {
-		this.set(addr, Word.fromFloat(value));
+		storei(addr, Float.floatToRawIntBits(value));
 	}
 	
 	public float loadf(int addr) {
-		return this.get(addr).toFloat();
+		return Float.intBitsToFloat(loadi(addr));
+	}
+
+	// O vetor de words em si, para o código compilado do tiered ler e
+	// gravar as variáveis direto (veja code.jit.OsrCompiler).
+	public int[] words() {
+		return words;
+	}
+
+	public int size() {
+		return words.length;
 	}
 	
 }
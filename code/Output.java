@@ -0,0 +1,184 @@
+package code;
+
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+import tables.StrTable;
+
+/*
+ * Saída do Writeln no Interpreter. Em vez de um println por valor, que
+ * trava a System.out e cria uma String a cada chamada, os valores são
+ * formatados direto em um vetor de bytes, que só vai para a System.out
+ * quando enche, antes de cada leitura (para o prompt aparecer na ordem
+ * certa) e no fim do programa.
+ *
+ * Os ints, os bools e os reais inteiros (o caso comum) são formatados
+ * sem criar objeto nenhum. Os outros reais passam pelo Float.toString,
+ * que dá o mesmo texto do println. As strings da StrTable são
+ * codificadas uma vez só e guardadas pelo índice.
+ */
+public final class Output {
+
+	private static final int SIZE = 1 << 16;
+
+	private static final byte[] NEWLINE = ascii(System.lineSeparator());
+	private static final byte[] TRUE = ascii("true" + System.lineSeparator());
+	private static final byte[] FALSE = ascii("false" + System.lineSeparator());
+	private static final byte[] MIN_INT = ascii(Integer.toString(Integer.MIN_VALUE));
+	private static final byte[] NEG_ZERO = ascii("-0.0");
+
+	// Reais com valor inteiro abaixo disso o Float.toString escreve como 'n.0'.
+	private static final float PLAIN_LIMIT = 1e7f;
+
+	private final PrintStream out;
+	private final Charset charset;
+	private final byte[] buf = new byte[SIZE];
+	private int pos;
+
+	// Dígitos de um int, do fim para o começo.
+	private final byte[] digits = new byte[10];
+
+	// Bytes de cada string da StrTable já sem aspas e escapes, pelo índice.
+	private byte[][] strings = new byte[64][];
+
+	public Output(PrintStream out) {
+		this.out = out;
+		this.charset = stdoutCharset();
+	}
+
+	// Mesma codificação que a System.out usa por padrão.
+	private static Charset stdoutCharset() {
+		String name = System.getProperty("sun.stdout.encoding");
+		try {
+			return name != null ? Charset.forName(name) : Charset.defaultCharset();
+		} catch (IllegalArgumentException e) {
+			return Charset.defaultCharset();
+		}
+	}
+
+	private static byte[] ascii(String s) {
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) s.charAt(i);
+		}
+		return b;
+	}
+
+	public void flush() {
+		if (pos > 0) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+		out.flush();
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Valores ------------------------------------
+
+	public void writeInt(int value) {
+		ensure(12);
+		putInt(value);
+		put(NEWLINE);
+	}
+
+	public void writeReal(float value) {
+		if (value == (int) value && Math.abs(value) < PLAIN_LIMIT) {
+			ensure(16);
+			if (value == 0 && Float.floatToRawIntBits(value) != 0) {
+				put(NEG_ZERO);
+			} else {
+				putInt((int) value);
+				buf[pos++] = '.';
+				buf[pos++] = '0';
+			}
+			put(NEWLINE);
+		} else {
+			// NaN, infinitos, frações e expoentes: deixa com o Float.toString.
+			print(Float.toString(value));
+			put(NEWLINE);
+		}
+	}
+
+	public void writeBool(int value) {
+		put(value == 0 ? FALSE : TRUE);
+	}
+
+	// A string de índice 'index' da StrTable, sem quebra de linha no fim.
+	public void writeStr(StrTable st, int index) {
+		if (index >= strings.length) {
+			byte[][] grown = new byte[Math.max(strings.length * 2, index + 1)][];
+			System.arraycopy(strings, 0, grown, 0, strings.length);
+			strings = grown;
+		}
+		byte[] s = strings[index];
+		if (s == null) {
+			s = st.getUnescaped(index).getBytes(charset);
+			strings[index] = s;
+		}
+		put(s);
+	}
+
+	// Texto qualquer, como os prompts do Readln.
+	public void print(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) >= 0x80) {
+				put(s.getBytes(charset));
+				return;
+			}
+		}
+		if (s.length() > buf.length) {
+			flush();
+			out.print(s);
+			return;
+		}
+		ensure(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			buf[pos++] = (byte) s.charAt(i);
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Auxiliares ---------------------------------
+
+	// Garante 'n' bytes livres no buffer, esvaziando se precisar.
+	private void ensure(int n) {
+		if (pos + n > buf.length) {
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+	}
+
+	private void put(byte[] b) {
+		if (b.length > buf.length) {
+			flush();
+			out.write(b, 0, b.length);
+			return;
+		}
+		ensure(b.length);
+		System.arraycopy(b, 0, buf, pos, b.length);
+		pos += b.length;
+	}
+
+	// Escreve os dígitos de 'value' sem quebra de linha. Quem chama já
+	// garantiu espaço para 11 bytes.
+	private void putInt(int value) {
+		if (value == Integer.MIN_VALUE) {
+			System.arraycopy(MIN_INT, 0, buf, pos, MIN_INT.length);
+			pos += MIN_INT.length;
+			return;
+		}
+		if (value < 0) {
+			buf[pos++] = '-';
+			value = -value;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (n > 0) {
+			buf[pos++] = digits[--n];
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package code;
+
+import java.util.Arrays;
+
+import tables.StrTable;
+
+/*
+ * Strings do programa em tempo de execução. As constantes continuam na
+ * StrTable, que não muda mais depois do front-end; as strings criadas
+ * durante a execução (concatenação, Readln, conversões) ficam aqui.
+ *
+ * Um valor string é um int, o "handle": os handles abaixo de 'base'
+ * são os índices das constantes na StrTable e os outros são posições
+ * deste heap. Assim os valores continuam sendo words na DataStack, na
+ * Memory e nas variáveis locais do código gerado pelo JitCompiler.
+ *
+ * As strings que ninguém mais referencia são recolhidas por 'collect',
+ * que recebe as words onde pode haver handles (memória, pilha e as
+ * variáveis locais do código do JitCompiler) e libera as posições não
+ * marcadas, reaproveitadas nas próximas criações. A VM passa os seus
+ * registradores e as closures as ints do Frame. A varredura é
+ * conservadora: qualquer word com o valor de um handle vivo o mantém
+ * vivo. Como só quem chama conhece as raízes, o heap não decide
+ * sozinho; ele só avisa com 'needsCollect'. O aviso vem quando o número
+ * de strings vivas dobra ou quando os caracteres criados desde a última
+ * coleta passam do orçamento, o que acontecer antes: poucas strings
+ * grandes também disparam a coleta.
+ *
+ * O tamanho e o hash de cada string ficam guardados, então comparar
+ * duas strings diferentes quase nunca precisa olhar os caracteres.
+ */
+public final class StringHeap {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	// Recolhe quando as strings vivas dobram desde a última coleta.
+	private static final int MIN_COLLECT_AT = 4096;
+
+	// Ou quando os caracteres criados desde a última coleta passam do
+	// total dos vivos (no mínimo 1M caracteres, uns 2 MB).
+	private static final long MIN_CHARS_BUDGET = 1 << 20;
+
+	private static final int[] NO_WORDS = new int[0];
+
+	private final StrTable st;
+	private final int base;
+
+	private String[] values;
+	private int[] lengths;
+	private int[] hashes;
+	private int top; // Próxima posição ainda não usada.
+
+	// Posições liberadas pela última coleta, usadas como pilha.
+	private int[] free = new int[16];
+	private int freeCount;
+
+	private int live;
+	private int collectAt = MIN_COLLECT_AT;
+	private long charsAdded; // Caracteres criados desde a última coleta.
+	private long charsBudget = MIN_CHARS_BUDGET;
+	private boolean[] marks;
+
+	public StringHeap(StrTable st) {
+		this.st = st;
+		this.base = st.size();
+		int capacity = base + INITIAL_CAPACITY;
+		this.values = new String[capacity];
+		this.lengths = new int[capacity];
+		this.hashes = new int[capacity];
+		for (int i = 0; i < base; i++) {
+			set(i, st.get(i));
+		}
+		this.top = base;
+	}
+
+	public boolean isConstant(int handle) {
+		return handle < base;
+	}
+
+	public String get(int handle) {
+		return values[handle];
+	}
+
+	// Texto já sem aspas e com os escapes interpretados, para o Writeln.
+	public String unescaped(int handle) {
+		if (handle < base) {
+			return st.getUnescaped(handle);
+		}
+		return StrTable.unescape(values[handle]);
+	}
+
+	// Cria uma string nova e retorna o seu handle.
+	public int add(String s) {
+		int handle;
+		if (freeCount > 0) {
+			handle = free[--freeCount];
+		} else {
+			if (top == values.length) {
+				grow();
+			}
+			handle = top++;
+		}
+		set(handle, s);
+		live++;
+		charsAdded += s.length();
+		return handle;
+	}
+
+	private void set(int handle, String s) {
+		values[handle] = s;
+		lengths[handle] = s.length();
+		hashes[handle] = s.hashCode();
+	}
+
+	private void grow() {
+		int capacity = values.length * 2;
+		values = Arrays.copyOf(values, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		hashes = Arrays.copyOf(hashes, capacity);
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------ Comparações ---------------------------------
+
+	public boolean equal(int l, int r) {
+		if (l == r) {
+			return true;
+		}
+		if (lengths[l] != lengths[r] || hashes[l] != hashes[r]) {
+			return false;
+		}
+		return values[l].equals(values[r]);
+	}
+
+	// Mesmo resultado que String.compareTo.
+	public int compare(int l, int r) {
+		if (l == r) {
+			return 0;
+		}
+		return values[l].compareTo(values[r]);
+	}
+
+	// ----------------------------------------------------------------------------
+	// -------------------------------- Coleta ------------------------------------
+
+	public boolean needsCollect() {
+		return live >= collectAt || charsAdded >= charsBudget;
+	}
+
+	// Recolhe as strings do heap cujos handles não aparecem na memória
+	// nem nas 'stackSize' primeiras words da pilha.
+	public void collect(int[] memory, int[] stack, int stackSize) {
+		collect(NO_WORDS, memory, stack, stackSize);
+	}
+
+	// Recolhe as strings cujos handles não aparecem em 'roots', que
+	// guarda todos os valores vivos (os registradores da VM, o Frame).
+	public void collect(int[] roots) {
+		collect(roots, NO_WORDS, NO_WORDS, 0);
+	}
+
+	// O mesmo, com mais as variáveis locais do código compilado.
+	public void collect(int[] locals, int[] memory, int[] stack, int stackSize) {
+		if (marks == null || marks.length < top) {
+			marks = new boolean[values.length];
+		} else {
+			Arrays.fill(marks, 0, top, false);
+		}
+		mark(locals, locals.length);
+		mark(memory, memory.length);
+		mark(stack, stackSize);
+		int freed = 0;
+		long liveChars = 0;
+		for (int h = base; h < top; h++) {
+			if (values[h] == null) {
+				continue;
+			}
+			if (marks[h]) {
+				liveChars += lengths[h];
+			} else {
+				values[h] = null;
+				if (freeCount == free.length) {
+					free = Arrays.copyOf(free, free.length * 2);
+				}
+				free[freeCount++] = h;
+				freed++;
+			}
+		}
+		live -= freed;
+		collectAt = Math.max(MIN_COLLECT_AT, live * 2);
+		charsAdded = 0;
+		charsBudget = Math.max(MIN_CHARS_BUDGET, liveChars);
+	}
+
+	private void mark(int[] words, int count) {
+		for (int i = 0; i < count; i++) {
+			int w = words[i];
+			if (w >= base && w < top) {
+				marks[w] = true;
+			}
+		}
+	}
+
+}
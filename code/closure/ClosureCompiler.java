@@ -0,0 +1,405 @@
+package code.closure;
+
+import java.util.Scanner;
+
+import ast.AST;
+import ast.NodeKind;
+import code.StringHeap;
+import driver.CompileError;
+import tables.StrTable;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Tradutor da AST já verificada para uma árvore de closures: cada nó
+ * vira uma lambda que retorna o seu valor já com o tipo primitivo certo
+ * (IntExpr, RealExpr) ou executa o comando (Stmt). É a alternativa à VM
+ * sem formato de bytecode para manter.
+ *
+ * Todo o despacho por 'kind' e por tipo que o Interpreter faz a cada
+ * execução acontece aqui uma única vez, assim como a resolução das
+ * variáveis para a sua posição no Frame. Na execução não há pilha de
+ * dados nem switch, só chamadas de eval, que a JVM consegue inlinear
+ * porque cada chamada dentro de uma lambda sempre vê a mesma classe.
+ *
+ * A saída tem de ser exatamente a mesma do Interpreter e da VM. Nos
+ * casos em que os dois diferem (comparação de bools, conversões) segue
+ * a VM.
+ *
+ * As strings criadas na execução ficam num StringHeap, como no
+ * Interpreter. Os valores intermediários de uma expressão ficam só na
+ * pilha da JVM, então a coleta acontece entre duas voltas de um repeat,
+ * como no JitCompiler, quando todas as strings vivas estão no Frame.
+ *
+ * Para rodar, chame 'compile' e depois 'run' com o resultado.
+ */
+public final class ClosureCompiler {
+
+	private final StringHeap strings; // Strings criadas durante a execução
+	private final VarTable vt;
+	private final Scanner in; // Para leitura de stdin
+
+	public ClosureCompiler(StrTable st, VarTable vt) {
+		this.strings = new StringHeap(st);
+		this.vt = vt;
+		this.in = new Scanner(System.in);
+	}
+
+	public Stmt compile(AST root) {
+		return stmt(root);
+	}
+
+	public void run(Stmt program) {
+		program.exec(new Frame(Math.max(vt.getSize(), 1)));
+		in.close(); // Fim do programa, não precisa mais de ler de stdin.
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Comandos -----------------------------------
+
+	private Stmt stmt(AST node) {
+		switch (node.kind.generic()) {
+			case PROGRAM_NODE:
+				return stmt(node.getChild(1)); // O program heading não faz nada.
+			case BLOCK_NODE:
+			case STATEMENT_LIST_NODE:
+				return sequence(node);
+			case PROGRAM_HEADING_NODE:
+			case IDENTIFIER_NODE:
+			case VAR_DECL_PART_NODE:
+			case VAR_DECL_NODE:
+			case IDENTIFIER_LIST_NODE:
+				return f -> {};
+			case ASSIGN_NODE:           return assign(node);
+			case IF_NODE:               return ifStmt(node);
+			case ELSE_NODE:             return stmt(node.getChild(0));
+			case REPEAT_NODE:           return repeat(node);
+			case PROCEDURE_DESIGN_NODE: return call(node);
+			default:
+				System.err.printf("Invalid kind: %s!\n", node.kind.toString());
+				throw new CompileError();
+		}
+	}
+
+	private Stmt sequence(AST node) {
+		int n = node.getChildCount();
+		if (n == 1) {
+			return stmt(node.getChild(0));
+		}
+		if (n == 2) {
+			final Stmt a = stmt(node.getChild(0));
+			final Stmt b = stmt(node.getChild(1));
+			return f -> { a.exec(f); b.exec(f); };
+		}
+		final Stmt[] body = new Stmt[n];
+		for (int i = 0; i < n; i++) {
+			body[i] = stmt(node.getChild(i));
+		}
+		return f -> {
+			for (Stmt s : body) {
+				s.exec(f);
+			}
+		};
+	}
+
+	private Stmt assign(AST node) {
+		final int var = node.getChild(0).intData;
+		AST expr = node.getChild(1);
+		if (vt.getType(var) == Type.REAL_TYPE) {
+			final RealExpr e = realExpr(expr);
+			return f -> f.reals[var] = e.eval(f);
+		}
+		final IntExpr e = intExpr(expr);
+		return f -> f.ints[var] = e.eval(f);
+	}
+
+	private Stmt ifStmt(AST node) {
+		final IntExpr test = intExpr(node.getChild(0));
+		final Stmt then = stmt(node.getChild(1));
+		if (node.getChildCount() == 3) {
+			final Stmt otherwise = stmt(node.getChild(2));
+			return f -> {
+				int c = test.eval(f);
+				if (c == 1) {
+					then.exec(f);
+				} else if (c == 0) {
+					otherwise.exec(f);
+				}
+			};
+		}
+		return f -> {
+			if (test.eval(f) == 1) {
+				then.exec(f);
+			}
+		};
+	}
+
+	// Mesma semântica do Interpreter: executa o corpo e repete
+	// enquanto o teste for verdadeiro. Entre o corpo e o teste nenhuma
+	// expressão está pela metade, então é lá que as strings são
+	// recolhidas, com as ints do Frame como raízes.
+	private Stmt repeat(AST node) {
+		final IntExpr test = intExpr(node.getChild(0));
+		final Stmt body = stmt(node.getChild(1));
+		return f -> {
+			do {
+				body.exec(f);
+				if (strings.needsCollect()) {
+					strings.collect(f.ints);
+				}
+			} while (test.eval(f) == 1);
+		};
+	}
+
+	// Assim como no Interpreter, só Readln e Writeln com o primeiro
+	// argumento são suportados. Outras funções não fazem nada.
+	private Stmt call(AST node) {
+		int function = node.getChild(0).intData;
+		AST args = node.getChild(1);
+		if (function == 0) {
+			return read(args.getChild(0).intData);
+		} else if (function == 1) {
+			return write(args.getChild(0));
+		}
+		return f -> {};
+	}
+
+	private Stmt read(final int var) {
+		Type type = vt.getType(var);
+		switch (type) {
+			case INT_TYPE:
+				return f -> {
+					System.out.printf("read (int): ");
+					f.ints[var] = in.nextInt();
+				};
+			case REAL_TYPE:
+				return f -> {
+					System.out.printf("read (real): ");
+					f.reals[var] = in.nextFloat();
+				};
+			case BOOL_TYPE:
+				return f -> {
+					int value;
+					do {
+						System.out.printf("read (bool - 0 = false, 1 = true): ");
+						value = in.nextInt();
+					} while (value != 0 && value != 1);
+					f.ints[var] = value;
+				};
+			case STR_TYPE:
+				return f -> {
+					System.out.printf("read (str): ");
+					f.ints[var] = strings.add(in.next());
+				};
+			case NO_TYPE:
+			default:
+				System.err.printf("Invalid type: %s!\n", type.toString());
+				throw new CompileError();
+		}
+	}
+
+	private Stmt write(AST expr) {
+		switch (expr.type) {
+			case INT_TYPE: {
+				final IntExpr e = intExpr(expr);
+				return f -> System.out.println(e.eval(f));
+			}
+			case REAL_TYPE: {
+				final RealExpr e = realExpr(expr);
+				return f -> System.out.println(e.eval(f));
+			}
+			case BOOL_TYPE: {
+				final IntExpr e = intExpr(expr);
+				return f -> System.out.println(e.eval(f) == 0 ? "false" : "true");
+			}
+			case STR_TYPE: {
+				final IntExpr e = intExpr(expr);
+				return f -> System.out.print(strings.unescaped(e.eval(f)));
+			}
+			case NO_TYPE:
+			default:
+				System.err.printf("Invalid type: %s!\n", expr.type.toString());
+				throw new CompileError();
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------ Expressões ----------------------------------
+
+	// Expressões de tipo int, bool e string.
+	private IntExpr intExpr(AST node) {
+		if (node.type == Type.REAL_TYPE) {
+			// Real onde se espera um int, sem conversão: pelos bits, como a VM.
+			final RealExpr e = realExpr(node);
+			return f -> Float.floatToRawIntBits(e.eval(f));
+		}
+		switch (node.kind.generic()) {
+			case INT_VAL_NODE:
+			case BOOL_VAL_NODE:
+			case STR_VAL_NODE: {
+				final int value = node.intData;
+				return f -> value;
+			}
+			case VAR_USE_NODE: {
+				final int var = node.intData;
+				return f -> f.ints[var];
+			}
+			case PLUS_NODE:
+				if (node.type == Type.BOOL_TYPE) {
+					final IntExpr l = intExpr(node.getChild(0));
+					final IntExpr r = intExpr(node.getChild(1));
+					return f -> (l.eval(f) == 1 | r.eval(f) == 1) ? 1 : 0;
+				} else if (node.type == Type.STR_TYPE) {
+					final IntExpr l = intExpr(node.getChild(0));
+					final IntExpr r = intExpr(node.getChild(1));
+					return f -> concat(l.eval(f), r.eval(f));
+				}
+				return intArith(node);
+			case MINUS_NODE:
+			case TIMES_NODE:
+			case OVER_NODE:
+				return intArith(node);
+			case EQ_NODE:
+			case LT_NODE:
+			case GT_NODE:
+				return compare(node);
+			case B2I_NODE:
+				return intExpr(node.getChild(0)); // Bools já são 0 ou 1.
+			case I2S_NODE: {
+				final IntExpr e = intExpr(node.getChild(0));
+				return f -> newStr(Integer.toString(e.eval(f)));
+			}
+			case B2S_NODE: {
+				final IntExpr e = intExpr(node.getChild(0));
+				return f -> newStr(e.eval(f) == 0 ? "false" : "true");
+			}
+			case R2S_NODE: {
+				final RealExpr e = realExpr(node.getChild(0));
+				return f -> newStr(Float.toString(e.eval(f)));
+			}
+			default:
+				System.err.printf("Invalid kind: %s!\n", node.kind.toString());
+				throw new CompileError();
+		}
+	}
+
+	// Aritmética inteira. Com uma constante à direita (o caso comum em
+	// 'i := i + 1') a closure já leva o valor em vez de chamar outro eval.
+	private IntExpr intArith(AST node) {
+		final IntExpr l = intExpr(node.getChild(0));
+		AST right = node.getChild(1);
+		if (right.kind == NodeKind.INT_VAL_NODE) {
+			final int k = right.intData;
+			switch (node.kind.generic()) {
+				case PLUS_NODE:  return f -> l.eval(f) + k;
+				case MINUS_NODE: return f -> l.eval(f) - k;
+				case TIMES_NODE: return f -> l.eval(f) * k;
+				default:         return f -> l.eval(f) / k; // OVER_NODE
+			}
+		}
+		final IntExpr r = intExpr(right);
+		switch (node.kind.generic()) {
+			case PLUS_NODE:  return f -> l.eval(f) + r.eval(f);
+			case MINUS_NODE: return f -> l.eval(f) - r.eval(f);
+			case TIMES_NODE: return f -> l.eval(f) * r.eval(f);
+			default:         return f -> l.eval(f) / r.eval(f); // OVER_NODE
+		}
+	}
+
+	// Comparações, com o tipo dos operandos escolhido aqui (veja o
+	// Interpreter). O resultado é um bool: 1 ou 0.
+	private IntExpr compare(AST node) {
+		NodeKind op = node.kind.generic();
+		AST right = node.getChild(1);
+		if (right.type == Type.REAL_TYPE) {
+			final RealExpr l = realExpr(node.getChild(0));
+			final RealExpr r = realExpr(right);
+			switch (op) {
+				case EQ_NODE: return f -> l.eval(f) == r.eval(f) ? 1 : 0;
+				case LT_NODE: return f -> l.eval(f) < r.eval(f) ? 1 : 0;
+				default:      return f -> l.eval(f) > r.eval(f) ? 1 : 0;
+			}
+		}
+		final IntExpr l = intExpr(node.getChild(0));
+		if (right.type == Type.STR_TYPE) {
+			final IntExpr r = intExpr(right);
+			switch (op) {
+				case EQ_NODE: return f -> strings.equal(l.eval(f), r.eval(f)) ? 1 : 0;
+				case LT_NODE: return f -> strings.compare(l.eval(f), r.eval(f)) < 0 ? 1 : 0;
+				default:      return f -> strings.compare(l.eval(f), r.eval(f)) > 0 ? 1 : 0;
+			}
+		}
+		if (right.kind == NodeKind.INT_VAL_NODE) {
+			final int k = right.intData;
+			switch (op) {
+				case EQ_NODE: return f -> l.eval(f) == k ? 1 : 0;
+				case LT_NODE: return f -> l.eval(f) < k ? 1 : 0;
+				default:      return f -> l.eval(f) > k ? 1 : 0;
+			}
+		}
+		final IntExpr r = intExpr(right);
+		switch (op) {
+			case EQ_NODE: return f -> l.eval(f) == r.eval(f) ? 1 : 0;
+			case LT_NODE: return f -> l.eval(f) < r.eval(f) ? 1 : 0;
+			default:      return f -> l.eval(f) > r.eval(f) ? 1 : 0;
+		}
+	}
+
+	// Expressões de tipo real. O checker deixa passar alguns inteiros
+	// misturados com reais sem a conversão (por exemplo 'x + i', com o
+	// inteiro à direita). A VM guarda tudo em words de 32 bits e lê os
+	// bits do inteiro como um float, e aqui é feito o mesmo.
+	private RealExpr realExpr(AST node) {
+		if (node.type != Type.REAL_TYPE) {
+			final IntExpr e = intExpr(node);
+			return f -> Float.intBitsToFloat(e.eval(f));
+		}
+		switch (node.kind.generic()) {
+			case REAL_VAL_NODE: {
+				final float value = node.floatData;
+				return f -> value;
+			}
+			case VAR_USE_NODE: {
+				final int var = node.intData;
+				return f -> f.reals[var];
+			}
+			case PLUS_NODE:
+			case MINUS_NODE:
+			case TIMES_NODE:
+			case OVER_NODE: {
+				final RealExpr l = realExpr(node.getChild(0));
+				final RealExpr r = realExpr(node.getChild(1));
+				switch (node.kind.generic()) {
+					case PLUS_NODE:  return f -> l.eval(f) + r.eval(f);
+					case MINUS_NODE: return f -> l.eval(f) - r.eval(f);
+					case TIMES_NODE: return f -> l.eval(f) * r.eval(f);
+					default:         return f -> l.eval(f) / r.eval(f); // OVER_NODE
+				}
+			}
+			case I2R_NODE:
+			case B2R_NODE: {
+				final IntExpr e = intExpr(node.getChild(0));
+				return f -> (float) e.eval(f);
+			}
+			default:
+				System.err.printf("Invalid kind: %s!\n", node.kind.toString());
+				throw new CompileError();
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------ Auxiliares ----------------------------------
+
+	// Todas as strings da tabela ficam envoltas por aspas, então na
+	// concatenação tira a última da esquerda e a primeira da direita.
+	private int concat(int l, int r) {
+		String ls = strings.get(l);
+		String rs = strings.get(r);
+		return strings.add(ls.substring(0, ls.length() - 1) + rs.substring(1));
+	}
+
+	private int newStr(String s) {
+		return strings.add("'" + s + "'");
+	}
+
+}
@@ -0,0 +1,19 @@
+package code.closure;
+
+/*
+ * Memória de uma execução do programa compilado em closures. Cada
+ * variável tem uma posição fixa, resolvida na compilação: o índice dela
+ * na VarTable. Inteiros, bools e strings (handles do StringHeap) ficam em
+ * 'ints' e os reais em 'reals', sem conversão de bits a cada acesso.
+ */
+public final class Frame {
+
+	public final int[] ints;
+	public final float[] reals;
+
+	public Frame(int numVars) {
+		this.ints = new int[numVars];
+		this.reals = new float[numVars];
+	}
+
+}
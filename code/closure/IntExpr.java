@@ -0,0 +1,7 @@
+package code.closure;
+
+// Expressão compilada de tipo int, bool (0 ou 1) ou string (handle do StringHeap).
+@FunctionalInterface
+public interface IntExpr {
+	int eval(Frame f);
+}
@@ -0,0 +1,7 @@
+package code.closure;
+
+// Expressão compilada de tipo real.
+@FunctionalInterface
+public interface RealExpr {
+	float eval(Frame f);
+}
@@ -0,0 +1,7 @@
+package code.closure;
+
+// Comando compilado.
+@FunctionalInterface
+public interface Stmt {
+	void exec(Frame f);
+}
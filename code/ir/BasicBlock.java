@@ -0,0 +1,54 @@
+package code.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Bloco básico: uma sequência de instruções que termina num desvio ou
+ * num 'ret'. Só o bloco de entrada de uma função pode não ter nome.
+ */
+public final class BasicBlock {
+
+	public final String name;
+	public final List<Instruction> instructions = new ArrayList<Instruction>();
+	public final List<BasicBlock> preds = new ArrayList<BasicBlock>();
+
+	// O bloco só entra numa função com Function.append, então pode ser
+	// criado antes, para ser alvo de desvios, e posto no lugar depois.
+	public BasicBlock(String name) {
+		this.name = name;
+	}
+
+	// Acrescenta 'inst' no fim do bloco e retorna a própria instrução,
+	// para ela poder ser usada como operando logo em seguida.
+	// Os desvios também registram este bloco como predecessor dos alvos.
+	public Instruction add(Instruction inst) {
+		instructions.add(inst);
+		if (inst.op == Instruction.Op.BR || inst.op == Instruction.Op.CONDBR) {
+			for (BasicBlock t : inst.targets) {
+				t.preds.add(this);
+			}
+		}
+		return inst;
+	}
+
+	// Phis ficam todos no começo do bloco, antes das outras instruções.
+	public Instruction addPhi(Instruction phi) {
+		int i = 0;
+		while (i < instructions.size() && instructions.get(i).op == Instruction.Op.PHI) {
+			i++;
+		}
+		instructions.add(i, phi);
+		return phi;
+	}
+
+	// Como o bloco aparece como operando. O bloco de entrada sem nome é o '%0'.
+	public String ref() {
+		return name != null ? "%" + name : "%0";
+	}
+
+	public boolean isTerminated() {
+		return !instructions.isEmpty() && instructions.get(instructions.size() - 1).isTerminator();
+	}
+
+}
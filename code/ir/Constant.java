@@ -0,0 +1,39 @@
+package code.ir;
+
+// Constante escrita direto no operando, como '42', 'true' ou '1.5'.
+public final class Constant extends Value {
+
+	private final String text;
+
+	public Constant(String type, String text) {
+		super(type);
+		this.text = text;
+	}
+
+	public static Constant i32(int value) {
+		return new Constant("i32", Integer.toString(value));
+	}
+
+	public static Constant i8(int value) {
+		return new Constant("i8", Integer.toString(value));
+	}
+
+	public static Constant i1(boolean value) {
+		return new Constant("i1", Boolean.toString(value));
+	}
+
+	public static Constant real(float value) {
+		return new Constant("double", Float.toString(value));
+	}
+
+	// Valor indefinido, para as construções que o gerador ainda não trata.
+	public static Constant undef(String type) {
+		return new Constant(type, "undef");
+	}
+
+	@Override
+	public String ref() {
+		return text;
+	}
+
+}
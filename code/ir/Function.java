@@ -0,0 +1,45 @@
+package code.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Função do módulo. Sem blocos é só uma declaração de uma função
+ * externa, como o 'printf' da libc.
+ */
+public final class Function {
+
+	public final String name;
+	public final String returnType;
+	public final List<String> paramTypes;
+	public final boolean varArgs;
+	public final List<BasicBlock> blocks = new ArrayList<BasicBlock>();
+
+	public Function(String name, String returnType, List<String> paramTypes, boolean varArgs) {
+		this.name = name;
+		this.returnType = returnType;
+		this.paramTypes = paramTypes;
+		this.varArgs = varArgs;
+	}
+
+	// Coloca o bloco no fim da função. O primeiro é o de entrada.
+	public BasicBlock append(BasicBlock b) {
+		blocks.add(b);
+		return b;
+	}
+
+	public boolean isDeclaration() {
+		return blocks.isEmpty();
+	}
+
+	// Lista de tipos dos parâmetros, como '(i8*, ...)'.
+	public String signature() {
+		StringBuilder sb = new StringBuilder("(");
+		sb.append(String.join(", ", paramTypes));
+		if (varArgs) {
+			sb.append(paramTypes.isEmpty() ? "..." : ", ...");
+		}
+		return sb.append(')').toString();
+	}
+
+}
@@ -0,0 +1,26 @@
+package code.ir;
+
+/*
+ * Constante global do módulo, como '@0 = private constant [3 x i8] c"%d\00"'.
+ * O valor da global é um ponteiro para o seu conteúdo, então o tipo dela
+ * é 'contentType*'.
+ */
+public final class Global extends Value {
+
+	public final int index;
+	public final String contentType;
+	public final String init;
+
+	Global(int index, String contentType, String init) {
+		super(contentType + "*");
+		this.index = index;
+		this.contentType = contentType;
+		this.init = init;
+	}
+
+	@Override
+	public String ref() {
+		return "@" + index;
+	}
+
+}
@@ -0,0 +1,140 @@
+package code.ir;
+
+import java.util.Locale;
+
+import code.IRWriter;
+
+/*
+ * Serializa um Module no formato textual do LLVM (.ll). É o único lugar
+ * que sabe como cada instrução é escrita.
+ *
+ * Os registradores são numerados aqui, em ordem, a cada impressão. O
+ * bloco de entrada sem nome fica com o '%0', como o LLVM espera.
+ */
+public final class IRPrinter {
+
+	private final IRWriter out;
+
+	public IRPrinter(IRWriter out) {
+		this.out = out;
+	}
+
+	public void print(Module m) {
+		for (Function f : m.functions) {
+			printFunction(f);
+		}
+
+		for (Global g : m.globals) {
+			out.printf("@%d = private constant %s %s\n", g.index, g.contentType, g.init);
+		}
+		out.print("\n");
+
+		for (Function f : m.declarations) {
+			out.printf("declare %s @%s%s\n", f.returnType, f.name, f.signature());
+		}
+	}
+
+	private void printFunction(Function f) {
+		number(f);
+
+		out.printf("\ndefine %s @%s() {\n", f.returnType, f.name);
+		for (BasicBlock b : f.blocks) {
+			if (b.name != null) {
+				out.printf("\n%s:\n", b.name);
+			}
+			for (Instruction inst : b.instructions) {
+				out.print("  ");
+				printInstruction(inst);
+				out.print("\n");
+			}
+		}
+		out.print("}\n\n");
+	}
+
+	// Numera os resultados das instruções na ordem em que aparecem.
+	private static void number(Function f) {
+		int next = 1; // O %0 é o bloco de entrada.
+		for (BasicBlock b : f.blocks) {
+			for (Instruction inst : b.instructions) {
+				inst.number = inst.hasResult() ? next++ : -1;
+			}
+		}
+	}
+
+	private void printInstruction(Instruction inst) {
+		Value[] ops = inst.operands;
+		if (inst.hasResult()) {
+			out.printf("%s = ", inst.ref());
+		}
+
+		switch (inst.op) {
+			case ALLOCA:
+				out.printf("alloca %s", inst.opType);
+				break;
+			case LOAD:
+				out.printf("load %s, %s %s", inst.opType, ops[0].type, ops[0]);
+				break;
+			case STORE:
+				out.printf("store %s %s, %s %s", inst.opType, ops[0], ops[1].type, ops[1]);
+				break;
+			case GEP:
+				out.printf("getelementptr inbounds %s, %s %s, i64 0, i64 0",
+				           inst.opType, ops[0].type, ops[0]);
+				break;
+			case CALL:
+				printCall(inst);
+				break;
+
+			case ADD:  case SUB:  case MUL:  case SDIV:
+			case FADD: case FSUB: case FMUL: case FDIV:
+				out.printf("%s %s %s, %s", opName(inst.op), inst.opType, ops[0], ops[1]);
+				break;
+			case ICMP:
+			case FCMP:
+				out.printf("%s %s %s %s, %s", opName(inst.op), inst.pred, inst.opType, ops[0], ops[1]);
+				break;
+			case ZEXT:
+			case SITOFP:
+				out.printf("%s %s %s to %s", opName(inst.op), inst.opType, ops[0], inst.type);
+				break;
+
+			case PHI:
+				out.printf("phi %s ", inst.opType);
+				for (int i = 0; i < ops.length; i++) {
+					out.printf(i == 0 ? "[ %s, %s ]" : ", [ %s, %s ]", ops[i], inst.targets[i].ref());
+				}
+				break;
+
+			case BR:
+				out.printf("br label %s", inst.targets[0].ref());
+				break;
+			case CONDBR:
+				out.printf("br i1 %s, label %s, label %s",
+				           ops[0], inst.targets[0].ref(), inst.targets[1].ref());
+				break;
+			case RET:
+				out.print("ret void");
+				break;
+		}
+	}
+
+	// Funções com número variável de argumentos levam a assinatura na chamada.
+	private void printCall(Instruction inst) {
+		Function f = inst.callee;
+		if (f.varArgs) {
+			out.printf("call %s %s @%s(", f.returnType, f.signature(), f.name);
+		} else {
+			out.printf("call %s @%s(", f.returnType, f.name);
+		}
+		for (int i = 0; i < inst.operands.length; i++) {
+			Value arg = inst.operands[i];
+			out.printf(i == 0 ? "%s %s" : ", %s %s", arg.type, arg);
+		}
+		out.print(")");
+	}
+
+	private static String opName(Instruction.Op op) {
+		return op.name().toLowerCase(Locale.ROOT);
+	}
+
+}
@@ -0,0 +1,150 @@
+package code.ir;
+
+/*
+ * Uma instrução do código LLVM. Instruções que produzem valor também são
+ * Values e podem ser usadas como operandos de outras. O número do
+ * registrador ('%n') só é decidido pelo IRPrinter, na hora de imprimir,
+ * então instruções podem ser removidas ou movidas livremente antes disso.
+ *
+ * Em vez de uma subclasse por tipo de instrução há um único formato:
+ * o 'op', o tipo em que a instrução opera e a lista de operandos. Os
+ * campos que só fazem sentido para algumas instruções (predicado da
+ * comparação, função chamada, blocos de destino) ficam null nas outras.
+ */
+public final class Instruction extends Value {
+
+	public enum Op {
+		ALLOCA, LOAD, STORE, GEP, CALL,
+		ADD, SUB, MUL, SDIV, FADD, FSUB, FMUL, FDIV,
+		ICMP, FCMP, ZEXT, SITOFP, PHI,
+		BR, CONDBR, RET
+	}
+
+	public final Op op;
+	public final String opType;      // Tipo em que a instrução opera.
+	public Value[] operands;
+
+	public final String pred;        // ICMP e FCMP.
+	public final Function callee;    // CALL.
+	public BasicBlock[] targets;     // BR e CONDBR, e os blocos de origem no PHI.
+
+	int number = -1; // Registrador do resultado, dado pelo IRPrinter.
+
+	private Instruction(Op op, String resultType, String opType, Value[] operands,
+	                    String pred, Function callee, BasicBlock[] targets) {
+		super(resultType);
+		this.op = op;
+		this.opType = opType;
+		this.operands = operands;
+		this.pred = pred;
+		this.callee = callee;
+		this.targets = targets;
+	}
+
+	private static Instruction of(Op op, String resultType, String opType, Value... operands) {
+		return new Instruction(op, resultType, opType, operands, null, null, null);
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Criação ------------------------------------
+
+	public static Instruction alloca(String type) {
+		return of(Op.ALLOCA, type + "*", type);
+	}
+
+	public static Instruction load(Value ptr) {
+		String type = pointee(ptr.type);
+		return of(Op.LOAD, type, type, ptr);
+	}
+
+	public static Instruction store(Value value, Value ptr) {
+		return of(Op.STORE, "void", pointee(ptr.type), value, ptr);
+	}
+
+	// Ponteiro para o primeiro caractere de uma global com uma string.
+	public static Instruction gep(Global g) {
+		return of(Op.GEP, "i8*", g.contentType, g);
+	}
+
+	public static Instruction call(Function f, Value... args) {
+		return new Instruction(Op.CALL, f.returnType, f.returnType, args, null, f, null);
+	}
+
+	// ADD, SUB, MUL, SDIV, FADD, FSUB, FMUL ou FDIV.
+	public static Instruction binary(Op op, String type, Value l, Value r) {
+		return of(op, type, type, l, r);
+	}
+
+	public static Instruction icmp(String pred, String type, Value l, Value r) {
+		return new Instruction(Op.ICMP, "i1", type, new Value[] { l, r }, pred, null, null);
+	}
+
+	public static Instruction fcmp(String pred, Value l, Value r) {
+		return new Instruction(Op.FCMP, "i1", "double", new Value[] { l, r }, pred, null, null);
+	}
+
+	public static Instruction zext(Value v, String toType) {
+		return of(Op.ZEXT, toType, v.type, v);
+	}
+
+	public static Instruction sitofp(Value v) {
+		return of(Op.SITOFP, "double", v.type, v);
+	}
+
+	// Phi ainda sem entradas, que são reservadas com reserveIncoming e
+	// colocadas com setIncoming.
+	public static Instruction phi(String type) {
+		return new Instruction(Op.PHI, type, type, new Value[0], null, null, new BasicBlock[0]);
+	}
+
+	public static Instruction br(BasicBlock target) {
+		return new Instruction(Op.BR, "void", "void", new Value[0], null, null,
+		                       new BasicBlock[] { target });
+	}
+
+	public static Instruction condBr(Value cond, BasicBlock ifTrue, BasicBlock ifFalse) {
+		return new Instruction(Op.CONDBR, "void", "i1", new Value[] { cond }, null, null,
+		                       new BasicBlock[] { ifTrue, ifFalse });
+	}
+
+	public static Instruction retVoid() {
+		return of(Op.RET, "void", "void");
+	}
+
+	// Espaço para as 'n' entradas do phi de uma vez: o phi da junção de uma
+	// cadeia longa de 'else if' tem um predecessor por ramo, e crescer os
+	// vetores a cada entrada seria quadrático. Até serem colocadas, as
+	// entradas ficam null.
+	public void reserveIncoming(int n) {
+		operands = new Value[n];
+		targets = new BasicBlock[n];
+	}
+
+	// Entrada 'i' do phi: 'value' quando se chega de 'from'.
+	public void setIncoming(int i, Value value, BasicBlock from) {
+		operands[i] = value;
+		targets[i] = from;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------ Consultas -----------------------------------
+
+	public boolean hasResult() {
+		return !type.equals("void");
+	}
+
+	public boolean isTerminator() {
+		return op == Op.BR || op == Op.CONDBR || op == Op.RET;
+	}
+
+	@Override
+	public String ref() {
+		return "%" + number;
+	}
+
+	// Tipo apontado por um tipo ponteiro: 'i32*' -> 'i32'.
+	private static String pointee(String ptrType) {
+		return ptrType.substring(0, ptrType.length() - 1);
+	}
+
+}
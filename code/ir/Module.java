@@ -0,0 +1,41 @@
+package code.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Módulo LLVM de uma compilação: as constantes globais, as funções
+ * definidas e as declarações das funções externas usadas.
+ */
+public final class Module {
+
+	public final List<Global> globals = new ArrayList<Global>();
+	public final List<Function> functions = new ArrayList<Function>();
+	public final List<Function> declarations = new ArrayList<Function>();
+
+	// Cria uma constante global nova. Os índices seguem a ordem de criação.
+	public Global addGlobal(String contentType, String init) {
+		Global g = new Global(globals.size(), contentType, init);
+		globals.add(g);
+		return g;
+	}
+
+	// Global com uma string, já com o '\00' do fim.
+	public Global addString(String s) {
+		return addGlobal(String.format("[%d x i8]", s.length() + 1), "c\"" + s + "\\00\"");
+	}
+
+	public Function define(Function f) {
+		functions.add(f);
+		return f;
+	}
+
+	// Declara uma função externa, se ainda não foi declarada.
+	public Function declare(Function f) {
+		if (!declarations.contains(f)) {
+			declarations.add(f);
+		}
+		return f;
+	}
+
+}
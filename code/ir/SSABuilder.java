@@ -0,0 +1,183 @@
+package code.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Construção de SSA durante a geração de código, pelo algoritmo de
+ * Braun et al., "Simple and Efficient Construction of Static Single
+ * Assignment Form" (CC 2013).
+ *
+ * O gerador avisa cada atribuição (writeVariable) e cada leitura
+ * (readVariable) de uma variável num bloco, e avisa quando um bloco não
+ * vai ganhar mais predecessores (sealBlock). Leituras num bloco que não
+ * definiu a variável procuram o valor nos predecessores, criando phis
+ * nas junções. Phis triviais (todas as entradas iguais) são trocados
+ * pelo valor único e removidos.
+ *
+ * Os usos de um phi removido não são corrigidos na hora: ficam anotados
+ * em 'replaced' e o finish() reescreve os operandos no fim.
+ */
+public final class SSABuilder {
+
+	private final Map<BasicBlock, Map<Integer, Value>> currentDef = new HashMap<>();
+	private final Map<BasicBlock, Map<Integer, Instruction>> incompletePhis = new HashMap<>();
+	private final Set<BasicBlock> sealed = new HashSet<>();
+
+	private final Map<Instruction, BasicBlock> phiBlock = new HashMap<>();
+	private final Map<Instruction, List<Instruction>> phiUsers = new HashMap<>();
+	private final Map<Instruction, Value> replaced = new HashMap<>();
+
+	// Tipo LLVM de cada variável, para os phis e os 'undef'.
+	private final Map<Integer, String> types = new HashMap<>();
+
+	public void declare(int var, String type) {
+		types.put(var, type);
+	}
+
+	public void writeVariable(int var, BasicBlock block, Value value) {
+		currentDef.computeIfAbsent(block, b -> new HashMap<>()).put(var, value);
+	}
+
+	// Blocos com um só predecessor (os de uma cadeia de 'else if', por
+	// exemplo) são subidos num laço, não por recursão: a cadeia pode ter
+	// milhares de blocos. O valor achado fica anotado em todos eles.
+	public Value readVariable(int var, BasicBlock block) {
+		ArrayList<BasicBlock> chain = null;
+		Value val;
+		for (;;) {
+			Map<Integer, Value> defs = currentDef.get(block);
+			if (defs != null && defs.containsKey(var)) {
+				val = resolve(defs.get(var));
+				break;
+			}
+			if (!sealed.contains(block) || block.preds.size() != 1) {
+				val = readVariableRecursive(var, block);
+				break;
+			}
+			if (chain == null) {
+				chain = new ArrayList<BasicBlock>();
+			}
+			chain.add(block);
+			block = block.preds.get(0);
+		}
+		if (chain != null) {
+			for (BasicBlock b : chain) {
+				writeVariable(var, b, val);
+			}
+		}
+		return val;
+	}
+
+	private Value readVariableRecursive(int var, BasicBlock block) {
+		Value val;
+		if (!sealed.contains(block)) {
+			// Ainda podem aparecer predecessores: deixa um phi incompleto.
+			Instruction phi = newPhi(var, block);
+			incompletePhis.computeIfAbsent(block, b -> new HashMap<>()).put(var, phi);
+			val = phi;
+		} else if (block.preds.isEmpty()) {
+			// Bloco de entrada: a variável nunca recebeu valor.
+			val = Constant.undef(types.get(var));
+		} else {
+			// Dois ou mais predecessores (um só já foi tratado em readVariable).
+			// Escreve o phi antes de ler os predecessores para cortar ciclos.
+			Instruction phi = newPhi(var, block);
+			writeVariable(var, block, phi);
+			val = addPhiOperands(var, phi);
+		}
+		writeVariable(var, block, val);
+		return val;
+	}
+
+	private Instruction newPhi(int var, BasicBlock block) {
+		Instruction phi = Instruction.phi(types.get(var));
+		block.addPhi(phi);
+		phiBlock.put(phi, block);
+		return phi;
+	}
+
+	private Value addPhiOperands(int var, Instruction phi) {
+		List<BasicBlock> preds = phiBlock.get(phi).preds;
+		phi.reserveIncoming(preds.size());
+		for (int i = 0; i < preds.size(); i++) {
+			BasicBlock pred = preds.get(i);
+			Value v = readVariable(var, pred);
+			phi.setIncoming(i, v, pred);
+			if (v instanceof Instruction && ((Instruction) v).op == Instruction.Op.PHI) {
+				phiUsers.computeIfAbsent((Instruction) v, p -> new ArrayList<>()).add(phi);
+			}
+		}
+		return tryRemoveTrivialPhi(phi);
+	}
+
+	private Value tryRemoveTrivialPhi(Instruction phi) {
+		Value same = null;
+		for (Value op : phi.operands) {
+			op = resolve(op);
+			if (op == null || op == same || op == phi) {
+				continue; // Entrada ainda não colocada, repetida ou o próprio phi.
+			}
+			if (same != null) {
+				return phi; // Pelo menos dois valores diferentes: não é trivial.
+			}
+			same = op;
+		}
+		if (same == null) {
+			same = Constant.undef(phi.type); // Bloco inalcançável ou sem entradas.
+		}
+
+		replaced.put(phi, same);
+		phiBlock.get(phi).instructions.remove(phi);
+
+		// Phis que usavam este podem ter ficado triviais também. Eles
+		// passam a usar 'same', então viram usuários dele.
+		List<Instruction> users = phiUsers.remove(phi);
+		if (users != null) {
+			if (same instanceof Instruction && ((Instruction) same).op == Instruction.Op.PHI) {
+				phiUsers.computeIfAbsent((Instruction) same, p -> new ArrayList<>()).addAll(users);
+			}
+			for (Instruction user : users) {
+				if (user != phi && !replaced.containsKey(user)) {
+					tryRemoveTrivialPhi(user);
+				}
+			}
+		}
+		return same;
+	}
+
+	// O bloco não vai ganhar mais predecessores: completa os phis pendentes.
+	public void sealBlock(BasicBlock block) {
+		Map<Integer, Instruction> pending = incompletePhis.remove(block);
+		if (pending != null) {
+			for (Map.Entry<Integer, Instruction> e : pending.entrySet()) {
+				addPhiOperands(e.getKey(), e.getValue());
+			}
+		}
+		sealed.add(block);
+	}
+
+	// Valor atual de 'v', seguindo as trocas de phis removidos.
+	private Value resolve(Value v) {
+		while (v instanceof Instruction && replaced.containsKey(v)) {
+			v = replaced.get(v);
+		}
+		return v;
+	}
+
+	// Troca, em toda a função, os usos dos phis removidos pelos valores finais.
+	public void finish(Function f) {
+		for (BasicBlock b : f.blocks) {
+			for (Instruction inst : b.instructions) {
+				for (int i = 0; i < inst.operands.length; i++) {
+					inst.operands[i] = resolve(inst.operands[i]);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package code.ir;
+
+/*
+ * Um valor do código LLVM: uma constante, uma global ou o resultado de
+ * uma instrução. Os tipos são guardados como o texto do tipo no LLVM
+ * ('i32', 'double', 'i8*', '[3 x i8]*', ...), que é tudo o que o
+ * gerador precisa por enquanto.
+ */
+public abstract class Value {
+
+	public final String type;
+
+	protected Value(String type) {
+		this.type = type;
+	}
+
+	// Como o valor aparece quando é operando: '%3', '@0', '42', ...
+	public abstract String ref();
+
+	@Override
+	public String toString() {
+		return ref();
+	}
+
+}
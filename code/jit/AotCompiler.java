@@ -0,0 +1,86 @@
+package code.jit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import ast.AST;
+import code.Input;
+import code.StringHeap;
+import tables.StrTable;
+import tables.VarTable;
+
+/*
+ * Back-end que gera um .jar executável com 'java -jar', para rodar o
+ * programa onde há uma JVM mas não o LLVM. O bytecode é o mesmo do
+ * JitCompiler (operações de int e real viram instruções da JVM, if e
+ * repeat viram saltos), só que numa classe pública com 'main', gravada
+ * em vez de carregada.
+ *
+ * O .jar não depende do compilador: além da classe do programa leva o
+ * JitRuntime, o Input, o StringHeap e a StrTable, que são as únicas
+ * classes que o código gerado usa.
+ */
+public final class AotCompiler {
+
+	// Classe principal do .jar, no pacote padrão.
+	public static final String MAIN_CLASS = "PascalProgram";
+
+	// Classes do compilador copiadas para o .jar.
+	private static final Class<?>[] RUNTIME = { JitRuntime.class, Input.class, StringHeap.class, StrTable.class };
+
+	private final JitCompiler jit;
+
+	public AotCompiler(StrTable st, VarTable vt) {
+		this.jit = new JitCompiler(st, vt);
+	}
+
+	public void write(AST root, Path jar) throws IOException {
+		byte[] main = jit.generateMain(root, MAIN_CLASS);
+
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, MAIN_CLASS);
+
+		// Como no ASTCache, grava ao lado e renomeia no fim.
+		Path dir = jar.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, "aot", ".jar");
+		try {
+			try (OutputStream file = Files.newOutputStream(tmp);
+			     JarOutputStream out = new JarOutputStream(file, manifest)) {
+				entry(out, MAIN_CLASS + ".class", main);
+				for (Class<?> c : RUNTIME) {
+					entry(out, c.getName().replace('.', '/') + ".class", classBytes(c));
+				}
+			}
+			Files.move(tmp, jar, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static void entry(JarOutputStream out, String name, byte[] bytes) throws IOException {
+		out.putNextEntry(new JarEntry(name));
+		out.write(bytes);
+		out.closeEntry();
+	}
+
+	private static byte[] classBytes(Class<?> c) throws IOException {
+		String resource = c.getName().substring(c.getName().lastIndexOf('.') + 1) + ".class";
+		try (InputStream in = c.getResourceAsStream(resource)) {
+			if (in == null) {
+				throw new IOException("Class not found: " + c.getName());
+			}
+			return in.readAllBytes();
+		}
+	}
+
+}
@@ -0,0 +1,358 @@
+package code.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * Montador mínimo de arquivos .class, só com o que o JitCompiler usa:
+ * constant pool, campos estáticos e métodos estáticos com o atributo
+ * Code.
+ *
+ * A versão do formato é a 49 (Java 5), a última em que o verificador
+ * ainda infere os tipos sozinho. Assim não é preciso gerar a tabela
+ * StackMapTable para os saltos, que daria mais trabalho que todo o
+ * resto deste arquivo.
+ */
+final class ClassFile {
+
+	// O JVMS aceita até 65535 bytes de código, mas os saltos (goto, if*)
+	// têm deslocamento de 16 bits com sinal. Com o método limitado a
+	// 32767 bytes qualquer salto cabe e não é preciso usar goto_w.
+	static final int MAX_CODE = 32767;
+
+	private static final int VERSION = 49;
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int WIDE = 0xc4;
+
+	// Tags da constant pool.
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(poolBytes);
+	private final HashMap<String, Integer> poolIndex = new HashMap<String, Integer>();
+	private int poolCount = 1; // O índice 0 não é usado.
+
+	private final String name;
+	private final boolean isPublic;
+	private final ArrayList<byte[]> fields = new ArrayList<byte[]>();
+	private final ArrayList<byte[]> methods = new ArrayList<byte[]>();
+
+	// 'name' no formato interno, com '/' separando os pacotes.
+	ClassFile(String name, boolean isPublic) {
+		this.name = name;
+		this.isPublic = isPublic;
+	}
+
+	String name() {
+		return name;
+	}
+
+	void addStaticField(String fieldName, String descriptor) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(ACC_PRIVATE | ACC_STATIC);
+			out.writeShort(utf8(fieldName));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(0); // Sem atributos.
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	// Acrescenta um método estático com o código já montado.
+	void addStaticMethod(String methodName, String descriptor, boolean isPublic, Code code) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort((isPublic ? ACC_PUBLIC : ACC_PRIVATE) | ACC_STATIC);
+			out.writeShort(utf8(methodName));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1); // Só o atributo Code.
+			out.writeShort(utf8("Code"));
+			out.writeInt(2 + 2 + 4 + code.size() + 2 + 8 * code.handlers.size() + 2);
+			out.writeShort(code.maxStack());
+			out.writeShort(code.maxLocals());
+			out.writeInt(code.size());
+			out.write(code.bytes(), 0, code.size());
+			out.writeShort(code.handlers.size());
+			for (int[] h : code.handlers) {
+				out.writeShort(h[0]);
+				out.writeShort(h[1]);
+				out.writeShort(h[2]);
+				out.writeShort(0); // Qualquer exceção, como um finally.
+			}
+			out.writeShort(0); // Sem atributos do Code.
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		methods.add(bytes.toByteArray());
+	}
+
+	byte[] toBytes() {
+		int thisClass = classRef(name);
+		int superClass = classRef("java/lang/Object");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount);
+			poolBytes.writeTo(out);
+			out.writeShort((isPublic ? ACC_PUBLIC : 0) | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // Sem interfaces.
+			out.writeShort(fields.size());
+			for (byte[] f : fields) {
+				out.write(f);
+			}
+			out.writeShort(methods.size());
+			for (byte[] m : methods) {
+				out.write(m);
+			}
+			out.writeShort(0); // Sem atributos da classe.
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// ----------------------------------------------------------------------------
+	// ----------------------------- Constant pool --------------------------------
+
+	// Cada entrada é guardada uma vez só, com a chave 'tag:conteúdo'.
+	private int constant(String key, int tag, Object a, Object b) {
+		Integer index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+		try {
+			pool.writeByte(tag);
+			switch (tag) {
+				case CONSTANT_UTF8:    pool.writeUTF((String) a);                  break;
+				case CONSTANT_INTEGER: pool.writeInt((Integer) a);                 break;
+				case CONSTANT_FLOAT:   pool.writeFloat((Float) a);                 break;
+				case CONSTANT_CLASS:
+				case CONSTANT_STRING:  pool.writeShort((Integer) a);               break;
+				default:               pool.writeShort((Integer) a);
+				                       pool.writeShort((Integer) b);               break;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (poolCount == 0xFFFF) {
+			throw new IllegalStateException("Constant pool overflow");
+		}
+		poolIndex.put(key, poolCount);
+		return poolCount++;
+	}
+
+	int utf8(String s) {
+		return constant("u:" + s, CONSTANT_UTF8, s, null);
+	}
+
+	int intConst(int v) {
+		return constant("i:" + v, CONSTANT_INTEGER, v, null);
+	}
+
+	int floatConst(float v) {
+		// Pelos bits, para separar 0.0 de -0.0 e guardar NaN.
+		return constant("f:" + Float.floatToRawIntBits(v), CONSTANT_FLOAT, v, null);
+	}
+
+	int stringConst(String s) {
+		return constant("s:" + s, CONSTANT_STRING, utf8(s), null);
+	}
+
+	int classRef(String className) {
+		return constant("c:" + className, CONSTANT_CLASS, utf8(className), null);
+	}
+
+	private int nameAndType(String n, String descriptor) {
+		return constant("n:" + n + ":" + descriptor, CONSTANT_NAME_AND_TYPE, utf8(n), utf8(descriptor));
+	}
+
+	int fieldRef(String owner, String n, String descriptor) {
+		return constant("F:" + owner + "." + n + ":" + descriptor, CONSTANT_FIELDREF,
+		                classRef(owner), nameAndType(n, descriptor));
+	}
+
+	int methodRef(String owner, String n, String descriptor) {
+		return constant("M:" + owner + "." + n + ":" + descriptor, CONSTANT_METHODREF,
+		                classRef(owner), nameAndType(n, descriptor));
+	}
+
+	// ----------------------------------------------------------------------------
+	// --------------------------------- Código -----------------------------------
+
+	/*
+	 * Corpo de um método. Além dos bytes, acompanha a altura da pilha de
+	 * operandos para calcular o max_stack. Depois de um salto incondicional
+	 * quem chama acerta a altura com 'setStack'.
+	 */
+	static final class Code {
+
+		private byte[] code = new byte[256];
+		private int size;
+		private int stack;
+		private int maxStack;
+		private final int maxLocals;
+		private final ArrayList<int[]> handlers = new ArrayList<int[]>(); // {início, fim, handler}
+
+		Code(int maxLocals) {
+			this.maxLocals = maxLocals;
+		}
+
+		int size() {
+			return size;
+		}
+
+		byte[] bytes() {
+			return code;
+		}
+
+		int maxStack() {
+			return maxStack;
+		}
+
+		int maxLocals() {
+			return maxLocals;
+		}
+
+		int stack() {
+			return stack;
+		}
+
+		void setStack(int height) {
+			stack = height;
+		}
+
+		// Volta o código para um tamanho anterior, descartando o que veio depois.
+		void truncate(int newSize, int height) {
+			size = newSize;
+			stack = height;
+		}
+
+		// Instrução de um byte que muda a pilha em 'delta'.
+		void op(int opcode, int delta) {
+			u1(opcode);
+			adjust(delta);
+		}
+
+		// Instrução com um operando de um byte (iload, istore, ...).
+		void op1(int opcode, int operand, int delta) {
+			u1(opcode);
+			u1(operand);
+			adjust(delta);
+		}
+
+		// Instrução com um operando de dois bytes (sipush, getstatic, ...).
+		void op2(int opcode, int operand, int delta) {
+			u1(opcode);
+			u2(operand);
+			adjust(delta);
+		}
+
+		// Trecho [start, end) protegido por um handler em 'handler' que
+		// pega qualquer exceção, que chega no topo da pilha.
+		void handler(int start, int end, int handler) {
+			handlers.add(new int[] { start, end, handler });
+		}
+
+		// Acesso a uma variável local por índice, com o prefixo wide
+		// quando o índice não cabe em um byte.
+		void local(int opcode, int slot, int delta) {
+			if (slot < 256) {
+				op1(opcode, slot, delta);
+			} else {
+				u1(WIDE);
+				op2(opcode, slot, delta);
+			}
+		}
+
+		// Salto para 'label', que pode ainda não ter posição. O deslocamento
+		// é relativo ao início da instrução.
+		void jump(int opcode, Label label, int delta) {
+			int at = size;
+			u1(opcode);
+			u2(0);
+			adjust(delta);
+			label.refer(this, at);
+		}
+
+		void mark(Label label) {
+			label.bind(this, size);
+		}
+
+		private void adjust(int delta) {
+			stack += delta;
+			if (stack > maxStack) {
+				maxStack = stack;
+			}
+		}
+
+		private void u1(int b) {
+			if (size == code.length) {
+				code = Arrays.copyOf(code, code.length * 2);
+			}
+			code[size++] = (byte) b;
+		}
+
+		private void u2(int v) {
+			u1(v >> 8);
+			u1(v);
+		}
+
+		private void patch(int at, int target) {
+			int offset = target - at;
+			code[at + 1] = (byte) (offset >> 8);
+			code[at + 2] = (byte) offset;
+		}
+	}
+
+	// Destino de saltos. As referências feitas antes do 'bind' são
+	// corrigidas quando a posição fica conhecida.
+	static final class Label {
+
+		private int position = -1;
+		private final ArrayList<Integer> pending = new ArrayList<Integer>();
+
+		private void refer(Code code, int at) {
+			if (position >= 0) {
+				code.patch(at, position);
+			} else {
+				pending.add(at);
+			}
+		}
+
+		private void bind(Code code, int at) {
+			position = at;
+			for (int p : pending) {
+				code.patch(p, at);
+			}
+			pending.clear();
+		}
+	}
+
+}
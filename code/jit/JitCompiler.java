@@ -0,0 +1,782 @@
+package code.jit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+
+import ast.AST;
+import ast.NodeKind;
+import code.jit.ClassFile.Code;
+import code.jit.ClassFile.Label;
+import driver.CompileError;
+import tables.StrTable;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Compilador da AST já verificada para bytecode da JVM. O programa vira
+ * uma classe oculta (MethodHandles.Lookup.defineHiddenClass) com um
+ * método estático 'run(JitRuntime)', que a JVM interpreta e depois
+ * compila para código de máquina como qualquer outro método Java.
+ *
+ * As variáveis da VarTable viram variáveis locais do 'run' (o índice na
+ * tabela mais um, porque o 0 é o JitRuntime), com o tipo int ou float da
+ * JVM. Um programa cujo código não cabe num método só é dividido em
+ * vários métodos, um por trecho de comandos do bloco principal, e aí as
+ * variáveis viram campos estáticos da classe. O Writeln e o Readln são
+ * chamadas direto para o JitRuntime, que guarda a saída num buffer.
+ *
+ * Um repeat sozinho também pode ser compilado, para o Interpreter
+ * continuar a sua execução em bytecode no meio do laço (veja
+ * 'compileLoop' e OsrCompiler), e o programa pode ser gravado numa
+ * classe com 'main' em vez de carregado (veja AotCompiler).
+ *
+ * A classe é definida sem a opção STRONG, então fica ligada só
+ * fracamente ao class loader: quando o MethodHandle devolvido por
+ * 'compile' deixa de ser alcançável a classe pode ser descarregada, e
+ * um processo que roda muitos programas não acumula metaspace.
+ *
+ * A saída tem de ser exatamente a mesma da VM (veja code.vm.VM).
+ */
+public final class JitCompiler {
+
+	// Nome da classe gerada. Tem de estar no pacote da classe que a define.
+	private static final String CLASS_NAME = "code/jit/PascalProgram";
+	private static final String RUNTIME = "code/jit/JitRuntime";
+	private static final String STR_TABLE = "tables/StrTable";
+	private static final String RUN_DESCRIPTOR = "(L" + RUNTIME + ";)V";
+	private static final String LOOP_DESCRIPTOR = "(L" + RUNTIME + ";[I)V";
+
+	// Opcodes da JVM usados aqui.
+	private static final int ICONST_0 = 0x03;
+	private static final int ICONST_1 = 0x04;
+	private static final int FCONST_0 = 0x0b;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC = 0x12;
+	private static final int LDC_W = 0x13;
+	private static final int ILOAD = 0x15;
+	private static final int FLOAD = 0x17;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ALOAD_2 = 0x2c;
+	private static final int ALOAD_3 = 0x2d;
+	private static final int IALOAD = 0x2e;
+	private static final int ISTORE = 0x36;
+	private static final int FSTORE = 0x38;
+	private static final int IASTORE = 0x4f;
+	private static final int ASTORE_1 = 0x4c;
+	private static final int ASTORE_2 = 0x4d;
+	private static final int ASTORE_3 = 0x4e;
+	private static final int POP = 0x57;
+	private static final int DUP = 0x59;
+	private static final int IADD = 0x60;
+	private static final int FADD = 0x62;
+	private static final int ISUB = 0x64;
+	private static final int FSUB = 0x66;
+	private static final int IMUL = 0x68;
+	private static final int FMUL = 0x6a;
+	private static final int IDIV = 0x6c;
+	private static final int FDIV = 0x6e;
+	private static final int IOR = 0x80;
+	private static final int I2F = 0x86;
+	private static final int FCMPL = 0x95;
+	private static final int FCMPG = 0x96;
+	private static final int IFEQ = 0x99;
+	private static final int IFNE = 0x9a;
+	private static final int IFLT = 0x9b;
+	private static final int IFGE = 0x9c;
+	private static final int IFGT = 0x9d;
+	private static final int IFLE = 0x9e;
+	private static final int IF_ICMPEQ = 0x9f;
+	private static final int IF_ICMPNE = 0xa0;
+	private static final int IF_ICMPLT = 0xa1;
+	private static final int IF_ICMPGE = 0xa2;
+	private static final int IF_ICMPGT = 0xa3;
+	private static final int IF_ICMPLE = 0xa4;
+	private static final int GOTO = 0xa7;
+	private static final int RETURN = 0xb1;
+	private static final int GETSTATIC = 0xb2;
+	private static final int PUTSTATIC = 0xb3;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+	private static final int NEW = 0xbb;
+	private static final int NEWARRAY = 0xbc;
+	private static final int T_INT = 10;
+	private static final int ATHROW = 0xbf;
+
+	private final StrTable st;
+	private final VarTable vt;
+
+	private ClassFile cf;
+	private Code code;
+	private boolean fields; // Variáveis em campos estáticos em vez de locais.
+	private int base;       // Variável local da primeira variável do programa.
+	private boolean osr;    // Compilando um laço para OSR.
+	private boolean[] used; // No laço, as variáveis que estão nos locais.
+	private String className;
+
+	private int methods; // Métodos gerados na última compilação.
+
+	public JitCompiler(StrTable st, VarTable vt) {
+		this.st = st;
+		this.vt = vt;
+	}
+
+	// Compila e executa o programa.
+	public void run(AST root) {
+		MethodHandle program = compile(root);
+		JitRuntime rt = new JitRuntime(st);
+		try {
+			program.invokeExact(rt);
+		} catch (RuntimeException | Error e) {
+			throw e; // Como na VM, por exemplo a divisão por zero.
+		} catch (Throwable t) {
+			throw new IllegalStateException(t); // O 'run' não declara exceções.
+		} finally {
+			rt.close();
+		}
+	}
+
+	// Gera a classe do programa, define a classe oculta e devolve o seu 'run'.
+	public MethodHandle compile(AST root) {
+		return define(generate(root), MethodType.methodType(void.class, JitRuntime.class));
+	}
+
+	// Compila só um repeat para continuar a sua execução no meio (OSR),
+	// com as variáveis vindo da memória do Interpreter. O 'run(rt, words)'
+	// devolvido lê de 'words' as variáveis que o laço usa, executa o corpo
+	// e repete enquanto o teste for verdadeiro, como se o teste tivesse
+	// acabado de dar verdadeiro, e grava as variáveis de volta no fim.
+	// Retorna null se o laço não couber num método.
+	public MethodHandle compileLoop(AST loop) {
+		byte[] bytes = generateLoop(loop);
+		if (bytes == null) {
+			return null;
+		}
+		return define(bytes, MethodType.methodType(void.class, JitRuntime.class, int[].class));
+	}
+
+	private static MethodHandle define(byte[] bytes, MethodType type) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			return lookup.findStatic(lookup.lookupClass(), "run", type);
+		} catch (IllegalAccessException | NoSuchMethodException e) {
+			throw new IllegalStateException(e); // A classe é gerada aqui, não deveria acontecer.
+		}
+	}
+
+	// Número de métodos da última classe gerada: 1 se o programa coube
+	// todo no 'run', senão o 'run' mais um por trecho.
+	public int methods() {
+		return methods;
+	}
+
+	// Bytes do .class do programa.
+	byte[] generate(AST root) {
+		return program(root, CLASS_NAME, false).toBytes();
+	}
+
+	// Bytes de uma classe pública 'name' com o 'run' do programa e um
+	// 'main(String[])' que monta a StrTable com as strings do programa,
+	// chama o 'run' e fecha o JitRuntime, mesmo se houver exceção. É a
+	// classe principal do .jar do AotCompiler.
+	byte[] generateMain(AST root, String name) {
+		ClassFile main = program(root, name, true);
+		Code body = new Code(4); // args, StrTable, JitRuntime e a exceção.
+
+		body.op2(NEW, main.classRef(STR_TABLE), 1);
+		body.op(DUP, 1);
+		body.op2(INVOKESPECIAL, main.methodRef(STR_TABLE, "<init>", "()V"), -1);
+		body.op(ASTORE_1, -1);
+		for (String str : st) {
+			body.op(ALOAD_1, 1);
+			int index = main.stringConst(str);
+			if (index < 256) {
+				body.op1(LDC, index, 1);
+			} else {
+				body.op2(LDC_W, index, 1);
+			}
+			body.op2(INVOKEVIRTUAL, main.methodRef(STR_TABLE, "addStr", "(Ljava/lang/String;)I"), -1);
+			body.op(POP, -1);
+		}
+
+		body.op2(NEW, main.classRef(RUNTIME), 1);
+		body.op(DUP, 1);
+		body.op(ALOAD_1, 1);
+		body.op2(INVOKESPECIAL, main.methodRef(RUNTIME, "<init>", "(L" + STR_TABLE + ";)V"), -2);
+		body.op(ASTORE_2, -1);
+
+		int start = body.size();
+		body.op(ALOAD_2, 1);
+		body.op2(INVOKESTATIC, main.methodRef(name, "run", RUN_DESCRIPTOR), -1);
+		int end = body.size();
+		body.op(ALOAD_2, 1);
+		body.op2(INVOKEVIRTUAL, main.methodRef(RUNTIME, "close", "()V"), -1);
+		body.op(RETURN, 0);
+
+		// finally: fecha o JitRuntime (esvaziando a saída) e relança.
+		body.handler(start, end, body.size());
+		body.setStack(1);
+		body.op(ASTORE_3, -1);
+		body.op(ALOAD_2, 1);
+		body.op2(INVOKEVIRTUAL, main.methodRef(RUNTIME, "close", "()V"), -1);
+		body.op(ALOAD_3, 1);
+		body.op(ATHROW, -1);
+
+		if (body.size() > ClassFile.MAX_CODE) {
+			System.err.printf("Too many strings for the jar engine!\n");
+			throw new CompileError();
+		}
+		main.addStaticMethod("main", "([Ljava/lang/String;)V", true, body);
+		return main.toBytes();
+	}
+
+	// Classe com o 'run' do programa.
+	private ClassFile program(AST root, String name, boolean isPublic) {
+		// Primeiro tenta o programa inteiro num método só, com as variáveis locais.
+		fields = false;
+		osr = false;
+		base = 1;
+		className = name;
+		cf = new ClassFile(name, isPublic);
+		code = new Code(base + vt.getSize());
+		for (int i = 0; i < vt.getSize(); i++) {
+			if (vt.getType(i) == Type.REAL_TYPE) {
+				code.op(FCONST_0, 1);
+			} else {
+				code.op(ICONST_0, 1);
+			}
+			store(i);
+		}
+		stmt(root);
+		code.op(RETURN, 0);
+		if (code.size() <= ClassFile.MAX_CODE) {
+			cf.addStaticMethod("run", RUN_DESCRIPTOR, true, code);
+			methods = 1;
+			return cf;
+		}
+		return programSplit(root, isPublic);
+	}
+
+	// Programa grande demais para um método: cada trecho de comandos do
+	// bloco principal vai para um método 'sN' e o 'run' chama um por um.
+	private ClassFile programSplit(AST root, boolean isPublic) {
+		fields = true;
+		cf = new ClassFile(className, isPublic);
+		for (int i = 0; i < vt.getSize(); i++) {
+			cf.addStaticField(field(i), descriptor(i));
+		}
+
+		ArrayList<AST> statements = new ArrayList<AST>();
+		topLevel(root, statements);
+
+		int chunks = 0;
+		code = new Code(1);
+		boolean empty = true;
+		for (AST s : statements) {
+			int mark = code.size();
+			stmt(s);
+			if (code.size() < ClassFile.MAX_CODE) {
+				empty = false;
+				continue;
+			}
+			// Não coube: fecha o trecho atual sem esse comando e começa outro.
+			code.truncate(mark, 0);
+			if (empty) {
+				System.err.printf("Statement at top level too large for the jit engine!\n");
+				throw new CompileError();
+			}
+			finishChunk(chunks++);
+			code = new Code(1);
+			stmt(s);
+			if (code.size() >= ClassFile.MAX_CODE) {
+				System.err.printf("Statement at top level too large for the jit engine!\n");
+				throw new CompileError();
+			}
+		}
+		finishChunk(chunks++);
+
+		Code run = new Code(1);
+		for (int i = 0; i < chunks; i++) {
+			run.op(ALOAD_0, 1);
+			run.op2(INVOKESTATIC, cf.methodRef(className, "s" + i, RUN_DESCRIPTOR), -1);
+		}
+		run.op(RETURN, 0);
+		cf.addStaticMethod("run", RUN_DESCRIPTOR, true, run);
+		methods = chunks + 1;
+		return cf;
+	}
+
+	// Bytes do .class de um laço para OSR (veja 'compileLoop').
+	byte[] generateLoop(AST loop) {
+		fields = false;
+		osr = true;
+		base = 2; // 0 é o JitRuntime e 1 é o vetor de words.
+		className = CLASS_NAME;
+		cf = new ClassFile(className, false);
+		code = new Code(base + vt.getSize());
+
+		used = new boolean[vt.getSize()];
+		usedVars(loop, used);
+		for (int i = 0; i < used.length; i++) {
+			if (used[i]) {
+				code.op(ALOAD_1, 1);
+				intConst(i);
+				code.op(IALOAD, -1);
+				if (vt.getType(i) == Type.REAL_TYPE) {
+					code.op2(INVOKESTATIC, cf.methodRef("java/lang/Float", "intBitsToFloat", "(I)F"), 0);
+				}
+				store(i);
+			}
+		}
+		stmt(loop);
+		for (int i = 0; i < used.length; i++) {
+			if (used[i]) {
+				code.op(ALOAD_1, 1);
+				intConst(i);
+				load(i);
+				if (vt.getType(i) == Type.REAL_TYPE) {
+					code.op2(INVOKESTATIC, cf.methodRef("java/lang/Float", "floatToRawIntBits", "(F)I"), 0);
+				}
+				code.op(IASTORE, -3);
+			}
+		}
+		code.op(RETURN, 0);
+		if (code.size() > ClassFile.MAX_CODE) {
+			return null;
+		}
+		cf.addStaticMethod("run", LOOP_DESCRIPTOR, true, code);
+		methods = 1;
+		return cf.toBytes();
+	}
+
+	// Marca as variáveis lidas ou escritas na subárvore.
+	private static void usedVars(AST node, boolean[] used) {
+		switch (node.kind.generic()) {
+			case VAR_USE_NODE:
+				used[node.intData] = true;
+				break;
+			case ASSIGN_NODE:
+				used[node.getChild(0).intData] = true;
+				break;
+			default:
+				break;
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			usedVars(node.getChild(i), used);
+		}
+	}
+
+	private void finishChunk(int index) {
+		code.op(RETURN, 0);
+		cf.addStaticMethod("s" + index, RUN_DESCRIPTOR, false, code);
+	}
+
+	// Comandos do bloco principal em sequência, abrindo as listas de comandos.
+	private static void topLevel(AST node, ArrayList<AST> out) {
+		switch (node.kind.generic()) {
+			case PROGRAM_NODE:
+				topLevel(node.getChild(1), out);
+				break;
+			case BLOCK_NODE:
+			case STATEMENT_LIST_NODE:
+				for (int i = 0; i < node.getChildCount(); i++) {
+					topLevel(node.getChild(i), out);
+				}
+				break;
+			default:
+				out.add(node);
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Comandos -----------------------------------
+
+	private void stmt(AST node) {
+		switch (node.kind.generic()) {
+			case PROGRAM_NODE:
+				stmt(node.getChild(1)); // O program heading não faz nada.
+				break;
+			case BLOCK_NODE:
+			case STATEMENT_LIST_NODE:
+				for (int i = 0; i < node.getChildCount(); i++) {
+					stmt(node.getChild(i));
+				}
+				break;
+			case PROGRAM_HEADING_NODE:
+			case IDENTIFIER_NODE:
+			case VAR_DECL_PART_NODE:
+			case VAR_DECL_NODE:
+			case IDENTIFIER_LIST_NODE:
+				break;
+			case ASSIGN_NODE: {
+				int var = node.getChild(0).intData;
+				expr(node.getChild(1), vt.getType(var) == Type.REAL_TYPE);
+				store(var);
+				break;
+			}
+			case IF_NODE:
+				ifStmt(node);
+				break;
+			case ELSE_NODE:
+				stmt(node.getChild(0));
+				break;
+			case REPEAT_NODE: {
+				// Mesma semântica do Interpreter: executa o corpo e repete
+				// enquanto o teste for verdadeiro.
+				Label top = new Label();
+				code.mark(top);
+				stmt(node.getChild(1));
+				if (hasStrings(node)) {
+					collect();
+				}
+				jumpIf(node.getChild(0), true, top);
+				break;
+			}
+			case PROCEDURE_DESIGN_NODE:
+				call(node);
+				break;
+			default:
+				System.err.printf("Invalid kind: %s!\n", node.kind.toString());
+				throw new CompileError();
+		}
+	}
+
+	// Ponto de coleta das strings (veja JitRuntime.collect), entre duas
+	// voltas de um laço: é o único lugar onde o heap pode crescer sem fim.
+	private void collect() {
+		ArrayList<Integer> roots = new ArrayList<Integer>();
+		for (int i = 0; i < vt.getSize(); i++) {
+			if (vt.getType(i) == Type.STR_TYPE && (!osr || used[i])) {
+				roots.add(i);
+			}
+		}
+		Label skip = new Label();
+		code.op(ALOAD_0, 1);
+		invoke("needsCollect", "()Z", 0, true);
+		code.jump(IFEQ, skip, -1);
+		code.op(ALOAD_0, 1);
+		intConst(roots.size());
+		code.op1(NEWARRAY, T_INT, 0);
+		for (int i = 0; i < roots.size(); i++) {
+			code.op(DUP, 1);
+			intConst(i);
+			load(roots.get(i));
+			code.op(IASTORE, -3);
+		}
+		if (osr) {
+			code.op(ALOAD_1, 1);
+			invoke("collect", "([I[I)V", 2, false);
+		} else {
+			invoke("collect", "([I)V", 1, false);
+		}
+		code.mark(skip);
+	}
+
+	// Se a subárvore tem algum valor string, que pode ser uma string nova.
+	private static boolean hasStrings(AST node) {
+		if (node.type == Type.STR_TYPE) {
+			return true;
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			if (hasStrings(node.getChild(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void ifStmt(AST node) {
+		Label otherwise = new Label();
+		jumpIf(node.getChild(0), false, otherwise);
+		stmt(node.getChild(1));
+		if (node.getChildCount() == 3) {
+			Label end = new Label();
+			code.jump(GOTO, end, 0);
+			code.mark(otherwise);
+			stmt(node.getChild(2));
+			code.mark(end);
+		} else {
+			code.mark(otherwise);
+		}
+	}
+
+	// Assim como no Interpreter, só Readln e Writeln com o primeiro
+	// argumento são suportados. Outras funções não fazem nada.
+	private void call(AST node) {
+		int function = node.getChild(0).intData;
+		AST arg = node.getChild(1).getChild(0);
+		if (function == 0) {
+			int var = arg.intData;
+			code.op(ALOAD_0, 1);
+			switch (vt.getType(var)) {
+				case INT_TYPE:  invoke("readInt", "()I", 0, true);  break;
+				case REAL_TYPE: invoke("readReal", "()F", 0, true); break;
+				case BOOL_TYPE: invoke("readBool", "()I", 0, true); break;
+				case STR_TYPE:  invoke("readStr", "()I", 0, true);  break;
+				case NO_TYPE:
+				default:
+					System.err.printf("Invalid type: %s!\n", vt.getType(var).toString());
+					throw new CompileError();
+			}
+			store(var);
+		} else if (function == 1) {
+			code.op(ALOAD_0, 1);
+			expr(arg);
+			switch (arg.type) {
+				case INT_TYPE:  invoke("writeInt", "(I)V", 1, false);  break;
+				case REAL_TYPE: invoke("writeReal", "(F)V", 1, false); break;
+				case BOOL_TYPE: invoke("writeBool", "(I)V", 1, false); break;
+				case STR_TYPE:  invoke("writeStr", "(I)V", 1, false);  break;
+				case NO_TYPE:
+				default:
+					System.err.printf("Invalid type: %s!\n", arg.type.toString());
+					throw new CompileError();
+			}
+		}
+	}
+
+	// Salta para 'target' se o teste for verdadeiro (when = true) ou
+	// falso (when = false). Comparações viram um salto só, com a
+	// comparação embutida, sem passar pelo valor 0 ou 1.
+	private void jumpIf(AST test, boolean when, Label target) {
+		switch (test.kind.generic()) {
+			case EQ_NODE:
+			case LT_NODE:
+			case GT_NODE:
+				break;
+			default:
+				expr(test, false); // Bools são sempre 0 ou 1.
+				code.jump(when ? IFNE : IFEQ, target, -1);
+				return;
+		}
+
+		AST left = test.getChild(0);
+		AST right = test.getChild(1);
+		if (right.type == Type.REAL_TYPE) {
+			// fcmpg e fcmpl diferem só no NaN: escolhe o que dá falso.
+			expr(left, true);
+			expr(right, true);
+			switch (test.kind.generic()) {
+				case EQ_NODE:
+					code.op(FCMPL, -1);
+					code.jump(when ? IFEQ : IFNE, target, -1);
+					break;
+				case LT_NODE:
+					code.op(FCMPG, -1);
+					code.jump(when ? IFLT : IFGE, target, -1);
+					break;
+				default:
+					code.op(FCMPL, -1);
+					code.jump(when ? IFGT : IFLE, target, -1);
+					break;
+			}
+			return;
+		}
+
+		if (right.type == Type.STR_TYPE) {
+			code.op(ALOAD_0, 1);
+			expr(left, false);
+			expr(right, false);
+			invoke("compareStr", "(II)I", 2, true);
+			switch (test.kind.generic()) {
+				case EQ_NODE: code.jump(when ? IFEQ : IFNE, target, -1); break;
+				case LT_NODE: code.jump(when ? IFLT : IFGE, target, -1); break;
+				default:      code.jump(when ? IFGT : IFLE, target, -1); break;
+			}
+			return;
+		}
+
+		expr(left, false);
+		if (right.kind == NodeKind.INT_VAL_NODE && right.intData == 0) {
+			switch (test.kind.generic()) {
+				case EQ_NODE: code.jump(when ? IFEQ : IFNE, target, -1); break;
+				case LT_NODE: code.jump(when ? IFLT : IFGE, target, -1); break;
+				default:      code.jump(when ? IFGT : IFLE, target, -1); break;
+			}
+			return;
+		}
+		expr(right, false);
+		switch (test.kind.generic()) {
+			case EQ_NODE: code.jump(when ? IF_ICMPEQ : IF_ICMPNE, target, -2); break;
+			case LT_NODE: code.jump(when ? IF_ICMPLT : IF_ICMPGE, target, -2); break;
+			default:      code.jump(when ? IF_ICMPGT : IF_ICMPLE, target, -2); break;
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------ Expressões ----------------------------------
+
+	// Deixa o valor da expressão na pilha: float se for real, int nos
+	// outros tipos (bool é 0 ou 1 e string é o índice na StrTable).
+	private void expr(AST node) {
+		switch (node.kind.generic()) {
+			case INT_VAL_NODE:
+			case BOOL_VAL_NODE:
+			case STR_VAL_NODE:
+				intConst(node.intData);
+				break;
+			case REAL_VAL_NODE:
+				floatConst(node.floatData);
+				break;
+			case VAR_USE_NODE:
+				load(node.intData);
+				break;
+			case PLUS_NODE:
+				if (node.type == Type.STR_TYPE) {
+					code.op(ALOAD_0, 1);
+					expr(node.getChild(0));
+					expr(node.getChild(1));
+					invoke("concat", "(II)I", 2, true);
+				} else {
+					arith(node, IADD, FADD);
+				}
+				break;
+			case MINUS_NODE:
+				arith(node, ISUB, FSUB);
+				break;
+			case TIMES_NODE:
+				arith(node, IMUL, FMUL);
+				break;
+			case OVER_NODE:
+				arith(node, IDIV, FDIV);
+				break;
+			case EQ_NODE:
+			case LT_NODE:
+			case GT_NODE: {
+				// Só chega aqui fora de um if ou repeat: transforma o salto em 0 ou 1.
+				Label no = new Label();
+				Label end = new Label();
+				int height = code.stack();
+				jumpIf(node, false, no);
+				code.op(ICONST_1, 1);
+				code.jump(GOTO, end, 0);
+				code.setStack(height);
+				code.mark(no);
+				code.op(ICONST_0, 1);
+				code.mark(end);
+				break;
+			}
+			case B2I_NODE:
+				expr(node.getChild(0)); // Bools já são 0 ou 1.
+				break;
+			case I2R_NODE:
+			case B2R_NODE:
+				expr(node.getChild(0), false);
+				code.op(I2F, 0);
+				break;
+			case I2S_NODE:
+				convert(node, "i2s", "(I)I");
+				break;
+			case R2S_NODE:
+				convert(node, "r2s", "(F)I");
+				break;
+			case B2S_NODE:
+				convert(node, "b2s", "(I)I");
+				break;
+			default:
+				System.err.printf("Invalid kind: %s!\n", node.kind.toString());
+				throw new CompileError();
+		}
+	}
+
+	// Como 'expr', mas garante um float na pilha se 'real' for verdadeiro
+	// e um int se não for. O checker deixa passar alguns reais misturados
+	// com inteiros sem a conversão (por exemplo 'x + i', com o inteiro à
+	// direita): aí o valor é só reinterpretado pelos bits, como a VM faz
+	// ao guardar tudo em words de 32 bits.
+	private void expr(AST node, boolean real) {
+		expr(node);
+		boolean isReal = node.type == Type.REAL_TYPE;
+		if (real && !isReal) {
+			code.op2(INVOKESTATIC, cf.methodRef("java/lang/Float", "intBitsToFloat", "(I)F"), 0);
+		} else if (!real && isReal) {
+			code.op2(INVOKESTATIC, cf.methodRef("java/lang/Float", "floatToRawIntBits", "(F)I"), 0);
+		}
+	}
+
+	// Operação aritmética com a instrução do tipo do nó. No bool o
+	// '+' é o 'ou', e como os valores são 0 ou 1 basta o ior.
+	private void arith(AST node, int intOp, int floatOp) {
+		boolean real = node.type == Type.REAL_TYPE;
+		expr(node.getChild(0), real);
+		expr(node.getChild(1), real);
+		switch (node.type) {
+			case REAL_TYPE: code.op(floatOp, -1);                          break;
+			case BOOL_TYPE: code.op(intOp == IADD ? IOR : intOp, -1);      break;
+			default:        code.op(intOp, -1);                            break;
+		}
+	}
+
+	private void convert(AST node, String method, String descriptor) {
+		code.op(ALOAD_0, 1);
+		expr(node.getChild(0), descriptor.startsWith("(F"));
+		invoke(method, descriptor, 1, true);
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------ Auxiliares ----------------------------------
+
+	private void invoke(String method, String descriptor, int args, boolean returns) {
+		code.op2(INVOKEVIRTUAL, cf.methodRef(RUNTIME, method, descriptor), -(1 + args) + (returns ? 1 : 0));
+	}
+
+	private void load(int var) {
+		boolean real = vt.getType(var) == Type.REAL_TYPE;
+		if (fields) {
+			code.op2(GETSTATIC, cf.fieldRef(className, field(var), descriptor(var)), 1);
+		} else {
+			code.local(real ? FLOAD : ILOAD, base + var, 1);
+		}
+	}
+
+	private void store(int var) {
+		boolean real = vt.getType(var) == Type.REAL_TYPE;
+		if (fields) {
+			code.op2(PUTSTATIC, cf.fieldRef(className, field(var), descriptor(var)), -1);
+		} else {
+			code.local(real ? FSTORE : ISTORE, base + var, -1);
+		}
+	}
+
+	private static String field(int var) {
+		return "v" + var;
+	}
+
+	private String descriptor(int var) {
+		return vt.getType(var) == Type.REAL_TYPE ? "F" : "I";
+	}
+
+	private void intConst(int v) {
+		if (v >= -1 && v <= 5) {
+			code.op(ICONST_0 + v, 1);
+		} else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+			code.op1(BIPUSH, v, 1);
+		} else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+			code.op2(SIPUSH, v, 1);
+		} else {
+			ldc(cf.intConst(v));
+		}
+	}
+
+	private void floatConst(float v) {
+		int bits = Float.floatToRawIntBits(v);
+		if (bits == 0 || v == 1.0f || v == 2.0f) {
+			code.op(FCONST_0 + (int) v, 1);
+		} else {
+			ldc(cf.floatConst(v));
+		}
+	}
+
+	private void ldc(int index) {
+		if (index < 256) {
+			code.op1(LDC, index, 1);
+		} else {
+			code.op2(LDC_W, index, 1);
+		}
+	}
+
+}
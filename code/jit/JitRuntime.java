@@ -0,0 +1,164 @@
+package code.jit;
+
+import code.Input;
+import code.StringHeap;
+import tables.StrTable;
+
+/*
+ * Tudo o que o código gerado pelo JitCompiler não faz com instruções da
+ * JVM: entrada e saída e as operações sobre as strings (code.StringHeap). O
+ * código gerado recebe uma instância e chama estes métodos direto
+ * (invokevirtual), sem despacho nenhum no meio.
+ *
+ * A saída do Writeln vai para um buffer e só é escrita na System.out
+ * quando ele enche, antes de cada leitura (para o prompt aparecer na
+ * ordem certa) e no fim. O texto é o mesmo que a VM imprime.
+ */
+public final class JitRuntime {
+
+	private static final int FLUSH_AT = 8192;
+	private static final String NEWLINE = System.lineSeparator();
+	private static final int[] NO_WORDS = new int[0];
+
+	private final StringHeap strings;
+	private final Input in; // Para leitura de stdin
+	private final StringBuilder out = new StringBuilder(FLUSH_AT + 256);
+
+	public JitRuntime(StrTable st) {
+		this(new StringHeap(st), Input.stdin());
+	}
+
+	// Com o Input e o heap de strings do Interpreter, no tiered, para não
+	// perder o que já estiver no buffer dele nem as strings já criadas.
+	public JitRuntime(StringHeap strings, Input in) {
+		this.strings = strings;
+		this.in = in;
+	}
+
+	// Fim do programa (normal ou não): esvazia o buffer e fecha a entrada.
+	public void close() {
+		flush();
+		in.close();
+	}
+
+	public void flush() {
+		if (out.length() > 0) {
+			System.out.print(out);
+			out.setLength(0);
+		}
+		System.out.flush();
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Escrita ------------------------------------
+
+	public void writeInt(int value) {
+		out.append(value).append(NEWLINE);
+		check();
+	}
+
+	public void writeReal(float value) {
+		out.append(value).append(NEWLINE);
+		check();
+	}
+
+	public void writeBool(int value) {
+		out.append(value == 0 ? "false" : "true").append(NEWLINE);
+		check();
+	}
+
+	public void writeStr(int index) {
+		out.append(strings.unescaped(index));
+		check();
+	}
+
+	private void check() {
+		if (out.length() >= FLUSH_AT) {
+			flush();
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Leitura ------------------------------------
+
+	public int readInt() {
+		flush();
+		System.out.printf("read (int): ");
+		return in.nextInt();
+	}
+
+	public float readReal() {
+		flush();
+		System.out.printf("read (real): ");
+		return in.nextFloat();
+	}
+
+	public int readBool() {
+		flush();
+		int value;
+		do {
+			System.out.printf("read (bool - 0 = false, 1 = true): ");
+			value = in.nextInt();
+		} while (value != 0 && value != 1);
+		return value;
+	}
+
+	public int readStr() {
+		flush();
+		System.out.printf("read (str): ");
+		return strings.add(in.next());
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Strings ------------------------------------
+
+	public int compareStr(int l, int r) {
+		return strings.compare(l, r);
+	}
+
+	// Todas as strings da tabela ficam envoltas por aspas, então na
+	// concatenação tira a última da esquerda e a primeira da direita.
+	public int concat(int l, int r) {
+		String ls = strings.get(l);
+		String rs = strings.get(r);
+		return strings.add(ls.substring(0, ls.length() - 1) + rs.substring(1));
+	}
+
+	public int i2s(int value) {
+		return newStr(Integer.toString(value));
+	}
+
+	public int r2s(float value) {
+		return newStr(Float.toString(value));
+	}
+
+	public int b2s(int value) {
+		return newStr(value == 0 ? "false" : "true");
+	}
+
+	private int newStr(String s) {
+		return strings.add("'" + s + "'");
+	}
+
+	// ----------------------------------------------------------------------------
+	// -------------------------------- Coleta ------------------------------------
+
+	// O código compilado pergunta no fim de cada volta de um repeat que
+	// mexe com strings, quando a pilha da JVM está vazia, e só monta o
+	// vetor com as suas variáveis string se a resposta for sim.
+	public boolean needsCollect() {
+		return strings.needsCollect();
+	}
+
+	// 'locals' são os valores das variáveis string do programa.
+	public void collect(int[] locals) {
+		strings.collect(locals, NO_WORDS, NO_WORDS, 0);
+	}
+
+	// Laço do tiered: as variáveis que o laço não usa estão nas 'words'
+	// do Interpreter. A pilha dele está vazia, já que o laço é um comando.
+	public void collect(int[] locals, int[] words) {
+		strings.collect(locals, words, NO_WORDS, 0);
+	}
+
+}
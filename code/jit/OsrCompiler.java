@@ -0,0 +1,227 @@
+package code.jit;
+
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import ast.AST;
+import ast.NodeKind;
+import tables.StrTable;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Segundo nível da execução em camadas (--engine=tiered). O programa
+ * começa no Interpreter, que conta as iterações de cada repeat e chama
+ * 'poll' a cada 'checkInterval()' iterações. Quando um laço passa do
+ * limiar ele entra na fila de compilação, atendida por uma thread só,
+ * em segundo plano, que gera o bytecode do laço com o JitCompiler.
+ * Enquanto isso o Interpreter segue executando; na primeira consulta
+ * depois de pronto, 'poll' devolve o código e o Interpreter troca de
+ * nível no meio do laço (OSR): as variáveis vão e voltam pelo vetor de
+ * words da Memory, sem reiniciar nada.
+ *
+ * Só são compilados os laços cuja execução no JitCompiler dá o mesmo
+ * resultado que no Interpreter. Ficam de fora os que têm nós de
+ * conversão (que o Interpreter não executa) e comparações entre bools
+ * (que o Interpreter faz como strings), além do que o JitCompiler não
+ * suporta.
+ *
+ * Os contadores ficam na thread do Interpreter; só as estatísticas da
+ * fila são atualizadas pela thread de compilação.
+ */
+public final class OsrCompiler {
+
+	public static final int DEFAULT_THRESHOLD = 10000;
+
+	// Intervalo máximo entre consultas, para o Interpreter não pagar um
+	// acesso ao mapa por iteração.
+	private static final int MAX_CHECK_INTERVAL = 256;
+
+	private final int threshold;
+	private final JitCompiler jit; // Só usado pela thread de compilação.
+	private final ExecutorService queue;
+
+	// Estado de cada laço, pela chave que o Interpreter usa (o nó da AST
+	// ou o índice na FlatAST).
+	private final HashMap<Object, Loop> loops = new HashMap<Object, Loop>();
+
+	private static final class Loop {
+		long iterations;
+		Future<MethodHandle> compiled; // null enquanto não ficar quente.
+		boolean rejected;              // Não dá para compilar, não tenta de novo.
+		MethodHandle code;
+	}
+
+	// Métricas.
+	private int hot;
+	private int rejected;
+	private int entries;
+	private final AtomicInteger compiled = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicInteger maxPending = new AtomicInteger();
+	private final AtomicLong compileNanos = new AtomicLong();
+
+	public OsrCompiler(StrTable st, VarTable vt, int threshold) {
+		this.threshold = Math.max(threshold, 1);
+		this.jit = new JitCompiler(st, vt);
+		this.queue = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "osr-compiler");
+			t.setDaemon(true); // Não segura o fim do programa.
+			return t;
+		});
+	}
+
+	// De quantas em quantas iterações o Interpreter deve chamar 'poll'.
+	public int checkInterval() {
+		return Math.min(threshold, MAX_CHECK_INTERVAL);
+	}
+
+	// Soma 'iterations' ao contador do laço e devolve o código compilado
+	// se ele já estiver pronto, ou null para o Interpreter continuar.
+	// O 'loop' só é pedido quando o laço fica quente.
+	public MethodHandle poll(Object key, int iterations, Supplier<AST> loop) {
+		Loop l = loops.get(key);
+		if (l == null) {
+			l = new Loop();
+			loops.put(key, l);
+		}
+		if (l.code != null) {
+			return l.code;
+		}
+		if (l.rejected) {
+			return null;
+		}
+		l.iterations += iterations;
+		if (l.compiled == null) {
+			if (l.iterations >= threshold) {
+				request(l, loop.get());
+			}
+			return null;
+		}
+		if (!l.compiled.isDone()) {
+			return null;
+		}
+		try {
+			l.code = l.compiled.get();
+		} catch (ExecutionException | InterruptedException e) {
+			l.code = null;
+		}
+		if (l.code == null) {
+			l.rejected = true;
+		}
+		return l.code;
+	}
+
+	private void request(Loop l, AST loop) {
+		hot++;
+		if (!supported(loop)) {
+			rejected++;
+			l.rejected = true;
+			return;
+		}
+		int n = pending.incrementAndGet();
+		maxPending.accumulateAndGet(n, Math::max);
+		l.compiled = queue.submit(() -> {
+			long start = System.nanoTime();
+			try {
+				MethodHandle code = jit.compileLoop(loop);
+				if (code == null) {
+					failed.incrementAndGet();
+				} else {
+					compiled.incrementAndGet();
+				}
+				return code;
+			} catch (RuntimeException | LinkageError e) {
+				failed.incrementAndGet();
+				return null;
+			} finally {
+				compileNanos.addAndGet(System.nanoTime() - start);
+				pending.decrementAndGet();
+			}
+		});
+	}
+
+	// Continua o laço no código compilado, a partir do início do corpo.
+	// A saída do código compilado é esvaziada antes de voltar para o
+	// Interpreter, que escreve direto na System.out.
+	public void enter(MethodHandle code, JitRuntime rt, int[] words) {
+		entries++;
+		try {
+			code.invokeExact(rt, words);
+		} catch (RuntimeException | Error e) {
+			throw e; // Como no Interpreter, por exemplo a divisão por zero.
+		} catch (Throwable t) {
+			throw new IllegalStateException(t); // O 'run' não declara exceções.
+		} finally {
+			rt.flush();
+		}
+	}
+
+	// Fim do programa: descarta o que ainda estiver na fila.
+	public void shutdown() {
+		queue.shutdownNow();
+	}
+
+	public String report() {
+		return String.format("tiered: threshold %d; %d loops hot, %d compiled, %d rejected, %d failed;"
+		                     + " queue max %d, %d pending, %.1f ms compiling; %d OSR entries\n",
+		                     threshold, hot, compiled.get(), rejected, failed.get(),
+		                     maxPending.get(), pending.get(), compileNanos.get() / 1e6, entries);
+	}
+
+	// ----------------------------------------------------------------------------
+	// ----------------------------- Elegibilidade --------------------------------
+
+	// Se o laço dá o mesmo resultado no JitCompiler e no Interpreter.
+	static boolean supported(AST node) {
+		switch (node.kind.generic()) {
+			case REPEAT_NODE:
+			case STATEMENT_LIST_NODE:
+			case IF_NODE:
+			case ELSE_NODE:
+			case PLUS_NODE:
+			case MINUS_NODE:
+			case TIMES_NODE:
+			case OVER_NODE:
+			case INT_VAL_NODE:
+			case REAL_VAL_NODE:
+			case BOOL_VAL_NODE:
+			case STR_VAL_NODE:
+			case VAR_USE_NODE:
+				break;
+			case ASSIGN_NODE:
+				if (node.getChild(0).kind != NodeKind.VAR_USE_NODE) {
+					return false;
+				}
+				break;
+			case EQ_NODE:
+			case LT_NODE:
+			case GT_NODE:
+				if (node.getChild(1).type == Type.BOOL_TYPE) {
+					return false;
+				}
+				break;
+			case PROCEDURE_DESIGN_NODE:
+				// Só Readln e Writeln, com os argumentos.
+				int function = node.getChild(0).intData;
+				return (function == 0 || function == 1) && supported(node.getChild(1).getChild(0));
+			default:
+				return false;
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			if (!supported(node.getChild(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,55 @@
+package code.vm;
+
+import java.util.Formatter;
+
+/*
+ * Programa já traduzido para o bytecode da VM.
+ *
+ * Os registradores de 0 até 'numVars - 1' são as próprias variáveis
+ * globais (o índice na tabela de variáveis é o número do registrador).
+ * Logo depois vêm os registradores de constantes, cujos valores iniciais
+ * estão em 'consts', e por fim os temporários usados pelas expressões. Assim como na
+ * Memory, cada registrador guarda uma word de 32 bits: inteiros e bools
+ * diretamente, reais pelos bits crus e strings pelo handle (veja code.StringHeap).
+ */
+public final class Bytecode {
+
+	public final int[] code;
+	public final int numVars;
+	public final int[] consts;
+	public final int numRegs;
+
+	public Bytecode(int[] code, int numVars, int[] consts, int numRegs) {
+		this.code = code;
+		this.numVars = numVars;
+		this.consts = consts;
+		this.numRegs = numRegs;
+	}
+
+	// Cria o banco de registradores já com as constantes carregadas.
+	public int[] newRegisters() {
+		int[] regs = new int[numRegs];
+		System.arraycopy(consts, 0, regs, numVars, consts.length);
+		return regs;
+	}
+
+	// Disassembler simples, para depuração.
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		Formatter f = new Formatter(sb);
+		f.format("Bytecode (%d vars, %d consts, %d regs):\n", numVars, consts.length, numRegs);
+		int pc = 0;
+		while (pc < code.length) {
+			int op = code[pc];
+			f.format("%5d: %-8s", pc, Opcode.name(op));
+			for (int i = 1; i <= Opcode.operands(op); i++) {
+				f.format(" %d", code[pc + i]);
+			}
+			f.format("\n");
+			pc += 1 + Opcode.operands(op);
+		}
+		f.close();
+		return sb.toString();
+	}
+
+}
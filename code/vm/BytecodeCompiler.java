@@ -0,0 +1,500 @@
+package code.vm;
+
+import static code.vm.Opcode.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ast.AST;
+import ast.ASTBaseVisitor;
+import ast.NodeKind;
+import driver.CompileError;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Tradutor da AST já verificada para o bytecode de registradores da VM.
+ *
+ * Cada visita de expressão emite as instruções que calculam o valor e
+ * retorna o número do registrador aonde o resultado ficou. Visitas de
+ * comandos retornam NO_REG. Todo o despacho por tipo que o Interpreter
+ * faz a cada execução é feito aqui uma única vez, escolhendo o opcode
+ * especializado para o tipo do nó.
+ *
+ * Os registradores ficam divididos em: variáveis, constantes (coletadas
+ * numa passada antes da tradução e pré-carregadas pela VM) e temporários.
+ *
+ * Para rodar, chame 'compile' e passe o resultado para a VM.
+ */
+public final class BytecodeCompiler extends ASTBaseVisitor<Integer> {
+
+	private static final int NO_REG = -1;
+
+	private final VarTable vt;
+
+	private int[] code = new int[256];
+	private int size = 0;
+
+	private final int numVars;
+
+	// Constantes: valor da word para o seu registrador.
+	private final Map<Integer, Integer> constRegs = new HashMap<Integer, Integer>();
+	private int[] consts = new int[16];
+	private int numConsts = 0;
+
+	private int tempBase;     // Primeiro registrador temporário.
+	private int tempTop = 0;  // Próximo temporário livre.
+	private int maxTemps = 0; // Maior número de temporários vivos ao mesmo tempo.
+
+	// Posição do campo destino da última instrução emitida, se ela
+	// escreveu em um registrador. Usado para evitar um MOV extra nas
+	// atribuições.
+	private int lastDstPos = -1;
+
+	private int functionIDX = -1;
+
+	public BytecodeCompiler(VarTable vt) {
+		this.vt = vt;
+		this.numVars = vt.getSize();
+	}
+
+	public Bytecode compile(AST root) {
+		collectConsts(root);
+		tempBase = numVars + numConsts;
+		visit(root);
+		emit(HALT);
+		return new Bytecode(Arrays.copyOf(code, size), numVars,
+		                    Arrays.copyOf(consts, numConsts), tempBase + maxTemps);
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------ Constantes ----------------------------------
+
+	// Percorre a árvore toda reservando um registrador para cada valor
+	// literal distinto. Como os registradores não têm tipo, um inteiro
+	// 1 e um true compartilham o mesmo registrador.
+	private void collectConsts(AST node) {
+		switch (node.kind.generic()) {
+			case INT_VAL_NODE:
+			case STR_VAL_NODE:
+			case BOOL_VAL_NODE:
+				constReg(node.intData);
+				break;
+			case REAL_VAL_NODE:
+				constReg(Float.floatToRawIntBits(node.floatData));
+				break;
+			default:
+				break;
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			collectConsts(node.getChild(i));
+		}
+	}
+
+	private int constReg(int word) {
+		Integer reg = constRegs.get(word);
+		if (reg == null) {
+			if (numConsts == consts.length) {
+				consts = Arrays.copyOf(consts, consts.length * 2);
+			}
+			reg = numVars + numConsts;
+			consts[numConsts++] = word;
+			constRegs.put(word, reg);
+		}
+		return reg;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Emissão ------------------------------------
+
+	private void put(int word) {
+		if (size == code.length) {
+			code = Arrays.copyOf(code, code.length * 2);
+		}
+		code[size++] = word;
+	}
+
+	private void emit(int op) {
+		put(op);
+		lastDstPos = -1;
+	}
+
+	private void emit(int op, int a) {
+		put(op);
+		put(a);
+		lastDstPos = -1;
+	}
+
+	private void emit(int op, int a, int b) {
+		put(op);
+		put(a);
+		put(b);
+		lastDstPos = -1;
+	}
+
+	// Emite uma instrução que escreve em 'd' e retorna 'd'.
+	private int emitDst(int op, int d, int a) {
+		put(op);
+		lastDstPos = size;
+		put(d);
+		put(a);
+		return d;
+	}
+
+	private int emitDst(int op, int d, int a, int b) {
+		put(op);
+		lastDstPos = size;
+		put(d);
+		put(a);
+		put(b);
+		return d;
+	}
+
+	// Emite um salto com o destino ainda desconhecido e retorna a posição
+	// do operando de destino para ser corrigido depois.
+	private int emitJump(int op, int c) {
+		if (op == JMP) {
+			emit(JMP, 0);
+		} else {
+			emit(op, c, 0);
+		}
+		return size - 1;
+	}
+
+	private void patch(int pos, int target) {
+		code[pos] = target;
+	}
+
+	private int here() {
+		lastDstPos = -1; // Um rótulo aqui, então não pode mexer na instrução anterior.
+		return size;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ---------------------------- Registradores ---------------------------------
+
+	private int newTemp() {
+		int r = tempBase + tempTop++;
+		if (tempTop > maxTemps) {
+			maxTemps = tempTop;
+		}
+		return r;
+	}
+
+	// Os temporários só vivem dentro de um comando, então todo comando
+	// começa com todos eles livres.
+	private void freeTemps() {
+		tempTop = 0;
+	}
+
+	// Gera o código da expressão e copia o resultado para o registrador
+	// 'd'. Se a última instrução foi quem calculou o valor em um temporário,
+	// basta trocar o destino dela em vez de emitir um MOV.
+	private void moveTo(int d, AST expr) {
+		int s = visit(expr);
+		if (s == d) {
+			return;
+		}
+		if (s >= tempBase && lastDstPos != -1 && code[lastDstPos] == s) {
+			code[lastDstPos] = d;
+		} else {
+			emitDst(MOV, d, s);
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// -------------------------------- Árvore ------------------------------------
+
+	@Override
+	protected Integer visitProgram(AST node) {
+		visit(node.getChild(0)); // program heading
+		visit(node.getChild(1)); // block
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitProgramHeading(AST node) {
+		// Nothing to do.
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitIdentifier(AST node) {
+		// Nothing to do.
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitBlock(AST node) {
+		for (int i = 0; i < node.getChildCount(); i++) {
+			visit(node.getChild(i));
+		}
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitVarDeclPart(AST node) {
+		// Nothing to do. As variáveis já têm os seus registradores.
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitVarDecl(AST node) {
+		// Nothing to do.
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitIdentifierList(AST node) {
+		// Nothing to do.
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitStatementList(AST node) {
+		for (int i = 0; i < node.getChildCount(); i++) {
+			visit(node.getChild(i));
+		}
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitProcedureDesignator(AST node) {
+		freeTemps();
+		visit(node.getChild(0)); // Identifica o procedimento.
+		visit(node.getChild(1)); // Parâmetros e chamada.
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitFuncIdentifier(AST node) {
+		functionIDX = node.intData;
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitParameterList(AST node) {
+		// Assim como no Interpreter, só Readln e Writeln com o primeiro
+		// argumento são suportados.
+		if (functionIDX == 0) {
+			int varIdx = node.getChild(0).intData;
+			Type varType = vt.getType(varIdx);
+			switch (varType) {
+				case INT_TYPE:  emit(READ_I, varIdx); break;
+				case REAL_TYPE: emit(READ_R, varIdx); break;
+				case BOOL_TYPE: emit(READ_B, varIdx); break;
+				case STR_TYPE:  emit(READ_S, varIdx); break;
+				case NO_TYPE:
+				default:
+					System.err.printf("Invalid type: %s!\n", varType.toString());
+					throw new CompileError();
+			}
+		} else if (functionIDX == 1) {
+			AST expr = node.getChild(0);
+			int r = visit(expr);
+			switch (expr.type) {
+				case INT_TYPE:  emit(WRITE_I, r); break;
+				case REAL_TYPE: emit(WRITE_R, r); break;
+				case BOOL_TYPE: emit(WRITE_B, r); break;
+				case STR_TYPE:  emit(WRITE_S, r); break;
+				case NO_TYPE:
+				default:
+					System.err.printf("Invalid type: %s!\n", expr.type.toString());
+					throw new CompileError();
+			}
+		}
+		// Outras funções ainda não são executadas, como no Interpreter.
+		functionIDX = -1;
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitAssign(AST node) {
+		freeTemps();
+		int varIdx = node.getChild(0).intData;
+		moveTo(varIdx, node.getChild(1));
+		return NO_REG;
+	}
+
+	// Emite o salto condicional do teste de um if ou repeat e retorna a
+	// posição do destino para ser corrigido depois. Comparações entre
+	// inteiros viram um único salto com a comparação embutida.
+	private int emitCondJump(AST test, boolean jumpIfTrue) {
+		if (test.getChildCount() == 2 && test.getChild(1).type == Type.INT_TYPE) {
+			int op = -1;
+			if (test.kind.generic() == NodeKind.EQ_NODE) op = jumpIfTrue ? JEQ_I : JNE_I;
+			if (test.kind.generic() == NodeKind.LT_NODE) op = jumpIfTrue ? JLT_I : JGE_I;
+			if (test.kind.generic() == NodeKind.GT_NODE) op = jumpIfTrue ? JGT_I : JLE_I;
+			if (op != -1) {
+				int l = visit(test.getChild(0));
+				int r = visit(test.getChild(1));
+				put(op);
+				put(l);
+				put(r);
+				put(0);
+				lastDstPos = -1;
+				return size - 1;
+			}
+		}
+		return emitJump(jumpIfTrue ? JT : JF, visit(test));
+	}
+
+	@Override
+	protected Integer visitIf(AST node) {
+		freeTemps();
+		int toElse = emitCondJump(node.getChild(0), false);
+		visit(node.getChild(1));
+		if (node.getChildCount() == 3) {
+			int toEnd = emitJump(JMP, NO_REG);
+			patch(toElse, here());
+			visit(node.getChild(2));
+			patch(toEnd, here());
+		} else {
+			patch(toElse, here());
+		}
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitElse(AST node) {
+		visit(node.getChild(0));
+		return NO_REG;
+	}
+
+	@Override
+	protected Integer visitRepeat(AST node) {
+		// Mesma semântica do Interpreter: executa o corpo e repete
+		// enquanto o teste for verdadeiro.
+		int top = here();
+		visit(node.getChild(1)); // body
+		freeTemps();
+		patch(emitCondJump(node.getChild(0), true), top);
+		return NO_REG;
+	}
+
+	// Escolhe o opcode de comparação conforme o tipo dos operandos.
+	private Integer visitComp(AST node, int opI, int opR, int opS) {
+		AST rexpr = node.getChild(1);
+		int l = visit(node.getChild(0));
+		int r = visit(rexpr);
+		int op;
+		switch (rexpr.type) {
+			case REAL_TYPE: op = opR; break;
+			case STR_TYPE:  op = opS; break;
+			default:        op = opI; break;
+		}
+		return emitDst(op, newTemp(), l, r);
+	}
+
+	@Override
+	protected Integer visitEq(AST node) {
+		return visitComp(node, EQ_I, EQ_R, EQ_S);
+	}
+
+	@Override
+	protected Integer visitGt(AST node) {
+		return visitComp(node, GT_I, GT_R, GT_S);
+	}
+
+	@Override
+	protected Integer visitLt(AST node) {
+		return visitComp(node, LT_I, LT_R, LT_S);
+	}
+
+	// Escolhe o opcode aritmético conforme o tipo do resultado.
+	private Integer visitArith(AST node, int opI, int opR) {
+		int l = visit(node.getChild(0));
+		int r = visit(node.getChild(1));
+		return emitDst(node.type == Type.REAL_TYPE ? opR : opI, newTemp(), l, r);
+	}
+
+	@Override
+	protected Integer visitMinus(AST node) {
+		return visitArith(node, SUB_I, SUB_R);
+	}
+
+	@Override
+	protected Integer visitOver(AST node) {
+		return visitArith(node, DIV_I, DIV_R);
+	}
+
+	@Override
+	protected Integer visitTimes(AST node) {
+		return visitArith(node, MUL_I, MUL_R);
+	}
+
+	@Override
+	protected Integer visitPlus(AST node) {
+		int l = visit(node.getChild(0));
+		int r = visit(node.getChild(1));
+		switch (node.type) {
+			case INT_TYPE:  return emitDst(ADD_I, newTemp(), l, r);
+			case REAL_TYPE: return emitDst(ADD_R, newTemp(), l, r);
+			case BOOL_TYPE: return emitDst(OR_B, newTemp(), l, r);
+			case STR_TYPE:  return emitDst(CAT_S, newTemp(), l, r);
+			case NO_TYPE:
+			default:
+				System.err.printf("Invalid type: %s!\n", node.type.toString());
+				throw new CompileError();
+		}
+	}
+
+	@Override
+	protected Integer visitVarUse(AST node) {
+		// A variável já é um registrador, não precisa de load.
+		return node.intData;
+	}
+
+	@Override
+	protected Integer visitIntVal(AST node) {
+		return constReg(node.intData);
+	}
+
+	@Override
+	protected Integer visitStrVal(AST node) {
+		return constReg(node.intData);
+	}
+
+	@Override
+	protected Integer visitBoolVal(AST node) {
+		return constReg(node.intData);
+	}
+
+	@Override
+	protected Integer visitRealVal(AST node) {
+		return constReg(Float.floatToRawIntBits(node.floatData));
+	}
+
+	@Override
+	protected Integer visitB2I(AST node) {
+		// Bools já são 0 ou 1.
+		return visit(node.getChild(0));
+	}
+
+	@Override
+	protected Integer visitB2R(AST node) {
+		return emitDst(I2R, newTemp(), visit(node.getChild(0)));
+	}
+
+	@Override
+	protected Integer visitB2S(AST node) {
+		return emitDst(B2S, newTemp(), visit(node.getChild(0)));
+	}
+
+	@Override
+	protected Integer visitI2R(AST node) {
+		return emitDst(I2R, newTemp(), visit(node.getChild(0)));
+	}
+
+	@Override
+	protected Integer visitI2S(AST node) {
+		return emitDst(I2S, newTemp(), visit(node.getChild(0)));
+	}
+
+	@Override
+	protected Integer visitR2S(AST node) {
+		return emitDst(R2S, newTemp(), visit(node.getChild(0)));
+	}
+
+}
@@ -0,0 +1,101 @@
+package code.vm;
+
+/*
+ * Opcodes do bytecode de registradores da VM.
+ *
+ * Cada instrução ocupa posições consecutivas do vetor de código:
+ * primeiro o opcode e depois os operandos. Os operandos são sempre
+ * índices de registradores, exceto o destino dos saltos (posição no
+ * vetor de código). Constantes não precisam de instrução de carga
+ * porque ficam em registradores pré-carregados (veja Bytecode).
+ *
+ * As operações já vêm especializadas por tipo (sufixos _I, _R, _B e _S)
+ * porque o tipo de cada nó é conhecido na hora da tradução da AST.
+ * Os saltos condicionais com comparação embutida (JLT_I etc.) evitam
+ * materializar o bool do teste nos laços e condicionais com inteiros.
+ * Não dá para usar um enum aqui porque o switch do laço de despacho
+ * precisa de constantes inteiras.
+ */
+public final class Opcode {
+
+	private Opcode() {}
+
+	public static final int HALT   = 0;  // HALT
+	public static final int MOV    = 1;  // MOV   d, s
+
+	public static final int ADD_I  = 2;  // ADD_I d, a, b
+	public static final int SUB_I  = 3;
+	public static final int MUL_I  = 4;
+	public static final int DIV_I  = 5;
+	public static final int ADD_R  = 6;
+	public static final int SUB_R  = 7;
+	public static final int MUL_R  = 8;
+	public static final int DIV_R  = 9;
+	public static final int OR_B   = 10;
+	public static final int CAT_S  = 11;
+
+	public static final int EQ_I   = 12; // EQ_I d, a, b
+	public static final int LT_I   = 13;
+	public static final int GT_I   = 14;
+	public static final int EQ_R   = 15;
+	public static final int LT_R   = 16;
+	public static final int GT_R   = 17;
+	public static final int EQ_S   = 18;
+	public static final int LT_S   = 19;
+	public static final int GT_S   = 20;
+
+	public static final int I2R    = 21; // I2R d, s
+	public static final int I2S    = 22;
+	public static final int R2S    = 23;
+	public static final int B2S    = 24;
+
+	public static final int JMP    = 25; // JMP target
+	public static final int JT     = 26; // JT  c, target (salta se c for true)
+	public static final int JF     = 27; // JF  c, target (salta se c for false)
+
+	public static final int READ_I  = 28; // READ_I d
+	public static final int READ_R  = 29;
+	public static final int READ_B  = 30;
+	public static final int READ_S  = 31;
+	public static final int WRITE_I = 32; // WRITE_I s
+	public static final int WRITE_R = 33;
+	public static final int WRITE_B = 34;
+	public static final int WRITE_S = 35;
+
+	public static final int JEQ_I  = 36; // JEQ_I a, b, target (salta se a == b)
+	public static final int JNE_I  = 37;
+	public static final int JLT_I  = 38;
+	public static final int JGE_I  = 39;
+	public static final int JGT_I  = 40;
+	public static final int JLE_I  = 41;
+
+	private static final String[] NAMES = {
+		"HALT", "MOV",
+		"ADD_I", "SUB_I", "MUL_I", "DIV_I", "ADD_R", "SUB_R", "MUL_R", "DIV_R", "OR_B", "CAT_S",
+		"EQ_I", "LT_I", "GT_I", "EQ_R", "LT_R", "GT_R", "EQ_S", "LT_S", "GT_S",
+		"I2R", "I2S", "R2S", "B2S",
+		"JMP", "JT", "JF",
+		"READ_I", "READ_R", "READ_B", "READ_S", "WRITE_I", "WRITE_R", "WRITE_B", "WRITE_S",
+		"JEQ_I", "JNE_I", "JLT_I", "JGE_I", "JGT_I", "JLE_I"
+	};
+
+	// Número de operandos de cada opcode, usado pelo disassembler.
+	private static final int[] OPERANDS = {
+		0, 2,
+		3, 3, 3, 3, 3, 3, 3, 3, 3, 3,
+		3, 3, 3, 3, 3, 3, 3, 3, 3,
+		2, 2, 2, 2,
+		1, 2, 2,
+		1, 1, 1, 1, 1, 1, 1, 1,
+		3, 3, 3, 3, 3, 3
+	};
+
+	public static String name(int op) {
+		return NAMES[op];
+	}
+
+	public static int operands(int op) {
+		return OPERANDS[op];
+	}
+
+}
@@ -0,0 +1,269 @@
+package code.vm;
+
+import static code.vm.Opcode.*;
+
+import java.util.Scanner;
+
+import code.StringHeap;
+import driver.CompileError;
+import tables.StrTable;
+
+/*
+ * Máquina virtual de registradores que executa o bytecode gerado
+ * pelo BytecodeCompiler. É um substituto mais rápido para o
+ * Interpreter: a saída tem de ser exatamente a mesma.
+ *
+ * Todo o estado da execução fica em variáveis locais do laço de
+ * despacho (vetor de código, registradores e pc), para que a JVM
+ * consiga mantê-los em registradores da máquina.
+ *
+ * As strings criadas na execução ficam num StringHeap, como no
+ * Interpreter. Todo valor vivo está num registrador, então antes de
+ * criar uma string os registradores são as raízes da coleta.
+ */
+public final class VM {
+
+	private final StringHeap strings; // Strings criadas durante a execução
+	private final Scanner in; // Para leitura de stdin
+
+	public VM(StrTable st) {
+		this.strings = new StringHeap(st);
+		this.in = new Scanner(System.in);
+	}
+
+	public void run(Bytecode bc) {
+		final int[] code = bc.code;
+		final int[] r = bc.newRegisters();
+		int pc = 0;
+
+		// No mundo real esse laço precisa de verificações de erros.
+		for (;;) {
+			switch (code[pc]) {
+				case HALT:
+					in.close(); // Fim do programa, não precisa mais de ler de stdin.
+					return;
+				case MOV:
+					r[code[pc + 1]] = r[code[pc + 2]];
+					pc += 3;
+					break;
+
+				case ADD_I:
+					r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]];
+					pc += 4;
+					break;
+				case SUB_I:
+					r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]];
+					pc += 4;
+					break;
+				case MUL_I:
+					r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]];
+					pc += 4;
+					break;
+				case DIV_I:
+					r[code[pc + 1]] = r[code[pc + 2]] / r[code[pc + 3]];
+					pc += 4;
+					break;
+				case ADD_R:
+					r[code[pc + 1]] = bits(real(r[code[pc + 2]]) + real(r[code[pc + 3]]));
+					pc += 4;
+					break;
+				case SUB_R:
+					r[code[pc + 1]] = bits(real(r[code[pc + 2]]) - real(r[code[pc + 3]]));
+					pc += 4;
+					break;
+				case MUL_R:
+					r[code[pc + 1]] = bits(real(r[code[pc + 2]]) * real(r[code[pc + 3]]));
+					pc += 4;
+					break;
+				case DIV_R:
+					r[code[pc + 1]] = bits(real(r[code[pc + 2]]) / real(r[code[pc + 3]]));
+					pc += 4;
+					break;
+				case OR_B:
+					r[code[pc + 1]] = (r[code[pc + 2]] == 1 || r[code[pc + 3]] == 1) ? 1 : 0;
+					pc += 4;
+					break;
+				case EQ_I:
+					r[code[pc + 1]] = r[code[pc + 2]] == r[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case LT_I:
+					r[code[pc + 1]] = r[code[pc + 2]] < r[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case GT_I:
+					r[code[pc + 1]] = r[code[pc + 2]] > r[code[pc + 3]] ? 1 : 0;
+					pc += 4;
+					break;
+				case EQ_R:
+					r[code[pc + 1]] = real(r[code[pc + 2]]) == real(r[code[pc + 3]]) ? 1 : 0;
+					pc += 4;
+					break;
+				case LT_R:
+					r[code[pc + 1]] = real(r[code[pc + 2]]) < real(r[code[pc + 3]]) ? 1 : 0;
+					pc += 4;
+					break;
+				case GT_R:
+					r[code[pc + 1]] = real(r[code[pc + 2]]) > real(r[code[pc + 3]]) ? 1 : 0;
+					pc += 4;
+					break;
+				case I2R:
+					r[code[pc + 1]] = bits((float) r[code[pc + 2]]);
+					pc += 3;
+					break;
+
+				case JMP:
+					pc = code[pc + 1];
+					break;
+				case JT:
+					pc = r[code[pc + 1]] == 1 ? code[pc + 2] : pc + 3;
+					break;
+				case JF:
+					pc = r[code[pc + 1]] != 1 ? code[pc + 2] : pc + 3;
+					break;
+				case JEQ_I:
+					pc = r[code[pc + 1]] == r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case JNE_I:
+					pc = r[code[pc + 1]] != r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case JLT_I:
+					pc = r[code[pc + 1]] < r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case JGE_I:
+					pc = r[code[pc + 1]] >= r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case JGT_I:
+					pc = r[code[pc + 1]] > r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+				case JLE_I:
+					pc = r[code[pc + 1]] <= r[code[pc + 2]] ? code[pc + 3] : pc + 4;
+					break;
+
+				default:
+					pc = runSlow(code, r, pc);
+			}
+		}
+	}
+
+	// Instruções de strings e de entrada e saída ficam fora do laço
+	// principal para que ele fique pequeno e a JIT o compile melhor.
+	// Retorna o pc da próxima instrução.
+	private int runSlow(int[] code, int[] r, int pc) {
+		switch (code[pc]) {
+			case CAT_S:
+				r[code[pc + 1]] = concat(r, r[code[pc + 2]], r[code[pc + 3]]);
+				pc += 4;
+				break;
+
+			case EQ_S:
+				r[code[pc + 1]] = strings.equal(r[code[pc + 2]], r[code[pc + 3]]) ? 1 : 0;
+				pc += 4;
+				break;
+			case LT_S:
+				r[code[pc + 1]] = strings.compare(r[code[pc + 2]], r[code[pc + 3]]) < 0 ? 1 : 0;
+				pc += 4;
+				break;
+			case GT_S:
+				r[code[pc + 1]] = strings.compare(r[code[pc + 2]], r[code[pc + 3]]) > 0 ? 1 : 0;
+				pc += 4;
+				break;
+
+			case I2S:
+				r[code[pc + 1]] = newStr(r, Integer.toString(r[code[pc + 2]]));
+				pc += 3;
+				break;
+			case R2S:
+				r[code[pc + 1]] = newStr(r, Float.toString(real(r[code[pc + 2]])));
+				pc += 3;
+				break;
+			case B2S:
+				r[code[pc + 1]] = newStr(r, r[code[pc + 2]] == 0 ? "false" : "true");
+				pc += 3;
+				break;
+
+			case READ_I:
+				System.out.printf("read (int): ");
+				r[code[pc + 1]] = in.nextInt();
+				pc += 2;
+				break;
+			case READ_R:
+				System.out.printf("read (real): ");
+				r[code[pc + 1]] = bits(in.nextFloat());
+				pc += 2;
+				break;
+			case READ_B:
+				r[code[pc + 1]] = readBool();
+				pc += 2;
+				break;
+			case READ_S:
+				System.out.printf("read (str): ");
+				r[code[pc + 1]] = newString(r, in.next());
+				pc += 2;
+				break;
+			case WRITE_I:
+				System.out.println(r[code[pc + 1]]);
+				pc += 2;
+				break;
+			case WRITE_R:
+				System.out.println(real(r[code[pc + 1]]));
+				pc += 2;
+				break;
+			case WRITE_B:
+				System.out.println(r[code[pc + 1]] == 0 ? "false" : "true");
+				pc += 2;
+				break;
+			case WRITE_S:
+				System.out.print(strings.unescaped(r[code[pc + 1]]));
+				pc += 2;
+				break;
+
+			default:
+				System.err.printf("Invalid opcode: %d at %d!\n", code[pc], pc);
+				throw new CompileError();
+		}
+		return pc;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------ Auxiliares ----------------------------------
+
+	private static float real(int word) {
+		return Float.intBitsToFloat(word);
+	}
+
+	private static int bits(float value) {
+		return Float.floatToRawIntBits(value);
+	}
+
+	private int readBool() {
+		int value;
+		do {
+			System.out.printf("read (bool - 0 = false, 1 = true): ");
+			value = in.nextInt();
+		} while (value != 0 && value != 1);
+		return value;
+	}
+
+	// Todas as strings da tabela ficam envoltas por aspas, então na
+	// concatenação tira a última da esquerda e a primeira da direita.
+	private int concat(int[] regs, int l, int r) {
+		String ls = strings.get(l);
+		String rs = strings.get(r);
+		return newString(regs, ls.substring(0, ls.length() - 1) + rs.substring(1));
+	}
+
+	private int newStr(int[] regs, String s) {
+		return newString(regs, "'" + s + "'");
+	}
+
+	// Cria uma string em tempo de execução, recolhendo antes as que já
+	// não estão em nenhum registrador.
+	private int newString(int[] regs, String s) {
+		if (strings.needsCollect()) {
+			strings.collect(regs);
+		}
+		return strings.add(s);
+	}
+
+}
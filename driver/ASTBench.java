@@ -0,0 +1,108 @@
+package driver;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import ast.AST;
+import ast.FlatAST;
+import checker.SemanticChecker;
+import code.Interpreter;
+import parser.pascalLexer;
+import parser.pascalParser;
+import tables.FunctionTable;
+import tables.StrTable;
+import tables.VarTable;
+
+/*
+ * Compara a AST de objetos com a AST compacta (ast.FlatAST) num programa
+ * gerado com o número de comandos pedido: memória ocupada por nó e tempo
+ * do Interpreter percorrendo cada uma.
+ *
+ * A memória é medida pela diferença do heap usado depois de forçar o GC,
+ * então é uma estimativa, mas estável o bastante para programas grandes.
+ */
+public final class ASTBench {
+
+	private static final int RUNS = 5;
+
+	private final int statements;
+
+	public ASTBench(int statements) {
+		this.statements = statements;
+	}
+
+	// Programa com 'n' comandos só com inteiros, para o Interpreter
+	// conseguir executar. Dá em média uns 10 nós da AST por comando.
+	static String program(int n) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("program bench;\n");
+		sb.append("var\n");
+		sb.append("    a, b, c: integer;\n");
+		sb.append("begin\n");
+		sb.append("    a := 0; b := 0; c := 1;\n");
+		for (int i = 0; i < n; i++) {
+			switch (i % 3) {
+				case 0: sb.append("    a := a + ").append(i % 100).append(";\n");             break;
+				case 1: sb.append("    b := a * 2 - c / 3;\n");                                break;
+				case 2: sb.append("    if a < b then c := c + 1 else c := c - 1;\n");          break;
+			}
+		}
+		sb.append("end.\n");
+		return sb.toString();
+	}
+
+	public void run() {
+		pascalLexer lexer = new pascalLexer(CharStreams.fromString(program(statements)));
+		pascalParser parser = new pascalParser(new CommonTokenStream(lexer));
+		SemanticChecker checker = new SemanticChecker();
+		checker.visit(parser.program());
+		StrTable st = checker.st;
+		VarTable vt = checker.vt;
+		FunctionTable ft = checker.ft;
+		AST ast = checker.getAST();
+		lexer = null;
+		parser = null;
+		checker = null;
+
+		long withAST = usedHeap();
+		FlatAST flat = FlatAST.of(ast);
+		long withBoth = usedHeap();
+
+		long astTime = Long.MAX_VALUE;
+		long flatTime = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			new Interpreter(st, vt, ft).execute(ast);
+			astTime = Math.min(astTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			new Interpreter(st, vt, ft).execute(flat);
+			flatTime = Math.min(flatTime, System.nanoTime() - start);
+		}
+
+		ast = null;
+		long withFlat = usedHeap();
+
+		int nodes = flat.size();
+		long astBytes = withBoth - withFlat;
+		long flatBytes = withBoth - withAST;
+		System.out.printf("statements: %d, nodes: %d\n", statements, nodes);
+		System.out.printf("AST:     %d bytes, %.1f bytes/node\n", astBytes, (double) astBytes / nodes);
+		System.out.printf("FlatAST: %d bytes, %.1f bytes/node (arrays: %.1f bytes/node)\n",
+		                  flatBytes, (double) flatBytes / nodes, (double) flat.dataBytes() / nodes);
+		System.out.printf("interp (best of %d): AST %.1f ms, FlatAST %.1f ms\n",
+		                  RUNS, astTime / 1e6, flatTime / 1e6);
+	}
+
+	// Heap em uso depois de algumas coletas seguidas.
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+		}
+		return used;
+	}
+
+}
@@ -0,0 +1,370 @@
+package driver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ast.AST;
+import ast.FlatAST;
+import checker.SemanticChecker;
+import parser.pascalLexer;
+import tables.ArrayTable;
+import tables.FunctionTable;
+import tables.Range;
+import tables.StrTable;
+import tables.VarTable;
+import typing.Type;
+
+/*
+ * Cache em disco da saída do front-end. A chave é um SHA-256 do código
+ * fonte junto com a versão do formato e uma impressão digital do próprio
+ * compilador, então um arquivo .pas que não mudou pula o lexer, o parser
+ * e o SemanticChecker e vai direto para o back-end.
+ *
+ * Cada entrada é um arquivo '<chave>.ast' no diretório do cache:
+ *
+ *   magic 'EZAC', versão do formato, impressão digital (32 bytes),
+ *   chave (32 bytes), StrTable, VarTable, FunctionTable, ArrayTable
+ *   (com todas as dimensões de cada array) e a AST no formato da FlatAST.
+ *
+ * A impressão digital é o SHA-256 dos .class do front-end: todos os
+ * arquivos dos pacotes do parser, do checker, da AST, dos tipos e das
+ * tabelas, inclusive as classes internas e anônimas (NodeKind$1,
+ * Conv$Unif...), e as classes do driver que participam da análise.
+ * Qualquer mudança nelas muda a chave e invalida as entradas antigas.
+ * Mudanças só no formato gravado pedem um FORMAT_VERSION novo.
+ *
+ * A leitura é feita num MappedByteBuffer. Uma entrada que não bate com o
+ * cabeçalho ou está truncada conta como ausente e é regravada.
+ */
+public final class ASTCache {
+
+	private static final int MAGIC = 0x455a4143; // "EZAC"
+	private static final int FORMAT_VERSION = 2;
+
+	// Pacotes cujos .class entram inteiros na impressão digital do
+	// compilador, cada um representado por uma classe dele. Subpacotes
+	// (ast.opt) ficam de fora: rodam depois do cache.
+	private static final Class<?>[] FRONT_END_PACKAGES = {
+		pascalLexer.class, SemanticChecker.class, AST.class, Type.class, ArrayTable.class
+	};
+
+	// Classes de outros pacotes que também entram, com as internas delas.
+	private static final Class<?>[] FRONT_END_CLASSES = {
+		ByteCharStream.class, Parsing.class, Pipeline.class, TokenQueue.class,
+		CheckedProgram.class, ASTCache.class
+	};
+
+	private static final Type[] TYPES = Type.values();
+
+	private static byte[] fingerprint; // Calculada no primeiro uso.
+
+	private final Path dir;
+
+	public ASTCache(Path dir) {
+		this.dir = dir;
+	}
+
+	// Chave do cache para o código fonte dado, em hexadecimal.
+	public String key(byte[] source) {
+		MessageDigest md = sha256();
+		md.update(ByteBuffer.allocate(4).putInt(FORMAT_VERSION).array());
+		md.update(fingerprint());
+		md.update(source);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : md.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	// ----------------------------------------------------------------------------
+	// -------------------------------- Leitura -----------------------------------
+
+	// Programa guardado com essa chave, ou null se não houver (ou se a
+	// entrada não for válida para este compilador).
+	public CheckedProgram load(String key) {
+		Path file = dir.resolve(key + ".ast");
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			return read(in, key);
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException
+		         | IndexOutOfBoundsException e) {
+			return null; // Sem a entrada, ou com uma entrada inválida.
+		}
+	}
+
+	private static CheckedProgram read(ByteBuffer in, String key) {
+		if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION
+		    || !Arrays.equals(bytes(in, 32), fingerprint())
+		    || !Arrays.equals(bytes(in, 32), hexToBytes(key))) {
+			return null;
+		}
+
+		StrTable st = new StrTable();
+		int n = in.getInt();
+		for (int i = 0; i < n; i++) {
+			st.addStr(string(in));
+		}
+
+		VarTable vt = readVarTable(in, new VarTable());
+
+		// O construtor já cria o Readln e o Writeln, que vêm primeiro.
+		FunctionTable ft = new FunctionTable();
+		n = in.getInt();
+		for (int i = 0; i < n; i++) {
+			String name = string(in);
+			int line = in.getInt();
+			Type type = type(in);
+			int nParams = in.getInt();
+			ArrayList<Type> params = null;
+			if (nParams >= 0) {
+				params = new ArrayList<Type>();
+				for (int j = 0; j < nParams; j++) {
+					params.add(type(in));
+				}
+			}
+			if (i < 2) {
+				readVarTable(in, ft.getVarTable(i));
+				continue;
+			}
+			ft.addFunction(name, line, type);
+			ft.SetParameterList(params);
+			readVarTable(in, ft.getVarTable(i));
+		}
+
+		ArrayTable at = new ArrayTable();
+		n = in.getInt();
+		for (int i = 0; i < n; i++) {
+			String name = string(in);
+			int line = in.getInt();
+			Type type = type(in);
+			int dims = in.getInt();
+			if (dims < 1) {
+				throw new IllegalArgumentException("Invalid dimensions: " + dims);
+			}
+			int idx = at.addArray(name, line, type, new Range(in.getInt(), in.getInt()));
+			for (int d = 1; d < dims; d++) {
+				at.addRange(idx, new Range(in.getInt(), in.getInt()));
+			}
+		}
+
+		AST ast = FlatAST.read(in).toAST(FlatAST.ROOT);
+		return new CheckedProgram(ast, st, vt, ft, at);
+	}
+
+	private static VarTable readVarTable(ByteBuffer in, VarTable vt) {
+		int n = in.getInt();
+		for (int i = 0; i < n; i++) {
+			String name = string(in);
+			int line = in.getInt();
+			vt.addVar(name, line, type(in));
+		}
+		return vt;
+	}
+
+	private static String string(ByteBuffer in) {
+		return new String(bytes(in, in.getInt()), StandardCharsets.UTF_8);
+	}
+
+	private static Type type(ByteBuffer in) {
+		return TYPES[in.get()];
+	}
+
+	private static byte[] bytes(ByteBuffer in, int n) {
+		if (n < 0 || n > in.remaining()) {
+			throw new IllegalArgumentException("Invalid length: " + n);
+		}
+		byte[] b = new byte[n];
+		in.get(b);
+		return b;
+	}
+
+	// ----------------------------------------------------------------------------
+	// -------------------------------- Escrita -----------------------------------
+
+	// Guarda o programa com essa chave. O arquivo é escrito ao lado e
+	// renomeado no fim, então quem lê nunca vê uma entrada pela metade.
+	public void store(String key, CheckedProgram p) throws IOException {
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, key, ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+			         new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				write(out, key, p);
+			}
+			Files.move(tmp, dir.resolve(key + ".ast"), StandardCopyOption.REPLACE_EXISTING,
+			           StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static void write(DataOutputStream out, String key, CheckedProgram p) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.write(fingerprint());
+		out.write(hexToBytes(key));
+
+		out.writeInt(p.st.size());
+		for (String s : p.st) {
+			writeString(out, s);
+		}
+
+		writeVarTable(out, p.vt);
+
+		out.writeInt(p.ft.getSize());
+		for (int i = 0; i < p.ft.getSize(); i++) {
+			writeString(out, p.ft.getName(i));
+			out.writeInt(p.ft.getLine(i));
+			out.writeByte(p.ft.getType(i).ordinal());
+			ArrayList<Type> params = p.ft.getParameters(i);
+			out.writeInt(params == null ? -1 : params.size());
+			if (params != null) {
+				for (Type t : params) {
+					out.writeByte(t.ordinal());
+				}
+			}
+			writeVarTable(out, p.ft.getVarTable(i));
+		}
+
+		out.writeInt(p.at.getSize());
+		for (int i = 0; i < p.at.getSize(); i++) {
+			writeString(out, p.at.getName(i));
+			out.writeInt(p.at.getLine(i));
+			out.writeByte(p.at.getType(i).ordinal());
+			out.writeInt(p.at.getDimensionSize(i));
+			for (int d = 0; d < p.at.getDimensionSize(i); d++) {
+				Range r = p.at.getRange(i, d);
+				out.writeInt(r.lowerLimit);
+				out.writeInt(r.upperLimit);
+			}
+		}
+
+		FlatAST.of(p.ast).write(out);
+	}
+
+	private static void writeVarTable(DataOutputStream out, VarTable vt) throws IOException {
+		out.writeInt(vt.getSize());
+		for (int i = 0; i < vt.getSize(); i++) {
+			writeString(out, vt.getName(i));
+			out.writeInt(vt.getLine(i));
+			out.writeByte(vt.getType(i).ordinal());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- Auxiliares ---------------------------------
+
+	// SHA-256 do bytecode das classes do front-end.
+	private static synchronized byte[] fingerprint() {
+		if (fingerprint == null) {
+			MessageDigest md = sha256();
+			for (Class<?> c : FRONT_END_PACKAGES) {
+				digest(md, c, true);
+			}
+			for (Class<?> c : FRONT_END_CLASSES) {
+				digest(md, c, false);
+			}
+			fingerprint = md.digest();
+		}
+		return fingerprint;
+	}
+
+	// Passa para o 'md' o nome e o conteúdo dos .class ao lado do de 'c',
+	// em ordem de nome: todos do pacote, ou só 'c' e as internas dela.
+	private static void digest(MessageDigest md, Class<?> c, boolean wholePackage) {
+		String self = c.getSimpleName() + ".class";
+		String nested = c.getSimpleName() + "$";
+		List<Path> files;
+		try (Stream<Path> dir = Files.list(classFile(c).getParent())) {
+			files = dir.filter(f -> {
+				String name = f.getFileName().toString();
+				return name.endsWith(".class")
+				       && (wholePackage || name.equals(self) || name.startsWith(nested));
+			}).sorted().collect(Collectors.toList());
+		} catch (IOException | URISyntaxException | RuntimeException e) {
+			// Sem como listar o diretório: fica só a própria classe.
+			md.update(c.getName().getBytes(StandardCharsets.UTF_8));
+			try (InputStream in = c.getResourceAsStream(self)) {
+				if (in != null) {
+					md.update(in.readAllBytes());
+				}
+			} catch (IOException e2) {
+				// Fica só o nome da classe.
+			}
+			return;
+		}
+		for (Path f : files) {
+			md.update(f.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+			try {
+				md.update(Files.readAllBytes(f));
+			} catch (IOException e) {
+				// Fica só o nome do arquivo.
+			}
+		}
+	}
+
+	// Caminho do .class de 'c', num diretório ou dentro de um jar.
+	private static Path classFile(Class<?> c) throws IOException, URISyntaxException {
+		URL url = c.getResource(c.getSimpleName() + ".class");
+		if (url == null) {
+			throw new IOException("No class file for " + c.getName());
+		}
+		URI uri = url.toURI();
+		if (uri.getScheme().equals("jar")) {
+			try {
+				FileSystems.newFileSystem(uri, Map.of());
+			} catch (FileSystemAlreadyExistsException e) {
+				// Já aberto por outra chamada.
+			}
+		}
+		return Path.of(uri);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // Toda JVM tem SHA-256.
+		}
+	}
+
+	private static byte[] hexToBytes(String hex) {
+		byte[] b = new byte[hex.length() / 2];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return b;
+	}
+
+}
@@ -0,0 +1,153 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Compilação em lote: compila vários arquivos .pas ao mesmo tempo num
+ * pool com um número fixo de threads. Cada compilação tem o seu próprio
+ * SemanticChecker e CodeGen, e a sua saída é capturada separadamente
+ * (veja Capture), indo para '<outDir>/<nome>.ll'. Todas usam as mesmas
+ * opções da linha de comando, então um arquivo sai igual ao que sairia
+ * compilado sozinho.
+ *
+ * Dois arquivos de diretórios diferentes com o mesmo nome gravariam o
+ * mesmo .ll; só o primeiro é compilado e os outros contam como erro.
+ *
+ * O relatório sai na ordem dos arquivos de entrada, não na ordem em que
+ * as compilações terminam, então é sempre o mesmo de uma execução para
+ * outra.
+ */
+public final class Batch {
+
+	private final Path outDir;
+	private final int jobs;
+	private final Options options;
+
+	// O lote sempre gera código LLVM, e cada .ll vai para o seu arquivo:
+	// 'options' tem de ter o engine 'llvm' e nenhum arquivo de saída.
+	public Batch(Path outDir, int jobs, Options options) {
+		if (!options.engine.equals("llvm") || options.output != null) {
+			throw new IllegalArgumentException("A batch only writes LLVM code to its output directory");
+		}
+		this.outDir = outDir;
+		this.jobs = jobs;
+		this.options = options;
+	}
+
+	// Resultado de uma compilação do lote.
+	private static final class Result {
+		final int status;
+		final byte[] diagnostics;
+
+		Result(int status, byte[] diagnostics) {
+			this.status = status;
+			this.diagnostics = diagnostics;
+		}
+	}
+
+	// Expande os diretórios da lista nos arquivos .pas que eles contêm,
+	// em ordem alfabética.
+	public static List<Path> expand(List<String> args) throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		for (String arg : args) {
+			Path p = Path.of(arg);
+			if (Files.isDirectory(p)) {
+				try (Stream<Path> s = Files.list(p)) {
+					files.addAll(s.filter(f -> f.toString().endsWith(".pas"))
+					              .sorted()
+					              .collect(Collectors.toList()));
+				}
+			} else {
+				files.add(p);
+			}
+		}
+		return files;
+	}
+
+	// Compila todos os arquivos e retorna o número de falhas.
+	public int run(List<Path> files) throws IOException, InterruptedException {
+		Files.createDirectories(outDir);
+
+		ExecutorService pool = Executors.newFixedThreadPool(jobs);
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		Map<String, Path> owners = new HashMap<String, Path>();
+		for (Path file : files) {
+			String name = llName(file);
+			Path owner = owners.putIfAbsent(name, file);
+			if (owner != null) {
+				String msg = String.format("Output file %s is already used by %s\n", name, owner);
+				results.add(CompletableFuture.completedFuture(new Result(Compilation.ERROR, msg.getBytes())));
+			} else {
+				results.add(pool.submit(() -> compile(file)));
+			}
+		}
+		pool.shutdown();
+
+		int failures = 0;
+		for (int i = 0; i < files.size(); i++) {
+			Result r;
+			try {
+				r = results.get(i).get();
+			} catch (Exception e) {
+				// Não deveria acontecer, compile() já trata os erros.
+				r = new Result(Compilation.ERROR, String.valueOf(e).getBytes());
+			}
+			System.out.printf("%s: %s\n", files.get(i), describe(r.status));
+			System.err.write(r.diagnostics);
+			System.err.flush();
+			if (r.status != Compilation.OK) {
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	private Result compile(Path file) throws IOException {
+		ByteArrayOutputStream outBuf = new ByteArrayOutputStream();
+		ByteArrayOutputStream errBuf = new ByteArrayOutputStream();
+		int status;
+		try {
+			status = Capture.run(() -> Compilation.runFile(file.toString(), options), outBuf, errBuf);
+		} catch (Exception e) {
+			e.printStackTrace(new PrintStream(errBuf, true));
+			status = Compilation.ERROR;
+		}
+
+		// Só grava o .ll de quem compilou sem erros.
+		if (status == Compilation.OK) {
+			Files.write(outDir.resolve(llName(file)), outBuf.toByteArray());
+		}
+		return new Result(status, errBuf.toByteArray());
+	}
+
+	private static String llName(Path file) {
+		String name = file.getFileName().toString();
+		if (name.endsWith(".pas")) {
+			name = name.substring(0, name.length() - ".pas".length());
+		}
+		return name + ".ll";
+	}
+
+	private static String describe(int status) {
+		switch (status) {
+			case Compilation.OK:           return "ok";
+			case Compilation.SYNTAX_ERROR: return "syntax error";
+			default:                       return "error";
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+package driver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/*
+ * CharStream que lê os caracteres direto de um ByteBuffer, um byte por
+ * caractere. O CharStreams.fromFileName do ANTLR decodifica o arquivo
+ * inteiro para um array de code points (4 bytes por caractere) antes do
+ * lexer começar; aqui o arquivo é mapeado na memória e, se for todo
+ * ASCII, o lexer lê do próprio mapeamento, sem cópia nenhuma.
+ *
+ * Só ASCII pode ser lido assim, porque aí cada byte é um code point. Se
+ * aparecer algum byte acima de 127 o conteúdo é decodificado como UTF-8,
+ * do mesmo jeito que o fromFileName faria, e o stream é o do ANTLR.
+ *
+ * O comportamento nos limites (LA fora da entrada, getText com intervalo
+ * além do fim, consumir o EOF) é o mesmo do CodePointCharStream.
+ */
+public final class ByteCharStream implements CharStream {
+
+	private final ByteBuffer bytes;
+	private final int size;
+	private final String name;
+	private int position;
+
+	private ByteCharStream(ByteBuffer bytes, String name) {
+		this.bytes = bytes;
+		this.size = bytes.limit();
+		this.name = name;
+	}
+
+	// Mapeia o arquivo e retorna o stream dele.
+	public static CharStream fromFileName(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("File too large: " + fileName);
+			}
+			// O mapeamento continua válido depois de fechar o canal.
+			return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, length), fileName);
+		} catch (InvalidPathException e) {
+			throw new IOException(e);
+		}
+	}
+
+	// Stream de um arquivo que já foi lido para a memória.
+	public static CharStream fromBytes(byte[] source, String name) {
+		return of(ByteBuffer.wrap(source), name);
+	}
+
+	private static CharStream of(ByteBuffer bytes, String name) {
+		if (isAscii(bytes)) {
+			return new ByteCharStream(bytes, name);
+		}
+		return CharStreams.fromString(StandardCharsets.UTF_8.decode(bytes).toString(), name);
+	}
+
+	// Procura um byte com o bit mais alto ligado, oito bytes por vez.
+	private static boolean isAscii(ByteBuffer bytes) {
+		int n = bytes.limit();
+		int i = 0;
+		for (; i + 8 <= n; i += 8) {
+			if ((bytes.getLong(i) & 0x8080808080808080L) != 0) {
+				return false;
+			}
+		}
+		for (; i < n; i++) {
+			if (bytes.get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- IntStream ----------------------------------
+
+	@Override
+	public void consume() {
+		if (position >= size) {
+			assert LA(1) == IntStream.EOF;
+			throw new IllegalStateException("cannot consume EOF");
+		}
+		position++;
+	}
+
+	@Override
+	public int LA(int i) {
+		int offset;
+		if (i > 0) {
+			offset = position + i - 1;
+		} else if (i < 0) {
+			offset = position + i;
+		} else {
+			return 0; // Indefinido.
+		}
+		if (offset < 0 || offset >= size) {
+			return IntStream.EOF;
+		}
+		return bytes.get(offset);
+	}
+
+	// A entrada inteira está na memória, então marcas não precisam de nada.
+	@Override
+	public int mark() {
+		return -1;
+	}
+
+	@Override
+	public void release(int marker) {
+	}
+
+	@Override
+	public int index() {
+		return position;
+	}
+
+	@Override
+	public void seek(int index) {
+		position = index;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String getSourceName() {
+		if (name == null || name.isEmpty()) {
+			return IntStream.UNKNOWN_SOURCE_NAME;
+		}
+		return name;
+	}
+
+	// ----------------------------------------------------------------------------
+	// ------------------------------- CharStream ---------------------------------
+
+	@Override
+	public String getText(Interval interval) {
+		int start = Math.min(interval.a, size);
+		int length = Math.min(interval.b - interval.a + 1, size - start);
+		if (length <= 0) {
+			return "";
+		}
+		byte[] text = new byte[length];
+		bytes.get(start, text);
+		return new String(text, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public String toString() {
+		return getText(Interval.of(0, size - 1));
+	}
+
+}
@@ -0,0 +1,80 @@
+package driver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+
+/*
+ * Captura da saída de uma compilação.
+ *
+ * O compilador escreve direto em System.out (o .ll) e em System.err (os
+ * diagnósticos) de vários lugares. Para rodar várias compilações na
+ * mesma JVM, inclusive ao mesmo tempo, System.out e System.err são
+ * trocados uma única vez por streams que repassam cada escrita para o
+ * destino escolhido pela thread atual. Threads que não estão capturando
+ * nada continuam escrevendo na saída original.
+ */
+public final class Capture {
+
+	private static ThreadOutput out;
+	private static ThreadOutput err;
+
+	private Capture() {}
+
+	private static synchronized void install() {
+		if (out == null) {
+			out = new ThreadOutput(System.out);
+			err = new ThreadOutput(System.err);
+			System.setOut(new PrintStream(out, true));
+			System.setErr(new PrintStream(err, true));
+		}
+	}
+
+	// Roda 'task' na thread atual com System.out desviado para 'o' e
+	// System.err desviado para 'e', e retorna o resultado de 'task'.
+	public static <T> T run(Callable<T> task, OutputStream o, OutputStream e) throws Exception {
+		install();
+		out.target.set(o);
+		err.target.set(e);
+		try {
+			return task.call();
+		} finally {
+			System.out.flush();
+			System.err.flush();
+			out.target.remove();
+			err.target.remove();
+		}
+	}
+
+	// Stream que escreve no destino da thread atual, se houver.
+	private static final class ThreadOutput extends OutputStream {
+		private final OutputStream fallback;
+		private final ThreadLocal<OutputStream> target = new ThreadLocal<OutputStream>();
+
+		ThreadOutput(OutputStream fallback) {
+			this.fallback = fallback;
+		}
+
+		private OutputStream current() {
+			OutputStream t = target.get();
+			return t != null ? t : fallback;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			current().write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			current().write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			current().flush();
+		}
+	}
+
+}
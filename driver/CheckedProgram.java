@@ -0,0 +1,34 @@
+package driver;
+
+import ast.AST;
+import checker.SemanticChecker;
+import tables.ArrayTable;
+import tables.FunctionTable;
+import tables.StrTable;
+import tables.VarTable;
+
+/*
+ * Saída do front-end: a AST já verificada e as tabelas que os back-ends
+ * usam. Vem do SemanticChecker ou do cache em disco (veja ASTCache).
+ */
+public final class CheckedProgram {
+
+	public final AST ast;
+	public final StrTable st;
+	public final VarTable vt;
+	public final FunctionTable ft;
+	public final ArrayTable at;
+
+	public CheckedProgram(AST ast, StrTable st, VarTable vt, FunctionTable ft, ArrayTable at) {
+		this.ast = ast;
+		this.st = st;
+		this.vt = vt;
+		this.ft = ft;
+		this.at = at;
+	}
+
+	public static CheckedProgram of(SemanticChecker checker) {
+		return new CheckedProgram(checker.getAST(), checker.st, checker.vt, checker.ft, checker.at);
+	}
+
+}
@@ -0,0 +1,265 @@
+package driver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import ast.AST;
+import ast.FlatAST;
+import ast.opt.ConstantFolder;
+import ast.opt.Quickener;
+import checker.SemanticChecker;
+import code.CodeGen;
+import code.IRWriter;
+import code.Interpreter;
+import code.closure.ClosureCompiler;
+import code.jit.AotCompiler;
+import code.jit.JitCompiler;
+import code.jit.OsrCompiler;
+import code.vm.Bytecode;
+import code.vm.BytecodeCompiler;
+import code.vm.VM;
+import parser.pascalLexer;
+import parser.pascalParser;
+
+/*
+ * Uma compilação de um programa: front-end (lexer, parser e analisador
+ * semântico) seguido do back-end escolhido. Fica separada da Main para
+ * poder ser chamada várias vezes na mesma JVM, como faz o Daemon.
+ */
+public final class Compilation {
+
+	// Resultados possíveis de uma compilação.
+	public static final int OK = 0;
+	public static final int ERROR = 1;
+	public static final int SYNTAX_ERROR = 2;
+
+	// Arquivo do '--engine=jar' quando não há '-o'.
+	private static final String DEFAULT_JAR = "program.jar";
+
+	private Compilation() {}
+
+	// Mesmo que 'run', mas lendo o programa do arquivo dado.
+	public static int runFile(String fileName, String engine) {
+		return runFile(fileName, new Options(engine));
+	}
+
+	public static int runFile(String fileName, Options options) {
+		if (options.cache != null) {
+			return runCached(fileName, options);
+		}
+		CharStream input;
+		try {
+			// Cria um CharStream que lê os caracteres de um arquivo.
+			// Em vez do CharStreams.fromFileName do ANTLR, que copia tudo
+			// para um array de code points, o arquivo é mapeado na memória
+			// e lido direto de lá quando é ASCII. Veja ByteCharStream.
+			input = ByteCharStream.fromFileName(fileName);
+		} catch (IOException e) {
+			System.err.printf("Cannot read file: %s\n", fileName);
+			return ERROR;
+		}
+		return run(input, options);
+	}
+
+	// Com o cache ligado, um arquivo que já foi compilado antes (pelo
+	// mesmo compilador) pula o front-end inteiro. Veja ASTCache.
+	private static int runCached(String fileName, Options options) {
+		byte[] source;
+		try {
+			source = Files.readAllBytes(Path.of(fileName));
+		} catch (IOException | InvalidPathException e) {
+			System.err.printf("Cannot read file: %s\n", fileName);
+			return ERROR;
+		}
+		ASTCache cache = new ASTCache(options.cache);
+		String key = cache.key(source);
+		CheckedProgram program = cache.load(key);
+		if (program != null) {
+			return execute(program, options);
+		}
+		CharStream input = ByteCharStream.fromBytes(source, fileName);
+		return run(input, options, cache, key);
+	}
+
+	public static int run(CharStream input, String engine) {
+		return run(input, new Options(engine));
+	}
+
+	// Compila (ou executa, conforme o 'engine') o programa lido de 'input'.
+	// As mensagens de erro são impressas no caminho, como sempre.
+	public static int run(CharStream input, Options options) {
+		return run(input, options, null, null);
+	}
+
+	// Com 'cache', o resultado do front-end é guardado com a chave 'key'.
+	private static int run(CharStream input, Options options, ASTCache cache, String key) {
+		// Cria um lexer que consome a entrada do CharStream.
+		pascalLexer lexer = new pascalLexer(input);
+		ErrorCounter lexerErrors = new ErrorCounter();
+		lexer.addErrorListener(lexerErrors);
+		
+		try {
+			SemanticChecker checker = frontEnd(lexer, options);
+			if (checker == null) {
+				// Houve algum erro sintático. Termina a compilação aqui.
+				return SYNTAX_ERROR;
+			}
+			// checker.printTables();
+			// checker.printAST();
+			CheckedProgram program = CheckedProgram.of(checker);
+			if (cache != null && lexerErrors.count == 0) {
+				// Só programas sem nenhum aviso vão para o cache, já que uma
+				// entrada lida de lá não passa pelo lexer para repetir os avisos.
+				// Grava antes de executar, para a entrada valer mesmo se a execução der erro.
+				try {
+					cache.store(key, program);
+				} catch (IOException e) {
+					System.err.printf("Cannot write cache: %s\n", e.getMessage());
+				}
+			}
+			return execute(program, options);
+		} catch (CompileError e) {
+			// A mensagem já foi impressa por quem achou o erro.
+			return ERROR;
+		}
+	}
+
+	// Parsing e análise semântica. Retorna o analisador, com a AST e as
+	// tabelas, ou null se houve erro sintático.
+	private static SemanticChecker frontEnd(pascalLexer lexer, Options options) {
+		if (options.pipeline) {
+			// Lexer, parser e analisador ao mesmo tempo, em threads separadas.
+			return new Pipeline(lexer, options.sllFirst).run();
+		}
+
+		// Cria um buffer de tokens vindos do lexer.
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		
+		// Cria um parser que consome os tokens do buffer.
+		pascalParser parser = new pascalParser(tokens);
+		
+		// Começa o processo de parsing na regra 'program', primeiro em SLL.
+		ParseTree tree = Parsing.program(parser, options.sllFirst);
+		
+		if (parser.getNumberOfSyntaxErrors() != 0) {
+			return null;
+		}
+
+		// Cria o analisador semântico e visita a ParseTree para fazer a análise.
+		SemanticChecker checker = new SemanticChecker();
+		checker.visit(tree);
+		return checker;
+	}
+
+	// Back-end: executa ou gera o código do programa já verificado.
+	private static int execute(CheckedProgram program, Options options) {
+		try {
+			AST ast = program.ast;
+
+			if (options.optimize) {
+				// Dobra e propaga constantes na AST antes de executar ou gerar código.
+				ConstantFolder folder = new ConstantFolder(program.vt);
+				ast = folder.run(ast);
+				System.err.print(folder.report());
+			}
+
+			// Saída final. Se chegou até aqui é porque não houve erro.
+			switch (options.engine) {
+				case "interp":
+					// Executa o interpretador de código, com os nós especializados pelo tipo.
+					ast = new Quickener().run(ast);
+					Interpreter interpreter = new Interpreter(program.st, program.vt, program.ft, null, options.interactive);
+					if (options.flat) {
+						interpreter.execute(FlatAST.of(ast));
+					} else {
+						interpreter.execute(ast);
+					}
+					break;
+				case "tiered": {
+					// Começa no Interpreter e passa os repeat quentes para bytecode da JVM.
+					ast = new Quickener().run(ast);
+					OsrCompiler osr = new OsrCompiler(program.st, program.vt, options.tierThreshold);
+					Interpreter tiered = new Interpreter(program.st, program.vt, program.ft, osr, options.interactive);
+					try {
+						if (options.flat) {
+							tiered.execute(FlatAST.of(ast));
+						} else {
+							tiered.execute(ast);
+						}
+					} finally {
+						osr.shutdown();
+						if (options.tierStats) {
+							System.err.print(osr.report());
+						}
+					}
+					break;
+				}
+				case "vm":
+					// Traduz a AST para bytecode e executa na VM.
+					Bytecode bc = new BytecodeCompiler(program.vt).compile(ast);
+					new VM(program.st).run(bc);
+					break;
+				case "closure":
+					// Traduz a AST para uma árvore de closures e executa.
+					ClosureCompiler closures = new ClosureCompiler(program.st, program.vt);
+					closures.run(closures.compile(ast));
+					break;
+				case "jit":
+					// Traduz a AST para bytecode da JVM numa classe oculta e executa.
+					new JitCompiler(program.st, program.vt).run(ast);
+					break;
+				case "jar": {
+					// Gera um .jar executável com o bytecode do programa.
+					Path jar = options.output == null ? Path.of(DEFAULT_JAR) : options.output;
+					try {
+						new AotCompiler(program.st, program.vt).write(ast, jar);
+					} catch (IOException e) {
+						System.err.printf("Cannot write file: %s\n", jar);
+						return ERROR;
+					}
+					break;
+				}
+				case "llvm":
+					// Executa o gerador de código.
+					Path output = options.output;
+					try (IRWriter out = output == null ? IRWriter.toStdout() : IRWriter.toFile(output)) {
+						CodeGen codeGen = new CodeGen(program.st, program.vt, program.ft, out, options.ssa);
+						codeGen.execute(ast);
+					} catch (IOException | UncheckedIOException e) {
+						System.err.printf("Cannot write file: %s\n", output == null ? "stdout" : output);
+						return ERROR;
+					}
+					break;
+				default:
+					System.err.printf("Unknown engine: %s!\n", options.engine);
+					return ERROR;
+			}
+		} catch (CompileError e) {
+			// A mensagem já foi impressa por quem achou o erro.
+			return ERROR;
+		}
+		return OK;
+	}
+
+	// Conta os erros do lexer, que não entram no getNumberOfSyntaxErrors do parser.
+	private static final class ErrorCounter extends BaseErrorListener {
+		int count;
+
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+		                        int line, int charPositionInLine, String msg, RecognitionException e) {
+			count++;
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package driver;
+
+/*
+ * Erro que interrompe a compilação atual.
+ *
+ * Quem encontra o erro imprime a mensagem e lança esta exceção no
+ * lugar de chamar System.exit(1) direto. Assim quem roda a compilação
+ * decide o que fazer: a Main termina o processo, como antes, e o
+ * Daemon só reporta a falha e continua atendendo os próximos pedidos.
+ */
+@SuppressWarnings("serial")
+public final class CompileError extends RuntimeException {
+
+	public CompileError() {
+		// A mensagem já foi impressa e a pilha não interessa a ninguém.
+		super(null, null, false, false);
+	}
+
+}
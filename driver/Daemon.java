@@ -0,0 +1,108 @@
+package driver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Modo daemon do compilador: fica rodando e atende vários pedidos de
+ * compilação na mesma JVM. Com isso o custo de subir a JVM, carregar
+ * as classes do parser e deserializar o ATN é pago uma vez só, e o
+ * cache de DFA do ANTLR (estático no pascalParser) continua quente de
+ * um pedido para o outro.
+ *
+ * Protocolo, o mesmo na stdin/stdout e no socket Unix:
+ *  - Pedido: uma linha com o caminho do arquivo .pas. Uma linha 'quit'
+ *    ou o fim da entrada encerram a sessão.
+ *  - Resposta: uma linha '<status> <n> <m>', seguida de n bytes com a
+ *    saída da compilação (o .ll) e de m bytes com os diagnósticos.
+ *    O status é o mesmo de Compilation (0 = ok, 1 = erro, 2 = erro
+ *    sintático).
+ *
+ * Os pedidos de uma sessão são atendidos um de cada vez, na ordem, e
+ * todos com as opções da linha de comando do daemon ('--ssa', '-O'...).
+ */
+public final class Daemon {
+
+	private final Options options;
+
+	// O daemon sempre gera código LLVM e o devolve na resposta: 'options'
+	// tem de ter o engine 'llvm' e nenhum arquivo de saída.
+	public Daemon(Options options) {
+		if (!options.engine.equals("llvm") || options.output != null) {
+			throw new IllegalArgumentException("The daemon only returns LLVM code in its responses");
+		}
+		this.options = options;
+	}
+
+	// Atende os pedidos vindos de 'in' e responde em 'out' até o fim da sessão.
+	public void serve(InputStream in, OutputStream out) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String fileName = line.trim();
+			if (fileName.isEmpty()) {
+				continue;
+			}
+			if (fileName.equals("quit")) {
+				break;
+			}
+			respond(out, fileName);
+		}
+	}
+
+	// Escuta no socket Unix dado, atendendo uma conexão de cada vez.
+	public void listen(Path socketPath) throws IOException {
+		Files.deleteIfExists(socketPath);
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socketPath));
+			for (;;) {
+				try (SocketChannel client = server.accept()) {
+					serve(Channels.newInputStream(client), Channels.newOutputStream(client));
+				} catch (IOException e) {
+					// Cliente caiu no meio da sessão. Segue para o próximo.
+					System.err.printf("daemon: %s\n", e.getMessage());
+				}
+			}
+		} finally {
+			Files.deleteIfExists(socketPath);
+		}
+	}
+
+	private void respond(OutputStream out, String fileName) throws IOException {
+		ByteArrayOutputStream outBuf = new ByteArrayOutputStream();
+		ByteArrayOutputStream errBuf = new ByteArrayOutputStream();
+		int status = compile(fileName, outBuf, errBuf);
+
+		byte[] header = String.format("%d %d %d\n", status, outBuf.size(), errBuf.size())
+		                      .getBytes(StandardCharsets.UTF_8);
+		out.write(header);
+		outBuf.writeTo(out);
+		errBuf.writeTo(out);
+		out.flush();
+	}
+
+	// Compila um arquivo com System.out e System.err desviados para os buffers.
+	private int compile(String fileName, ByteArrayOutputStream outBuf, ByteArrayOutputStream errBuf) {
+		try {
+			return Capture.run(() -> Compilation.runFile(fileName, options), outBuf, errBuf);
+		} catch (Exception e) {
+			// Qualquer outro problema derruba só este pedido, não o daemon.
+			e.printStackTrace(new PrintStream(errBuf, true, StandardCharsets.UTF_8));
+			return Compilation.ERROR;
+		}
+	}
+
+}
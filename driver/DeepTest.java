@@ -0,0 +1,230 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import ast.AST;
+import ast.FlatAST;
+import ast.opt.Quickener;
+import checker.SemanticChecker;
+import code.CodeGen;
+import code.IRWriter;
+import code.Interpreter;
+import parser.pascalLexer;
+import parser.pascalParser;
+
+/*
+ * Teste de regressão das árvores fundas. Gera dois programas com
+ * 'depth' níveis e passa cada um pelas etapas que não recursam na
+ * árvore: front-end, Quickener, Interpreter (AST e FlatAST), CodeGen
+ * (com e sem SSA) e a saída em DOT.
+ *
+ *  - Uma expressão de 'depth' operadores encadeados ('a + c - a + c
+ *    ...'), que vira uma AST com 'depth' níveis de operadores.
+ *  - Uma cadeia de 'depth' 'else if' ('if a = 0 then ... else if a = 1
+ *    then ...'), que vira 'depth' IF_NODEs aninhados.
+ *
+ * Tudo roda na thread atual, com a pilha padrão da JVM. Uma dessas
+ * etapas que volte a visitar a árvore recursivamente estoura a pilha e o
+ * teste falha.
+ *
+ * O ast.opt (-O) e os engines vm, closure, jit, tiered e jar ainda
+ * descem recursivamente em cada operador e em cada 'if' e não estão
+ * aqui: com uma cadeia de uns 100 mil níveis eles estouram a pilha.
+ *
+ * Outros comandos aninhados ('if' no 'then' de outro 'if', 'begin'
+ * dentro de 'begin') continuam recursivos em todas as etapas, a começar
+ * pelo parser do ANTLR, que gasta alguns frames por nível; um programa
+ * com milhares deles ainda estoura a pilha, e por isso essa forma não
+ * está aqui.
+ *
+ * Com um milhão de níveis, a árvore do ANTLR da cadeia de 'else if' tem
+ * uns 2,5 GB mesmo aparada (setTrimParseTree), mais que o heap padrão da
+ * JVM em muitas máquinas; o 'make deep' roda com -Xmx3g.
+ */
+public final class DeepTest {
+
+	private final int depth;
+	private int failures;
+
+	public DeepTest(int depth) {
+		this.depth = depth;
+	}
+
+	// Programa com a expressão de 'depth' operadores.
+	static String program(int depth) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("program deep;\n");
+		sb.append("var\n");
+		sb.append("    a, b, c: integer;\n");
+		sb.append("begin\n");
+		sb.append("    a := 3;\n");
+		sb.append("    c := 5;\n");
+		sb.append("    b := a");
+		for (int i = 1; i <= depth; i++) {
+			sb.append(i % 2 == 1 ? " + c" : " - a");
+			if (i % 16 == 0) {
+				sb.append("\n        ");
+			}
+		}
+		sb.append(";\n");
+		sb.append("    Writeln(b);\n");
+		sb.append("end.\n");
+		return sb.toString();
+	}
+
+	// O que o programa escreve, com a mesma associação à esquerda.
+	private static String expected(int depth) {
+		int b = 3;
+		for (int i = 1; i <= depth; i++) {
+			b = i % 2 == 1 ? b + 5 : b - 3;
+		}
+		return b + "\n";
+	}
+
+	// Programa com uma cadeia de 'depth' 'else if'. Nenhum teste é
+	// verdadeiro, então o Interpreter passa pela cadeia toda até o 'else'
+	// do fim. Os testes são só uma variável, e não 'a = i', porque a
+	// árvore do ANTLR para cada nível já é grande: com um milhão deles
+	// ela é a maior parte da memória do teste.
+	static String elseIfProgram(int depth) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("program deepif;\n");
+		sb.append("var\n");
+		sb.append("    b: integer;\n");
+		sb.append("    f: boolean;\n");
+		sb.append("begin\n");
+		sb.append("    f := false;\n");
+		sb.append("    b := 0;\n");
+		sb.append("    ");
+		for (int i = 0; i < depth; i++) {
+			sb.append("if f then b := ").append(i).append("\n    else ");
+		}
+		sb.append("b := ").append(depth).append(";\n");
+		sb.append("    Writeln(b);\n");
+		sb.append("end.\n");
+		return sb.toString();
+	}
+
+	// Roda todas as etapas nos dois programas e retorna quantas falharam.
+	public int run() {
+		failures = 0;
+		System.out.printf("depth: %d\n", depth);
+		System.out.printf("operator chain:\n");
+		run(program(depth), expected(depth));
+		System.out.printf("else if chain:\n");
+		run(elseIfProgram(depth), depth + "\n");
+		System.out.printf("%s\n", failures == 0 ? "ok" : failures + " stage(s) failed");
+		return failures;
+	}
+
+	private void run(String source, String want) {
+		SemanticChecker checker = stage("front-end", () -> {
+			pascalLexer lexer = new pascalLexer(CharStreams.fromString(source));
+			pascalParser parser = new pascalParser(new CommonTokenStream(lexer));
+			parser.setTrimParseTree(true); // Listas de filhos sem folga.
+			SemanticChecker c = new SemanticChecker();
+			c.visit(Parsing.program(parser, true));
+			return parser.getNumberOfSyntaxErrors() == 0 ? c : null;
+		});
+		if (checker == null) {
+			return;
+		}
+		AST ast = checker.getAST();
+
+		AST quick = stage("quickener", () -> new Quickener().run(ast));
+		if (quick != null) {
+			stage("interp", () -> {
+				String out = capture(() -> new Interpreter(checker.st, checker.vt, checker.ft).execute(quick));
+				return out.equals(want) ? out : null;
+			});
+			FlatAST flat = stage("flat", () -> FlatAST.of(quick));
+			if (flat != null) {
+				stage("interp --flat", () -> {
+					String out = capture(() -> new Interpreter(checker.st, checker.vt, checker.ft).execute(flat));
+					return out.equals(want) ? out : null;
+				});
+			}
+		}
+		stage("llvm", () -> emit(checker, ast, false));
+		stage("llvm --ssa", () -> emit(checker, ast, true));
+		stage("dot", () -> {
+			CountingStream dot = new CountingStream();
+			Capture.run(() -> {
+				AST.printDot(ast, checker.vt, checker.ft);
+				return null;
+			}, OutputStream.nullOutputStream(), dot);
+			return dot.count > 0 ? dot.count : null;
+		});
+	}
+
+	// Roda uma etapa e diz se deu certo. Retorna null se ela falhou.
+	private <T> T stage(String name, Callable<T> task) {
+		long start = System.nanoTime();
+		T result;
+		String error = "wrong result";
+		try {
+			result = task.call();
+		} catch (StackOverflowError e) {
+			result = null;
+			error = "stack overflow";
+		} catch (Exception e) {
+			result = null;
+			error = e.toString();
+		}
+		long ms = (System.nanoTime() - start) / 1000000;
+		if (result == null) {
+			failures++;
+			System.out.printf("  %-14s FAIL (%s)\n", name, error);
+		} else {
+			System.out.printf("  %-14s ok (%d ms)\n", name, ms);
+		}
+		return result;
+	}
+
+	// Saída de um Interpreter, que escreve direto em System.out.
+	private static String capture(Runnable program) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Capture.run(() -> {
+			program.run();
+			return null;
+		}, out, OutputStream.nullOutputStream());
+		return out.toString();
+	}
+
+	// Gera o .ll num arquivo temporário e retorna o tamanho dele.
+	private static Long emit(SemanticChecker checker, AST ast, boolean ssa) throws Exception {
+		Path file = Files.createTempFile("deep", ".ll");
+		try {
+			try (IRWriter out = IRWriter.toFile(file)) {
+				new CodeGen(checker.st, checker.vt, checker.ft, out, ssa).execute(ast);
+			}
+			long size = Files.size(file);
+			return size > 0 ? size : null;
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	// Só conta os bytes do DOT, que para uma árvore assim é enorme.
+	private static final class CountingStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package driver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import checker.SemanticChecker;
+import code.CodeGen;
+import code.IRWriter;
+import parser.pascalLexer;
+import parser.pascalParser;
+
+/*
+ * Benchmark da emissão de código LLVM: gera um programa com o número de
+ * comandos pedido, passa ele uma vez pelo front-end e depois mede só o
+ * CodeGen escrevendo no arquivo de saída (via IRWriter), várias vezes.
+ *
+ * O tempo do front-end fica de fora, o que interessa aqui é quanto texto
+ * de IR por segundo o back-end consegue produzir.
+ */
+public final class EmitBench {
+
+	private static final int WARMUP = 5;
+	private static final int RUNS = 10;
+
+	private final int statements;
+	private final Path output;
+
+	public EmitBench(int statements, Path output) {
+		this.statements = statements;
+		this.output = output;
+	}
+
+	// Programa com 'n' comandos, variando entre atribuições, expressões,
+	// ifs e Writelns para exercitar boa parte do CodeGen.
+	static String program(int n) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("program bench;\n");
+		sb.append("var\n");
+		sb.append("    a, b, c: integer;\n");
+		sb.append("    x: real;\n");
+		sb.append("    s: string;\n");
+		sb.append("begin\n");
+		for (int i = 0; i < n; i++) {
+			switch (i % 5) {
+				case 0: sb.append("    a := a + ").append(i).append(";\n");                        break;
+				case 1: sb.append("    b := a * 2 - c / 3;\n");                                      break;
+				case 2: sb.append("    if a < b then c := c + 1 else c := c - 1;\n");                break;
+				case 3: sb.append("    x := x * 2.5 + a;\n");                                        break;
+				case 4: sb.append("    Writeln(a);\n");                                              break;
+			}
+		}
+		sb.append("    s := 'done';\n");
+		sb.append("    Writeln(s);\n");
+		sb.append("end.\n");
+		return sb.toString();
+	}
+
+	public void run() throws IOException {
+		pascalLexer lexer = new pascalLexer(CharStreams.fromString(program(statements)));
+		pascalParser parser = new pascalParser(new CommonTokenStream(lexer));
+		ParseTree tree = parser.program();
+		SemanticChecker checker = new SemanticChecker();
+		checker.visit(tree);
+
+		for (int i = 0; i < WARMUP; i++) {
+			emit(checker);
+		}
+
+		long best = Long.MAX_VALUE;
+		long total = 0;
+		for (int i = 0; i < RUNS; i++) {
+			long t = emit(checker);
+			best = Math.min(best, t);
+			total += t;
+		}
+
+		long bytes = Files.size(output);
+		double bestSec = best / 1e9;
+		System.out.printf("statements: %d, IR: %d bytes\n", statements, bytes);
+		System.out.printf("mean: %.1f ms, best: %.1f ms\n", total / 1e6 / RUNS, best / 1e6);
+		System.out.printf("throughput (best): %.0f statements/s, %.1f MB/s\n",
+		                  statements / bestSec, bytes / bestSec / 1e6);
+	}
+
+	// Tempo em ns de uma geração de código completa, incluindo o flush.
+	private long emit(SemanticChecker checker) throws IOException {
+		long start = System.nanoTime();
+		try (IRWriter out = IRWriter.toFile(output)) {
+			new CodeGen(checker.st, checker.vt, checker.ft, out).execute(checker.getAST());
+		}
+		return System.nanoTime() - start;
+	}
+
+}
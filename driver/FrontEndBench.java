@@ -0,0 +1,116 @@
+package driver;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import ast.FlatAST;
+import checker.SemanticChecker;
+import parser.pascalLexer;
+import parser.pascalParser;
+
+/*
+ * Benchmark do front-end inteiro (lexer, parser e analisador semântico)
+ * num programa gerado com o número de funções pedido, uma depois da
+ * outra como no front-end normal e em pipeline (veja Pipeline),
+ * intercalados. O ganho do pipeline depende de haver núcleos livres,
+ * então o número de CPUs sai junto com o resultado.
+ *
+ * As duas formas têm de produzir a mesma AST; o tamanho dela é
+ * conferido a cada rodada.
+ */
+public final class FrontEndBench {
+
+	private static final int WARMUP = 3;
+	private static final int RUNS = 5;
+
+	private final int functions;
+
+	public FrontEndBench(int functions) {
+		this.functions = functions;
+	}
+
+	// Programa com 'n' funções, chamadas no bloco principal de 50 em 50.
+	static String program(int n) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("program bench;\n");
+		for (int i = 0; i < n; i++) {
+			sb.append("function f").append(i).append("(a, b: integer): integer;\n");
+			sb.append("var\n");
+			sb.append("    c, d: integer;\n");
+			sb.append("begin\n");
+			sb.append("    c := a * ").append(i).append(" + b;\n");
+			sb.append("    d := c - a * b + ").append(i % 7).append(";\n");
+			sb.append("    if c > d then\n");
+			sb.append("        c := c - d\n");
+			sb.append("    else\n");
+			sb.append("        d := d + c * 2;\n");
+			sb.append("    f").append(i).append(" := c + d - a;\n");
+			sb.append("end;\n");
+		}
+		sb.append("var\n");
+		sb.append("    x, y: integer;\n");
+		sb.append("begin\n");
+		sb.append("    x := 1;\n");
+		sb.append("    y := 0;\n");
+		for (int i = 0; i < n; i += 50) {
+			sb.append("    y := y + f").append(i).append("(x, y);\n");
+		}
+		sb.append("    Writeln(y);\n");
+		sb.append("end.\n");
+		return sb.toString();
+	}
+
+	public void run() {
+		CharStream input = CharStreams.fromString(program(functions));
+
+		int nodes = check(input, false);
+		if (check(input, true) != nodes) {
+			throw new IllegalStateException("The pipelined front-end built a different AST");
+		}
+		for (int i = 0; i < WARMUP; i++) {
+			frontEnd(input, false, nodes);
+			frontEnd(input, true, nodes);
+		}
+		long bestSeq = Long.MAX_VALUE;
+		long bestPipe = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			bestSeq = Math.min(bestSeq, frontEnd(input, false, nodes));
+			bestPipe = Math.min(bestPipe, frontEnd(input, true, nodes));
+		}
+		System.out.printf("functions: %d, characters: %d, AST nodes: %d, CPUs: %d\n",
+		                  functions, input.size(), nodes, Runtime.getRuntime().availableProcessors());
+		System.out.printf("front-end (best of %d): sequential %.1f ms, pipelined %.1f ms (%.2fx)\n",
+		                  RUNS, bestSeq / 1e6, bestPipe / 1e6, (double) bestSeq / bestPipe);
+	}
+
+	// Tempo em ns de um front-end completo, desde o início da entrada.
+	private long frontEnd(CharStream input, boolean pipelined, int nodes) {
+		long start = System.nanoTime();
+		int size = check(input, pipelined);
+		long time = System.nanoTime() - start;
+		if (size != nodes) {
+			throw new IllegalStateException("The front-end built a different AST");
+		}
+		return time;
+	}
+
+	// Roda o front-end e retorna o número de nós da AST.
+	private int check(CharStream input, boolean pipelined) {
+		input.seek(0);
+		pascalLexer lexer = new pascalLexer(input);
+		SemanticChecker checker;
+		if (pipelined) {
+			checker = new Pipeline(lexer, true).run();
+		} else {
+			pascalParser parser = new pascalParser(new CommonTokenStream(lexer));
+			checker = new SemanticChecker();
+			checker.visit(Parsing.program(parser, true));
+		}
+		if (checker == null) {
+			throw new IllegalStateException("Wrong front-end result for the generated program");
+		}
+		return FlatAST.of(checker.getAST()).size();
+	}
+
+}
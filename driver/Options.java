@@ -0,0 +1,52 @@
+package driver;
+
+import java.nio.file.Path;
+
+import code.jit.OsrCompiler;
+
+/*
+ * Opções de uma compilação, vindas da linha de comando. Os valores
+ * padrão são os de 'Main arquivo.pas'.
+ */
+public final class Options {
+
+	// Back-end: 'llvm' gera o código, os outros executam o programa.
+	public String engine = "llvm";
+
+	// Arquivo do código LLVM. Se for null o código vai para a stdout.
+	public Path output = null;
+
+	// Gera o código LLVM em SSA, com as variáveis escalares em registradores.
+	public boolean ssa = false;
+
+	// Tenta o parsing com a predição SLL antes da LL (veja Parsing).
+	public boolean sllFirst = true;
+
+	// Lexer, parser e analisador semântico em threads separadas (veja Pipeline).
+	public boolean pipeline = false;
+
+	// Roda o passo ast.opt (dobra e propaga constantes) antes do back-end.
+	public boolean optimize = false;
+
+	// O Interpreter percorre a AST compacta (ast.FlatAST) em vez dos objetos AST.
+	public boolean flat = false;
+
+	// Diretório do cache do front-end (veja ASTCache). Se for null não usa cache.
+	public Path cache = null;
+
+	// Execução em camadas (--engine=tiered): iterações de um repeat até ele
+	// ser compilado, e se as métricas da fila de compilação vão para a stderr.
+	public int tierThreshold = OsrCompiler.DEFAULT_THRESHOLD;
+	public boolean tierStats = false;
+
+	// Interpreter: esvazia a saída antes de cada Readln, para o prompt
+	// aparecer. Ligado por padrão quando há um terminal.
+	public boolean interactive = System.console() != null;
+
+	public Options() {}
+
+	public Options(String engine) {
+		this.engine = engine;
+	}
+
+}
@@ -0,0 +1,64 @@
+package driver;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import parser.pascalLexer;
+import parser.pascalParser;
+
+/*
+ * Benchmark do parser: gera um programa com o número de linhas pedido
+ * (o mesmo do EmitBench, um comando por linha), lê todos os tokens uma
+ * vez e depois mede só o parsing, com a predição LL de sempre e com os
+ * dois estágios SLL/LL (veja Parsing), intercalados.
+ *
+ * Cada medida usa um parser novo, para o cache de DFA de uma rodada não
+ * ajudar a outra; o cache compartilhado entre parsers do ANTLR é limpo
+ * antes de cada uma.
+ */
+public final class ParseBench {
+
+	private static final int WARMUP = 3;
+	private static final int RUNS = 5;
+
+	private final int lines;
+
+	public ParseBench(int lines) {
+		this.lines = lines;
+	}
+
+	public void run() {
+		pascalLexer lexer = new pascalLexer(CharStreams.fromString(EmitBench.program(lines)));
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		tokens.fill();
+
+		for (int i = 0; i < WARMUP; i++) {
+			parse(tokens, false);
+			parse(tokens, true);
+		}
+		long bestLL = Long.MAX_VALUE;
+		long bestSLL = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			bestLL = Math.min(bestLL, parse(tokens, false));
+			bestSLL = Math.min(bestSLL, parse(tokens, true));
+		}
+		System.out.printf("lines: %d, tokens: %d\n", lines, tokens.size());
+		System.out.printf("parse (best of %d): LL %.1f ms, SLL+LL %.1f ms (%.2fx)\n",
+		                  RUNS, bestLL / 1e6, bestSLL / 1e6, (double) bestLL / bestSLL);
+	}
+
+	// Tempo em ns de um parsing completo, a partir do primeiro token.
+	private static long parse(CommonTokenStream tokens, boolean sllFirst) {
+		tokens.seek(0);
+		pascalParser parser = new pascalParser(tokens);
+		parser.getInterpreter().clearDFA();
+		long start = System.nanoTime();
+		Parsing.program(parser, sllFirst);
+		long time = System.nanoTime() - start;
+		if (parser.getNumberOfSyntaxErrors() != 0) {
+			throw new IllegalStateException("Syntax error in the generated program");
+		}
+		return time;
+	}
+
+}
@@ -0,0 +1,116 @@
+package driver;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.ParseInfo;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import parser.pascalLexer;
+import parser.pascalParser;
+
+/*
+ * Relatório das decisões do parser para um programa, com o profiling do
+ * próprio ANTLR (parser.setProfile). Serve para achar as regras da
+ * gramática que fazem o parser olhar muitos tokens à frente ou que são
+ * ambíguas, que é onde ele perde tempo.
+ *
+ * Para cada decisão (um ponto da gramática com mais de uma alternativa)
+ * mostra quantas vezes ela foi tomada, o maior lookahead em SLL e em LL,
+ * quantas vezes o SLL não bastou e quantas ambiguidades a LL achou.
+ * O parsing segue o 'sllFirst' das opções, então com '--no-sll' todas as
+ * decisões passam pela LL completa.
+ */
+public final class ParserProfile {
+
+	// Quantas decisões aparecem no relatório.
+	private static final int TOP = 15;
+
+	private final Options options;
+
+	public ParserProfile(Options options) {
+		this.options = options;
+	}
+
+	public int run(String fileName) {
+		pascalLexer lexer;
+		try {
+			lexer = new pascalLexer(ByteCharStream.fromFileName(fileName));
+		} catch (IOException e) {
+			System.err.printf("Cannot read file: %s\n", fileName);
+			return Compilation.ERROR;
+		}
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		tokens.fill();
+		pascalParser parser = new pascalParser(tokens);
+		parser.setProfile(true);
+
+		long start = System.nanoTime();
+		ParseTree tree = Parsing.program(parser, options.sllFirst);
+		long time = System.nanoTime() - start;
+		if (parser.getNumberOfSyntaxErrors() != 0) {
+			return Compilation.SYNTAX_ERROR;
+		}
+
+		ParseInfo info = parser.getParseInfo();
+		DecisionInfo[] decisions = info.getDecisionInfo();
+		List<DecisionInfo> used = new ArrayList<DecisionInfo>();
+		long ambiguities = 0;
+		for (DecisionInfo d : decisions) {
+			if (d.invocations > 0) {
+				used.add(d);
+			}
+			ambiguities += d.ambiguities.size();
+		}
+		// Maior lookahead primeiro; no empate, a mais ambígua e a mais usada.
+		used.sort(Comparator.comparingLong(ParserProfile::maxLook).reversed()
+		          .thenComparing(Comparator.comparingInt((DecisionInfo d) -> d.ambiguities.size()).reversed())
+		          .thenComparing(Comparator.comparingLong((DecisionInfo d) -> d.invocations).reversed()));
+
+		String[] rules = parser.getRuleNames();
+		System.out.printf("tokens: %d, parse tree depth: %d, parse: %.1f ms (profiling on)\n",
+		                  tokens.size(), depth(tree), time / 1e6);
+		System.out.printf("decisions: %d used of %d, SLL lookahead: %d tokens, LL lookahead: %d tokens, ambiguities: %d\n",
+		                  used.size(), decisions.length, info.getTotalSLLLookaheadOps(),
+		                  info.getTotalLLLookaheadOps(), ambiguities);
+		System.out.printf("%8s  %-24s %10s %8s %8s %8s %8s %8s\n",
+		                  "decision", "rule", "calls", "SLL max", "LL max", "LL", "ambig", "errors");
+		for (DecisionInfo d : used.subList(0, Math.min(TOP, used.size()))) {
+			int rule = parser.getATN().getDecisionState(d.decision).ruleIndex;
+			System.out.printf("%8d  %-24s %10d %8d %8d %8d %8d %8d\n",
+			                  d.decision, rules[rule], d.invocations, d.SLL_MaxLook, d.LL_MaxLook,
+			                  d.LL_Fallback, d.ambiguities.size(), d.errors.size());
+		}
+		return Compilation.OK;
+	}
+
+	private static long maxLook(DecisionInfo d) {
+		return Math.max(d.SLL_MaxLook, d.LL_MaxLook);
+	}
+
+	// Profundidade da árvore, sem recursão para não estourar a pilha nas
+	// árvores fundas que o relatório quer mostrar.
+	private static int depth(ParseTree tree) {
+		ArrayDeque<ParseTree> nodes = new ArrayDeque<ParseTree>();
+		ArrayDeque<Integer> depths = new ArrayDeque<Integer>();
+		nodes.push(tree);
+		depths.push(1);
+		int max = 0;
+		while (!nodes.isEmpty()) {
+			ParseTree node = nodes.pop();
+			int d = depths.pop();
+			max = Math.max(max, d);
+			for (int i = 0; i < node.getChildCount(); i++) {
+				nodes.push(node.getChild(i));
+				depths.push(d + 1);
+			}
+		}
+		return max;
+	}
+
+}
@@ -0,0 +1,63 @@
+package driver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import parser.pascalParser;
+
+/*
+ * Parsing em dois estágios, como recomendado pelo próprio ANTLR. O
+ * primeiro estágio usa a predição SLL, bem mais barata, sem listeners
+ * e desistindo no primeiro erro. Quase todo programa passa por ele. Só
+ * se der erro (um erro de verdade ou uma decisão que o SLL não resolve)
+ * a entrada é lida de novo do começo com a predição LL completa e o
+ * tratamento de erros normal, que imprime as mesmas mensagens que o
+ * parser imprimiria sozinho.
+ *
+ * Os tokens ficam no buffer do CommonTokenStream, então o lexer roda
+ * uma vez só mesmo quando há o segundo estágio.
+ */
+public final class Parsing {
+
+	private Parsing() {}
+
+	// Roda a regra 'program'. Sem 'sllFirst' é só o parser.program() de sempre.
+	public static ParseTree program(pascalParser parser, boolean sllFirst) {
+		if (!sllFirst) {
+			return parser.program();
+		}
+		List<ANTLRErrorListener> listeners = new ArrayList<ANTLRErrorListener>(parser.getErrorListeners());
+		ANTLRErrorStrategy handler = parser.getErrorHandler();
+
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		try {
+			return parser.program();
+		} catch (ParseCancellationException e) {
+			restore(parser, listeners, handler);
+			parser.reset(); // Volta os tokens para o início.
+			return parser.program();
+		} finally {
+			restore(parser, listeners, handler);
+		}
+	}
+
+	private static void restore(pascalParser parser, List<ANTLRErrorListener> listeners,
+	                            ANTLRErrorStrategy handler) {
+		parser.removeErrorListeners();
+		for (ANTLRErrorListener l : listeners) {
+			parser.addErrorListener(l);
+		}
+		parser.setErrorHandler(handler);
+		parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+	}
+
+}
@@ -0,0 +1,313 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import ast.AST;
+import ast.NodeKind;
+import checker.SemanticChecker;
+import parser.pascalLexer;
+import parser.pascalParser;
+import typing.Type;
+
+/*
+ * Front-end em pipeline ('--pipeline'): lexer, parser e analisador
+ * semântico rodam ao mesmo tempo, cada um na sua thread.
+ *
+ * O lexer passa os tokens para o parser por uma TokenQueue. Os erros
+ * que ele acha vão pela mesma fila, na frente do token onde apareceram,
+ * e só são repassados aos listeners do lexer quando o parser pede esse
+ * token; assim as mensagens saem na mesma ordem de sempre, misturadas
+ * com as do parser.
+ *
+ * O parser roda na thread de quem chamou. Um listener de parsing manda
+ * para o analisador semântico o cabeçalho do programa e cada função do
+ * bloco principal assim que o parser termina de ler. Como o
+ * SemanticChecker já verifica essas partes primeiro e nessa ordem (veja
+ * visitBlock), as tabelas terminam exatamente iguais. As variáveis e os
+ * comandos do bloco principal são verificados no fim, nesta thread.
+ *
+ * A saída do analisador fica guardada até o parsing terminar: com erro
+ * sintático ela é descartada, como se ele nem tivesse rodado. Se o
+ * primeiro estágio do parsing (SLL, veja Parsing) desistir, o que já
+ * foi verificado é jogado fora e o analisador roda de novo sobre a
+ * árvore final, como no front-end normal.
+ */
+public final class Pipeline {
+
+	// Tokens em trânsito entre o lexer e o parser.
+	private static final int QUEUE_SIZE = 4096;
+
+	// Marcas do fim das partes para o analisador.
+	private static final Object END = new Object();
+	private static final Object RESTART = new Object();
+
+	private final pascalLexer lexer;
+	private final boolean sllFirst;
+	private final List<ANTLRErrorListener> listeners;
+
+	private final TokenQueue tokens = new TokenQueue(QUEUE_SIZE);
+	private final LinkedBlockingQueue<Object> parts = new LinkedBlockingQueue<Object>();
+
+	// Saída do analisador enquanto ele roda na outra thread.
+	private final ByteArrayOutputStream checkerOut = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream checkerErr = new ByteArrayOutputStream();
+
+	private boolean restarted;
+
+	public Pipeline(pascalLexer lexer, boolean sllFirst) {
+		this.lexer = lexer;
+		this.sllFirst = sllFirst;
+		this.listeners = new ArrayList<ANTLRErrorListener>(lexer.getErrorListeners());
+	}
+
+	// Faz a análise léxica, sintática e semântica e retorna o analisador,
+	// com a AST e as tabelas, ou null se houve erro sintático. Um erro
+	// semântico lança CompileError, como no front-end normal.
+	public SemanticChecker run() {
+		SemanticChecker checker = new SemanticChecker();
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(new Deferred());
+		Thread lexing = new Thread(this::lex, "pipeline-lexer");
+		lexing.setDaemon(true);
+		lexing.start();
+
+		FutureTask<Checked> checking = new FutureTask<Checked>(() -> Capture.run(() -> check(checker), checkerOut, checkerErr));
+		Thread checkerThread = new Thread(checking, "pipeline-checker");
+		checkerThread.setDaemon(true);
+		checkerThread.start();
+
+		pascalParser parser = new pascalParser(new CommonTokenStream(new QueuedTokens()));
+		parser.addParseListener(new Splitter());
+		pascalParser.ProgramContext tree;
+		try {
+			tree = (pascalParser.ProgramContext) Parsing.program(parser, sllFirst);
+		} finally {
+			tokens.close();
+			parts.add(END);
+		}
+		if (parser.getNumberOfSyntaxErrors() != 0) {
+			return null;
+		}
+		if (restarted) {
+			// O SLL desistiu e a árvore é outra: verifica do jeito normal.
+			SemanticChecker again = new SemanticChecker();
+			again.visit(tree);
+			return again;
+		}
+
+		Checked checked;
+		try {
+			checked = checking.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			replay();
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw (Error) e.getCause();
+		}
+		replay();
+
+		AST block = AST.newSubtree(NodeKind.BLOCK_NODE, Type.NO_TYPE);
+		for (AST function : checked.functions) {
+			block.addChild(function);
+		}
+		checker.finishBlock(block, tree.block());
+		checker.program(checked.heading, block);
+		return checker;
+	}
+
+	// Repassa o que o analisador escreveu para a saída desta thread.
+	private void replay() {
+		System.out.print(checkerOut.toString());
+		System.err.print(checkerErr.toString());
+	}
+
+	// ----------------------------------------------------------------------------
+	// -------------------------------- Lexer -------------------------------------
+
+	// Thread do lexer: coloca os tokens na fila até o EOF.
+	private void lex() {
+		try {
+			Token token;
+			do {
+				token = lexer.nextToken();
+				if (!tokens.put(token)) {
+					return;
+				}
+			} while (token.getType() != Token.EOF);
+		} catch (RuntimeException | Error e) {
+			tokens.put(new Failure(e));
+		}
+	}
+
+	// Erro do lexer, guardado para ser repassado na thread do parser.
+	private static final class LexerError {
+		final int line;
+		final int charPositionInLine;
+		final String msg;
+		final RecognitionException e;
+
+		LexerError(int line, int charPositionInLine, String msg, RecognitionException e) {
+			this.line = line;
+			this.charPositionInLine = charPositionInLine;
+			this.msg = msg;
+			this.e = e;
+		}
+	}
+
+	// Exceção na thread do lexer, relançada na thread do parser.
+	private static final class Failure {
+		final Throwable error;
+
+		Failure(Throwable error) {
+			this.error = error;
+		}
+	}
+
+	// Listener do lexer na thread dele: só põe o erro na fila.
+	private final class Deferred extends BaseErrorListener {
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol,
+		                        int line, int charPositionInLine, String msg, RecognitionException e) {
+			tokens.put(new LexerError(line, charPositionInLine, msg, e));
+		}
+	}
+
+	// Os tokens da fila, vistos pelo parser como se viessem do lexer.
+	private final class QueuedTokens implements TokenSource {
+		private Token last;
+
+		@Override
+		public Token nextToken() {
+			while (true) {
+				Object item = tokens.take();
+				if (item instanceof Token) {
+					last = (Token) item;
+					return last;
+				}
+				if (item instanceof LexerError) {
+					LexerError error = (LexerError) item;
+					for (ANTLRErrorListener l : listeners) {
+						l.syntaxError(lexer, null, error.line, error.charPositionInLine, error.msg, error.e);
+					}
+				} else {
+					Throwable error = ((Failure) item).error;
+					if (error instanceof RuntimeException) {
+						throw (RuntimeException) error;
+					}
+					throw (Error) error;
+				}
+			}
+		}
+
+		@Override
+		public int getLine() {
+			return last == null ? 1 : last.getLine();
+		}
+
+		@Override
+		public int getCharPositionInLine() {
+			return last == null ? 0 : last.getCharPositionInLine();
+		}
+
+		@Override
+		public CharStream getInputStream() {
+			return lexer.getInputStream();
+		}
+
+		@Override
+		public String getSourceName() {
+			return lexer.getSourceName();
+		}
+
+		@Override
+		public void setTokenFactory(TokenFactory<?> factory) {
+			lexer.setTokenFactory(factory);
+		}
+
+		@Override
+		public TokenFactory<?> getTokenFactory() {
+			return lexer.getTokenFactory();
+		}
+	}
+
+	// ----------------------------------------------------------------------------
+	// ---------------------------- Analisador ------------------------------------
+
+	// Partes verificadas na thread do analisador.
+	private static final class Checked {
+		AST heading;
+		final List<AST> functions = new ArrayList<AST>();
+	}
+
+	// Thread do analisador: verifica as partes na ordem em que chegam.
+	private Checked check(SemanticChecker checker) throws InterruptedException {
+		Checked checked = new Checked();
+		while (true) {
+			Object part = parts.take();
+			if (part == END || part == RESTART) {
+				return checked;
+			}
+			if (part instanceof pascalParser.ProgramHeadingContext) {
+				checked.heading = checker.visit((pascalParser.ProgramHeadingContext) part);
+			} else {
+				checked.functions.add(checker.visit((pascalParser.ProcedureAndFunctionDeclarationPartContext) part));
+			}
+		}
+	}
+
+	// Listener de parsing: manda as partes prontas do programa para o analisador.
+	private final class Splitter implements ParseTreeListener {
+		private int programs;
+
+		@Override
+		public void enterEveryRule(ParserRuleContext ctx) {
+			if (ctx instanceof pascalParser.ProgramContext && programs++ > 0) {
+				// Segundo estágio do Parsing: começa tudo de novo.
+				restarted = true;
+				parts.add(RESTART);
+			}
+		}
+
+		@Override
+		public void exitEveryRule(ParserRuleContext ctx) {
+			if (restarted) {
+				return;
+			}
+			if (ctx instanceof pascalParser.ProgramHeadingContext
+			    || (ctx instanceof pascalParser.ProcedureAndFunctionDeclarationPartContext
+			        && ctx.getParent().getParent() instanceof pascalParser.ProgramContext)) {
+				parts.add(ctx);
+			}
+		}
+
+		@Override
+		public void visitTerminal(TerminalNode node) {}
+
+		@Override
+		public void visitErrorNode(ErrorNode node) {}
+	}
+
+}
@@ -0,0 +1,118 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Teste de estresse da geração de código em paralelo: compila o mesmo
+ * programa em várias threads ao mesmo tempo e confere que todas as
+ * saídas (o .ll, os diagnósticos e o status) são idênticas, byte a byte,
+ * às de uma compilação feita sozinha numa thread só.
+ *
+ * Se alguma parte do compilador guardar estado compartilhado entre
+ * compilações (como os campos estáticos que o CodeGen já teve), as
+ * saídas acabam misturadas e o teste falha.
+ *
+ * Todas as compilações usam as opções da linha de comando, para que os
+ * caminhos do '--ssa' e do '-O' também rodem ao mesmo tempo.
+ */
+public final class Stress {
+
+	private final int threads;
+	private final Options options;
+
+	// Como no Batch, só o código LLVM é comparado: 'options' tem de ter o
+	// engine 'llvm' e nenhum arquivo de saída.
+	public Stress(int threads, Options options) {
+		if (!options.engine.equals("llvm") || options.output != null) {
+			throw new IllegalArgumentException("A stress run only compares LLVM code");
+		}
+		this.threads = threads;
+		this.options = options;
+	}
+
+	// Saída completa de uma compilação.
+	private static final class Output {
+		final int status;
+		final byte[] out;
+		final byte[] err;
+
+		Output(int status, byte[] out, byte[] err) {
+			this.status = status;
+			this.out = out;
+			this.err = err;
+		}
+
+		boolean sameAs(Output o) {
+			return status == o.status && Arrays.equals(out, o.out) && Arrays.equals(err, o.err);
+		}
+	}
+
+	// Testa cada arquivo e retorna o número de arquivos com divergências.
+	public int run(List<Path> files) throws InterruptedException {
+		int failures = 0;
+		for (Path file : files) {
+			if (!run(file)) {
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	private boolean run(Path file) throws InterruptedException {
+		Output expected = compile(file);
+
+		// Todas as threads esperam no 'start' para começarem juntas.
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Output>> results = new ArrayList<Future<Output>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(pool.submit(() -> {
+				start.await();
+				return compile(file);
+			}));
+		}
+		start.countDown();
+		pool.shutdown();
+
+		int mismatches = 0;
+		for (Future<Output> f : results) {
+			try {
+				if (!f.get().sameAs(expected)) {
+					mismatches++;
+				}
+			} catch (Exception e) {
+				mismatches++;
+			}
+		}
+
+		if (mismatches == 0) {
+			System.out.printf("%s: ok (%d threads)\n", file, threads);
+		} else {
+			System.out.printf("%s: %d of %d outputs differ!\n", file, mismatches, threads);
+		}
+		return mismatches == 0;
+	}
+
+	private Output compile(Path file) {
+		ByteArrayOutputStream outBuf = new ByteArrayOutputStream();
+		ByteArrayOutputStream errBuf = new ByteArrayOutputStream();
+		int status;
+		try {
+			status = Capture.run(() -> Compilation.runFile(file.toString(), options), outBuf, errBuf);
+		} catch (Exception e) {
+			e.printStackTrace(new PrintStream(errBuf, true));
+			status = Compilation.ERROR;
+		}
+		return new Output(status, outBuf.toByteArray(), errBuf.toByteArray());
+	}
+
+}
@@ -0,0 +1,89 @@
+package driver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Fila limitada, sem locks, de uma thread produtora para uma consumidora.
+ * É por onde o lexer passa os tokens para o parser no Pipeline.
+ *
+ * Os itens ficam num array circular. Cada lado só escreve o seu próprio
+ * contador ('tail' o produtor, 'head' o consumidor) e publica com
+ * setRelease, que não precisa de barreira nenhuma no x86; o outro lado
+ * lê com getAcquire. Cada lado também guarda o último valor que leu do
+ * contador do outro, e só volta a ler quando a fila parece cheia (ou
+ * vazia), para não disputar a mesma linha de cache a cada item.
+ *
+ * Quem espera gira um pouco e depois dorme em intervalos curtos; não há
+ * sinalização entre as threads. 'close' libera o produtor de vez, para
+ * quando o consumidor para de ler antes do fim (erro de sintaxe).
+ */
+final class TokenQueue {
+
+	private static final int SPINS = 100;
+	private static final long PARK_NANOS = 20000;
+
+	private final Object[] items;
+	private final int mask;
+
+	private final AtomicLong head = new AtomicLong(); // Próximo a ler.
+	private final AtomicLong tail = new AtomicLong(); // Próximo a escrever.
+	private volatile boolean closed;
+
+	private long headSeen; // Só o produtor usa.
+	private long tailSeen; // Só o consumidor usa.
+
+	// 'capacity' é arredondada para a próxima potência de 2.
+	TokenQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.items = new Object[size];
+		this.mask = size - 1;
+	}
+
+	// Coloca um item, esperando se a fila estiver cheia. Retorna false se
+	// a fila foi fechada pelo consumidor.
+	boolean put(Object item) {
+		long t = tail.get();
+		if (t - headSeen == items.length) {
+			int waits = 0;
+			while (t - (headSeen = head.getAcquire()) == items.length) {
+				if (closed) {
+					return false;
+				}
+				pause(waits++);
+			}
+		}
+		items[(int) t & mask] = item;
+		tail.setRelease(t + 1);
+		return true;
+	}
+
+	// Retira o próximo item, esperando se a fila estiver vazia.
+	Object take() {
+		long h = head.get();
+		if (h == tailSeen) {
+			int waits = 0;
+			while (h == (tailSeen = tail.getAcquire())) {
+				pause(waits++);
+			}
+		}
+		int i = (int) h & mask;
+		Object item = items[i];
+		items[i] = null;
+		head.setRelease(h + 1);
+		return item;
+	}
+
+	void close() {
+		closed = true;
+	}
+
+	private static void pause(int waits) {
+		if (waits < SPINS) {
+			Thread.onSpinWait();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+}
@@ -322,7 +322,7 @@ variable
    ;
 
 expression
-   : simpleExpression (relationaloperator expression)?
+   : simpleExpression (relationaloperator simpleExpression)*
    ;
 
 relationaloperator
@@ -330,7 +330,7 @@ relationaloperator
    ;
 
 simpleExpression
-   : term (additiveoperator simpleExpression)?
+   : term (additiveoperator term)*
    ;
 
 additiveoperator
@@ -338,7 +338,7 @@ additiveoperator
    ;
 
 term
-   : signedFactor (multiplicativeoperator term)?
+   : signedFactor (multiplicativeoperator signedFactor)*
    ;
 
 multiplicativeoperator
@@ -434,7 +434,7 @@ conditionalStatement
    ;
 
 ifStatement
-   : IF expression THEN statement (ELSE statement)?
+   : IF expression THEN statement (ELSE IF expression THEN statement)* (ELSE statement)?
    ;
 
 caseStatement
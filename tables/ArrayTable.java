@@ -2,21 +2,31 @@ package tables;
 
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import typing.Type;
 
 public final class ArrayTable {
 
-	// No mundo real isto certamente deveria ser um hash...
 	// Implementação da classe não é exatamente Javanesca porque
 	// tentei deixar o mais parecido possível com a original em C.
+	// O hash ao lado da lista só serve para a busca pelo nome.
 	private List<Entry> table = new ArrayList<Entry>(); 
+	private Map<String, Integer> index = new HashMap<String, Integer>();
+
+	// A gramática é case insensitive, então a chave do hash também é.
+	private static String key(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
 
     public int addArray(String s, int line, Type type,Range range) {
 		Entry entry = new Entry(s, line, type,range);
 		int idxAdded = table.size();
 		table.add(entry);
+		index.putIfAbsent(key(s), idxAdded);
 		return idxAdded;
 	}
 	
@@ -47,9 +57,22 @@ public final class ArrayTable {
         return text + ")";
     }
 
+    // Acrescenta mais uma dimensão ao array de índice 'i'.
+    public void addRange(int i, Range range) {
+        table.get(i).ranges.add(range);
+    }
+
     public int getDimensionSize(int i) {
         return table.get(i).ranges.size();
     }
+
+    public Range getRange(int i, int dim) {
+        return table.get(i).ranges.get(dim);
+    }
+
+    public int getSize() {
+        return table.size();
+    }
 	
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -80,12 +103,8 @@ public final class ArrayTable {
 	}
 
 	public int getIndex(String name) {
-        for(int i = 0; i < this.table.size(); i++){
-			if(this.table.get(i).name.equals(name)){
-				return i;
-			}
-		}
-		return -1;
+		Integer idx = index.get(key(name));
+		return idx == null ? -1 : idx;
     }
 
 }
\ No newline at end of file
@@ -2,17 +2,26 @@ package tables;
 
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import typing.Type;
 //import tables.VarTable;
 
 public final class FunctionTable {
 
-	// No mundo real isto certamente deveria ser um hash...
 	// Implementação da classe não é exatamente Javanesca porque
 	// tentei deixar o mais parecido possível com a original em C.
+	// O hash ao lado da lista só serve para a busca pelo nome.
 	private List<Entry> table = new ArrayList<Entry>(); 
+	private Map<String, Integer> index = new HashMap<String, Integer>();
+
+	// A gramática é case insensitive, então a chave do hash também é.
+	private static String key(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
 	
 	public FunctionTable(){
 		// Cria a função built-in de leitura que só lê string.
@@ -39,18 +48,15 @@ public final class FunctionTable {
 	}
 
 	public int lookupFunc(String s) {
-		for (int i = 0; i < table.size(); i++) {
-			if (table.get(i).name.equals(s)) {
-				return i;
-			}
-		}
-		return -1;
+		Integer idx = index.get(key(s));
+		return idx == null ? -1 : idx;
 	}
 
 	public int addFunction(String s, int line, Type type) {
 		Entry entry = new Entry(s, line, type);
 		int idxAdded = table.size();
 		table.add(entry);
+		index.putIfAbsent(key(s), idxAdded);
 		return idxAdded;
 	}
 
@@ -119,11 +125,6 @@ public final class FunctionTable {
 	}
 
     public int getIndex(String name) {
-        for(int i = 0; i < this.table.size(); i++){
-			if(this.table.get(i).name.equals(name)){
-				return i;
-			}
-		}
-		return -1;
+        return lookupFunc(name);
     }
 }
@@ -1,25 +1,32 @@
 package tables;
 
+import java.io.IOException;
+import java.io.StreamTokenizer;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashMap;
+import java.util.Map;
 
 @SuppressWarnings("serial")
 public final class StrTable extends ArrayList<String> {
-    // No mundo real isto certamente deveria ser um hash...
 
-	// Claro que aqui não é adequado uma busca serial.
-	// Como já tido em sala estamos interessado no uso da tabela, não na sua implementação.
+	// Hash da string para a sua posição na tabela, para não precisar
+	// de uma busca serial. Aqui a chave NÃO é case insensitive, pois o
+	// conteúdo dos literais importa.
+	private final Map<String, Integer> index = new HashMap<String, Integer>();
+
 	// Retorna a posição aonde a string foi inserida.
 	// Não dá mais para fazer @Override do método 'add' porque agora a gente precisa retornar
 	// um int e não um boolean.
     public int addStr(String s) {
-    	int i;
-		for (i = 0; i < this.size(); i++) {
-			if (this.get(i).equals(s)) {
-				return i;
-			}
+		Integer idx = index.get(s);
+		if (idx != null) {
+			return idx;
 		}
+		int i = this.size();
 		super.add(s);
+		index.put(s, i);
 		return i;
 	}
     
@@ -28,6 +35,50 @@ public final class StrTable extends ArrayList<String> {
 		return str.substring(1, str.length() - 1);
 	}
 
+	// Versões já convertidas pelo 'getUnescaped', pelo índice. Cada
+	// string é convertida uma vez só, na primeira vez que é impressa.
+	private final ArrayList<String> unescaped = new ArrayList<String>();
+
+	// Retorna a string no índice dado já convertida, sem as aspas e
+	// com os escapes interpretados, do jeito que deve ser impressa.
+	public String getUnescaped(int index) {
+		while (unescaped.size() <= index) {
+			unescaped.add(null);
+		}
+		String s = unescaped.get(index);
+		if (s == null) {
+			s = unescape(this.get(index));
+			unescaped.set(index, s);
+		}
+		return s;
+	}
+
+	// Função auxiliar para converter a string com escapes. Pública para
+	// as strings criadas em tempo de execução (veja code.StringHeap).
+	// Há várias formas de se fazer isso em Java mas preferi
+	// deixar assim para não precisar de bibliotecas ou de uma
+	// versão do Java mais recente.
+	// Se você preferir, pode usar:
+	// org.apache.commons.lang.StringEscapeUtils.unescapeJava()
+	// ou
+	// String.translateEscapes(), disponível a partir do Java 15.
+	public static String unescape(String originalStr) {
+		StreamTokenizer parser = new StreamTokenizer(new StringReader(originalStr));
+		String unescapedStr = "";
+		try {
+		    parser.nextToken();
+		    if (parser.ttype == '\'') {
+			    unescapedStr = parser.sval;
+		    } else {
+			  unescapedStr = "ERROR at string conversion!";
+		    }
+		}
+		catch (IOException e) {
+		    e.printStackTrace();
+		}
+		return unescapedStr;
+	}
+
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		Formatter f = new Formatter(sb);
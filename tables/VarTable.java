@@ -2,24 +2,30 @@ package tables;
 
 import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import typing.Type;
 
 public final class VarTable {
 
-	// No mundo real isto certamente deveria ser um hash...
 	// Implementação da classe não é exatamente Javanesca porque
 	// tentei deixar o mais parecido possível com a original em C.
+	// A lista guarda as entradas na ordem de inserção (o índice é o
+	// "endereço" da variável) e o hash ao lado só serve para a busca.
 	private List<Entry> table = new ArrayList<Entry>(); 
+	private Map<String, Integer> index = new HashMap<String, Integer>();
+
+	// A gramática é case insensitive, então a chave do hash também é.
+	private static String key(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
 
 	public int lookupVar(String s) {
-		for (int i = 0; i < table.size(); i++) {
-			if (table.get(i).name.equals(s)) {
-				return i;
-			}
-		}
-		return -1;
+		Integer idx = index.get(key(s));
+		return idx == null ? -1 : idx;
 	}
 	
 	public int getSize(){
@@ -30,6 +36,7 @@ public final class VarTable {
 		Entry entry = new Entry(s, line, type);
 		int idxAdded = table.size();
 		table.add(entry);
+		index.putIfAbsent(key(s), idxAdded);
 		return idxAdded;
 	}
 	
@@ -70,11 +77,6 @@ public final class VarTable {
 	}
 
     public int getIndex(String name) {
-        for(int i = 0; i < this.table.size(); i++){
-			if(this.table.get(i).name.equals(name)){
-				return i;
-			}
-		}
-		return -1;
+        return lookupVar(name);
     }
 }
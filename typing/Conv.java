@@ -8,6 +8,7 @@ import static ast.NodeKind.I2S_NODE;
 import static ast.NodeKind.R2S_NODE;
 
 import ast.AST;
+import driver.CompileError;
 
 public enum Conv {
 	B2I,  // Bool to Int
@@ -34,8 +35,7 @@ public enum Conv {
 	        default:
 	            System.err.printf("INTERNAL ERROR: invalid conversion of types!\n");
 	            // A partir de agora vou abortar no primeiro erro para facilitar.
-	            System.exit(1);
-	            return null; // Never reached...
+	            throw new CompileError();
 	    }
 	}
 	